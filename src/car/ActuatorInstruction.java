@@ -1,6 +1,9 @@
 
 package car;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Class used for message passing between threads. These 'messages' will contain
  * driver input information for the car such as turning the car on and off as well
@@ -11,6 +14,9 @@ package car;
 public class ActuatorInstruction {
     private Instructions instruction; //The instruction.
     private double percentageInput; //Percentage input for brake or throttle/ motor.
+    private long sequence; //Creation order across all instructions, from 1.
+    private long timestampNanos; //System.nanoTime() when the information this is based on was sensed.
+    private static final AtomicLong nextSequence = new AtomicLong();
     
     /**
      * List of valid instructions.
@@ -30,6 +36,8 @@ public class ActuatorInstruction {
     public ActuatorInstruction (Instructions instruction) {
         this.instruction = instruction;
         this.percentageInput = 0; 
+        this.sequence = nextSequence.incrementAndGet();
+        this.timestampNanos = System.nanoTime();
     }
     
     /**
@@ -48,6 +56,36 @@ public class ActuatorInstruction {
         }
     }
     
+    /**
+     * Constructor for an instruction computed from a readout, e.g. by cruise
+     * control, so that the time from sensing to actuation can be measured.
+     * 
+     * @param instruction
+     * @param percentage Must be between 0-100%.
+     * @param sensedNanos the readout's timestamp.
+     */
+    ActuatorInstruction (Instructions instruction, double percentage, long sensedNanos) {
+        this(instruction, percentage);
+        this.timestampNanos = sensedNanos;
+    }
+
+    /**
+     * 
+     * @return creation order across all instructions, from 1.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 
+     * @return System.nanoTime() when the driver gave the instruction, or when
+     * the readout it was computed from was sampled.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
     /**
      * Returns a fractional value for the percentageInput.
      * 
@@ -74,6 +112,54 @@ public class ActuatorInstruction {
         return percentageInput;
     }
     
+    /**
+     * Safety-critical instructions (any BRAKE, and TURN_OFF_IGNITION) are sent
+     * on the car's priority lane rather than through cruise control, so that
+     * they are applied in the tick they are given, ahead of anything queued.
+     * 
+     * @return true if this instruction is safety-critical.
+     */
+    public boolean isSafetyCritical() {
+        return instruction == Instructions.BRAKE || instruction == Instructions.TURN_OFF_IGNITION;
+    }
+
+    /**
+     * Removes superseded instructions from a batch received in one go. Within
+     * each run of instructions between ignition changes only the last MOTOR
+     * and the last BRAKE matter, so the others are dropped. Ignition changes
+     * are all kept, in order, since throttle is only accepted while the engine
+     * is on and is reset when it is turned on.
+     * 
+     * @param batch instructions in the order they were given.
+     * @param out where the instructions to execute, in order, are added.
+     */
+    static void coalesce(List<ActuatorInstruction> batch, List<ActuatorInstruction> out) {
+        ActuatorInstruction motor = null;
+        ActuatorInstruction brake = null;
+        for (ActuatorInstruction instruction : batch) {
+            if (instruction.instruction == Instructions.MOTOR) {
+                motor = instruction;
+            } else if (instruction.instruction == Instructions.BRAKE) {
+                brake = instruction;
+            } else {
+                addIfPresent(out, brake, motor);
+                brake = null;
+                motor = null;
+                out.add(instruction);
+            }
+        }
+        addIfPresent(out, brake, motor);
+    }
+
+    private static void addIfPresent(List<ActuatorInstruction> out, ActuatorInstruction brake, ActuatorInstruction motor) {
+        if (brake != null) {
+            out.add(brake);
+        }
+        if (motor != null) {
+            out.add(motor);
+        }
+    }
+
     /**
      * Check percentage is in a valid range. If percentage is, it will passed 
      * through this method unchanged.
@@ -0,0 +1,52 @@
+package car;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for an ActuatorInstruction reaching CarDynamics,
+ * whether it was applied or dropped as superseded. There is about one per
+ * control tick while cruise control is driving, so by default only those
+ * applied late (see the latencyThreshold setting) or superseded are recorded.
+ * car.ActuatorInstruction#latencyThreshold=0 ns records them all.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+@Name("car.ActuatorInstruction")
+@Label("Actuator Instruction")
+@Category({"Vroom", "Car"})
+@Description("An actuator instruction processed by CarDynamics")
+@StackTrace(false)
+class ActuatorInstructionEvent extends jdk.jfr.Event {
+
+    @Label("Instruction")
+    String instruction;
+
+    @Label("Percentage")
+    double percentage;
+
+    @Label("Sequence")
+    long sequence;
+
+    @Label("Latency")
+    @Description("From the readout or driver input the instruction was based on")
+    @Timespan(Timespan.NANOSECONDS)
+    long latencyNanos;
+
+    @Label("Superseded")
+    @Description("Dropped because a newer instruction had already been applied")
+    boolean superseded;
+
+    @Name("latencyThreshold")
+    @Label("Latency Threshold")
+    @Description("Record instructions applied at least this late, and all superseded ones")
+    @SettingDefinition
+    protected boolean latencyThreshold(LatencyThresholdSetting setting) {
+        return superseded || latencyNanos >= setting.getNanos();
+    }
+}
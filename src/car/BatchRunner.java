@@ -0,0 +1,226 @@
+package car;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs every scenario file in a directory on a fixed-size pool of worker
+ * threads and writes one CSV row of summary figures per scenario, in file
+ * name order. Scenarios that fail to load get a row with only the error
+ * column filled in.
+ *
+ * Usage: java -cp ... car.BatchRunner [--threads N] [--out results.csv]
+ * [--cache dir [--cache-entries N]] scenario-dir
+ *
+ * Results go to standard output unless --out is given. With --cache, results
+ * of seeded scenarios are looked up in, and added to, a ResultCache. Exit
+ * status is 0 if every scenario ran, 1 otherwise.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class BatchRunner {
+
+    private static final String SCENARIO_GLOB = "*.txt";
+    private static final int DEFAULT_CACHE_ENTRIES = 100000;
+
+    /**
+     * Result of one scenario.
+     */
+    private static class Row {
+
+        private final Path file;
+        private final String name;
+        private final Map<String, Double> metrics; // null if the scenario failed.
+        private final String error;
+
+        private Row(Path file, String name, Map<String, Double> metrics, String error) {
+            this.file = file;
+            this.name = name;
+            this.metrics = metrics;
+            this.error = error;
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = null;
+        String cacheDirectory = null;
+        int cacheEntries = DEFAULT_CACHE_ENTRIES;
+        String directory = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--out") && i + 1 < args.length) {
+                out = args[++i];
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheDirectory = args[++i];
+            } else if (args[i].equals("--cache-entries") && i + 1 < args.length) {
+                cacheEntries = Integer.parseInt(args[++i]);
+            } else if (directory == null && !args[i].startsWith("--")) {
+                directory = args[i];
+            } else {
+                directory = null;
+                break;
+            }
+        }
+        if (directory == null || threads < 1) {
+            System.err.println("Usage: java car.BatchRunner [--threads N] [--out results.csv] "
+                    + "[--cache <dir> [--cache-entries N]] <scenario-dir>");
+            System.exit(1);
+        }
+
+        try {
+            ResultCache cache = cacheDirectory == null ? null : new ResultCache(Paths.get(cacheDirectory), cacheEntries);
+            Writer writer = out == null
+                    ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                    : Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8);
+            boolean allRan;
+            try {
+                allRan = run(listScenarios(Paths.get(directory)), threads, cache, writer);
+            } finally {
+                writer.close();
+            }
+            System.exit(allRan ? 0 : 1);
+        } catch (IOException ioEx) {
+            System.err.println(ioEx.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param directory directory to search (not recursively).
+     * @return scenario files in name order.
+     * @throws IOException if the directory cannot be read.
+     */
+    static List<Path> listScenarios(Path directory) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SCENARIO_GLOB);
+        try {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } finally {
+            stream.close();
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Runs scenarios and writes the CSV. Rows are written as soon as they,
+     * and every row before them, are finished.
+     *
+     * @param files scenario files.
+     * @param threads number of worker threads.
+     * @param cache result cache, or null.
+     * @param writer CSV destination.
+     * @return true if every scenario ran.
+     * @throws IOException if writing fails.
+     */
+    static boolean run(List<Path> files, int threads, final ResultCache cache, Writer writer) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        boolean allRan = true;
+        try {
+            List<Future<Row>> rows = new ArrayList<Future<Row>>(files.size());
+            for (final Path file : files) {
+                rows.add(pool.submit(new Callable<Row>() {
+                    @Override
+                    public Row call() {
+                        return runOne(file, cache);
+                    }
+                }));
+            }
+
+            writer.write("scenario,file");
+            for (String metric : RunSummary.METRIC_NAMES) {
+                writer.write("," + metric);
+            }
+            writer.write(",error\n");
+            for (Future<Row> future : rows) {
+                Row row = future.get();
+                allRan &= row.metrics != null;
+                writer.write(format(row));
+                writer.write('\n');
+            }
+        } catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", intEx);
+        } catch (ExecutionException execEx) {
+            throw new IOException("Scenario failed", execEx.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return allRan;
+    }
+
+    private static Row runOne(Path file, ResultCache cache) {
+        try {
+            Scenario scenario = Scenario.load(file);
+            if (cache == null || !scenario.isReproducible()) {
+                return new Row(file, scenario.getName(), ScenarioRunner.run(scenario).toMetrics(), null);
+            }
+
+            String key = ResultCache.key(scenario);
+            Map<String, Double> metrics = cache.get(key);
+            if (metrics == null) {
+                metrics = ScenarioRunner.run(scenario).toMetrics();
+                cache.put(key, metrics);
+            }
+            return new Row(file, scenario.getName(), metrics, null);
+        } catch (Exception ex) { // IOException, ParseException or a bug in the simulation.
+            return new Row(file, "", null, ex.toString());
+        }
+    }
+
+    private static String format(Row row) {
+        StringBuilder line = new StringBuilder(160);
+        line.append(quote(row.name)).append(',').append(quote(row.file.getFileName().toString()));
+        for (String metric : RunSummary.METRIC_NAMES) {
+            Double value = row.metrics == null ? null : row.metrics.get(metric);
+            appendNumber(line, value == null ? Double.NaN : value);
+        }
+        line.append(',');
+        if (row.error != null) {
+            line.append(quote(row.error));
+        }
+        return line.toString();
+    }
+
+    private static void appendNumber(StringBuilder line, double value) {
+        line.append(',');
+        if (!Double.isNaN(value)) { // Empty field for "no value".
+            line.append(String.format(Locale.ROOT, "%.4f", value));
+        }
+    }
+
+    /**
+     * Quotes a CSV field if it needs it.
+     */
+    private static String quote(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,152 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the time from the driver pressing the brake to CarDynamics
+ * applying it, while the command queues are flooded with throttle
+ * instructions. The car is wired as in Main and runs in real time in a
+ * TickLoop with cruise control engaged; a flood thread keeps both the driver
+ * and the cruise control queues full, and the driver brakes at random times.
+ *
+ * Each run is done twice: with brakes sent via cruise control ("queued"), as
+ * they were before the priority lane, and on the priority lane ("priority").
+ * Reports brake-to-actuation latency in microseconds and the worst case in
+ * ticks.
+ *
+ * Usage: java -cp ... car.BrakeLatencyBenchmark [--hz N] [--seconds S] [--flood N] [--wait STRATEGY]
+ *
+ * Defaults to the normal control rate for 10 seconds per run, flooding 1000
+ * instructions per millisecond into each queue, with the BLOCK wait strategy.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class BrakeLatencyBenchmark {
+
+    private static final double DEFAULT_SECONDS = 10;
+    private static final int DEFAULT_FLOOD = 1000; // Instructions per millisecond per queue.
+    private static final double CRUISE_SPEED = 100; // km/h.
+    private static final double BRAKE = 30; // %.
+    private static final int MAX_BRAKE_GAP_TICKS = 4; // Brakes are given every 1 to this many ticks.
+
+    /**
+     * Puts throttle instructions into queues as fast as asked until stopped.
+     */
+    private static class Flood implements Runnable {
+
+        private final BlockingQueue<ActuatorInstruction> GUIToCruiseActInst;
+        private final BlockingQueue<ActuatorInstruction> cruiseToDyn;
+        private final int perMilli;
+        private volatile boolean running = true;
+
+        private Flood(BlockingQueue<ActuatorInstruction> GUIToCruiseActInst, BlockingQueue<ActuatorInstruction> cruiseToDyn, int perMilli) {
+            this.GUIToCruiseActInst = GUIToCruiseActInst;
+            this.cruiseToDyn = cruiseToDyn;
+            this.perMilli = perMilli;
+        }
+
+        @Override
+        public void run() {
+            Random random = new Random(0);
+            while (running) {
+                for (int i = 0; i < perMilli; i++) {
+                    GUIToCruiseActInst.offer(new ActuatorInstruction(Instructions.MOTOR, random.nextInt(101)));
+                    cruiseToDyn.offer(new ActuatorInstruction(Instructions.MOTOR, random.nextInt(101)));
+                }
+                LockSupport.parkNanos(1000000);
+            }
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int hz = SimClock.DEFAULT_HZ;
+        double seconds = DEFAULT_SECONDS;
+        int flood = DEFAULT_FLOOD;
+        WaitStrategy waitStrategy = WaitStrategy.BLOCK;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--hz") && i + 1 < args.length) {
+                    hz = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--seconds") && i + 1 < args.length) {
+                    seconds = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--flood") && i + 1 < args.length) {
+                    flood = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--wait") && i + 1 < args.length) {
+                    waitStrategy = WaitStrategy.valueOf(args[++i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException argEx) { // Including NumberFormatException.
+            System.err.println("Usage: java car.BrakeLatencyBenchmark [--hz N] [--seconds S] [--flood N] [--wait BUSY_SPIN|YIELD|PARK|BLOCK]");
+            System.exit(1);
+        }
+
+        SimClock clock = new SimClock(hz, hz, hz);
+        System.out.println(String.format(Locale.ROOT, "%-9s %7s %10s %10s %10s %10s %10s %9s",
+                "lane", "brakes", "mean_us", "p50_us", "p99_us", "p99.9_us", "max_us", "max_ticks"));
+        run("queued", false, clock, seconds, flood, waitStrategy);
+        run("priority", true, clock, seconds, flood, waitStrategy);
+    }
+
+    private static void run(String name, boolean priority, SimClock clock, double seconds, int flood, WaitStrategy waitStrategy) {
+        // Same wiring as Main.
+        BlockingQueue<ActuatorInstruction> cruiseToDyn = new LinkedBlockingQueue<ActuatorInstruction>();
+        BlockingQueue<ActuatorInstruction> GUIToCruiseActInst = new LinkedBlockingQueue<ActuatorInstruction>();
+        BlockingQueue<CCInstruction> GUIToCruiseCCInst = new LinkedBlockingQueue<CCInstruction>();
+        BlockingQueue<ActuatorInstruction> GUIToDynPriority = new LinkedBlockingQueue<ActuatorInstruction>();
+        ReadoutRing readouts = new ReadoutRing(clock.getControlHz());
+        CarDynamics dynamics = new CarDynamics(cruiseToDyn, readouts, new Disturbances(0, true, true));
+        dynamics.setClock(clock);
+        dynamics.setPriorityLane(GUIToDynPriority);
+        CruiseControl cruise = new CruiseControl(readouts.newCursor(), GUIToCruiseCCInst, GUIToCruiseActInst, cruiseToDyn);
+        cruise.setClock(clock);
+        BlockingQueue<ActuatorInstruction> brakeLane = priority ? GUIToDynPriority : GUIToCruiseActInst;
+
+        GUIToCruiseActInst.add(new ActuatorInstruction(Instructions.TURN_ON_IGNITION));
+        GUIToCruiseCCInst.add(new CCInstruction(CCInstructions.ACTIVATE, CRUISE_SPEED));
+        TickLoop loop = new TickLoop(clock.getTickNanos(), waitStrategy, dynamics, cruise);
+        Flood flooder = new Flood(GUIToCruiseActInst, cruiseToDyn, flood);
+        Thread floodThread = new Thread(flooder, "flood");
+        loop.start("car");
+        floodThread.start();
+
+        // Brake on and off at random points within ticks.
+        Random random = new Random(1);
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        boolean braking = false;
+        while (System.nanoTime() - end < 0) {
+            LockSupport.parkNanos(clock.getTickNanos() + (long) (random.nextDouble() * (MAX_BRAKE_GAP_TICKS - 1) * clock.getTickNanos()));
+            braking = !braking;
+            brakeLane.offer(new ActuatorInstruction(Instructions.BRAKE, braking ? BRAKE : 0));
+        }
+
+        flooder.running = false;
+        try {
+            floodThread.join();
+        } catch (InterruptedException intEx) {
+            // Do nothing. The figures are read after the loop stops anyway.
+        }
+        loop.stop();
+
+        LatencyHistogram latency = dynamics.getBrakeLatency();
+        System.out.println(String.format(Locale.ROOT, "%-9s %7d %10.1f %10.1f %10.1f %10.1f %10.1f %9.2f",
+                name,
+                latency.getCount(),
+                latency.getMean() / 1e3,
+                latency.getPercentile(50) / 1e3,
+                latency.getPercentile(99) / 1e3,
+                latency.getPercentile(99.9) / 1e3,
+                latency.getMax() / 1e3,
+                latency.getMax() / (double) clock.getTickNanos()));
+    }
+}
@@ -1,5 +1,7 @@
 package car;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Class used for message passing between threads. These 'messages' will contain
  * cruise control instruction provided by the driver/ gui.
@@ -10,6 +12,9 @@ public class CCInstruction {
 
     private CCInstructions instruction;
     private double speedSet;
+    private long sequence; //Creation order across all cruise control instructions, from 1.
+    private long timestampNanos; //System.nanoTime() when the driver gave the instruction.
+    private static final AtomicLong nextSequence = new AtomicLong();
 
     /**
      * Set of valid cruise control instructions.
@@ -24,15 +29,17 @@ public class CCInstruction {
     public CCInstruction(CCInstructions instruction) {
         this.instruction = instruction;
         this.speedSet = 0;
+        this.sequence = nextSequence.incrementAndGet();
+        this.timestampNanos = System.nanoTime();
     }
 
     CCInstruction(double speedSet) {
-        this.instruction = CCInstructions.SET_SPEED;
+        this(CCInstructions.SET_SPEED);
         this.speedSet = speedSet;
     }
 
     CCInstruction(CCInstructions instruction, double speedSet) {
-        this.instruction = instruction;
+        this(instruction);
 
         this.speedSet = checkLowerBound(speedSet);
     }
@@ -44,6 +51,22 @@ public class CCInstruction {
         return value;
     }
 
+    /**
+     * 
+     * @return creation order across all cruise control instructions, from 1.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 
+     * @return System.nanoTime() when the driver gave the instruction.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
     /**
      * 
      * @return CCInstructions object.
@@ -0,0 +1,37 @@
+package car;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a CCInstruction processed by CruiseControl. Only
+ * the driver sends these, so they are rare.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+@Name("car.CCInstruction")
+@Label("Cruise Control Instruction")
+@Category({"Vroom", "Cruise Control"})
+@Description("A cruise control instruction processed by CruiseControl")
+@StackTrace(false)
+class CCInstructionEvent extends jdk.jfr.Event {
+
+    @Label("Instruction")
+    String instruction;
+
+    @Label("Speed Setting")
+    @Description("km/h; unused for DEACTIVATE")
+    double speedSetting;
+
+    @Label("Sequence")
+    long sequence;
+
+    @Label("Latency")
+    @Description("From the driver giving the instruction")
+    @Timespan(Timespan.NANOSECONDS)
+    long latencyNanos;
+}
@@ -0,0 +1,132 @@
+package car;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command line entry point. Runs a scenario file without a GUI and prints
+ * summary figures, one "key=value" per line. Never loads AWT or Swing, so it
+ * starts quickly and needs no display.
+ *
+ * Usage: java -cp ... car.CLI [--record telemetry.bin] [--cache dir] scenario.txt
+ *
+ * --record writes every readout and driver event to a telemetry file that can
+ * be searched with TelemetryStore. --cache looks up, and stores, the results of
+ * seeded scenarios (and their telemetry, if recorded) in a ResultCache.
+ *
+ * Exit status is 0 on success, 1 if the file cannot be read and 2 if it is
+ * not a valid scenario.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class CLI {
+
+    private static final int DEFAULT_CACHE_ENTRIES = 100000;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        String record = null;
+        String cacheDirectory = null;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--record") && i + 1 < args.length) {
+                record = args[++i];
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheDirectory = args[++i];
+            } else if (file == null && !args[i].startsWith("--")) {
+                file = args[i];
+            } else {
+                file = null;
+                break;
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: java car.CLI [--record <telemetry-file>] [--cache <dir>] <scenario-file>");
+            System.exit(1);
+        }
+
+        Scenario scenario;
+        try {
+            scenario = Scenario.load(Paths.get(file));
+        } catch (IOException ioEx) {
+            System.err.println(file + ": " + ioEx.getMessage());
+            System.exit(1);
+            return;
+        } catch (ParseException parseEx) {
+            System.err.println(file + ": " + parseEx.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        long start = System.nanoTime();
+        Map<String, Double> metrics;
+        Map<String, Double> latencyMetrics = Collections.emptyMap(); // Not cached.
+        boolean cached = false;
+        try {
+            ResultCache cache = null;
+            String key = null;
+            if (cacheDirectory != null && scenario.isReproducible()) {
+                cache = new ResultCache(Paths.get(cacheDirectory), DEFAULT_CACHE_ENTRIES);
+                key = ResultCache.key(scenario);
+            }
+
+            metrics = cache == null ? null : cache.get(key);
+            if (metrics != null && (record == null || cache.getTrace(key, Paths.get(record)))) {
+                cached = true;
+            } else {
+                RunSummary summary = run(scenario, record);
+                metrics = summary.toMetrics();
+                latencyMetrics = summary.getLatencyMetrics();
+                if (cache != null) {
+                    cache.put(key, metrics);
+                    if (record != null) {
+                        cache.putTrace(key, Paths.get(record));
+                    }
+                }
+            }
+        } catch (IOException ioEx) {
+            System.err.println(ioEx.getMessage());
+            System.exit(1);
+            return;
+        }
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+        print("scenario", scenario.getName());
+        print("cached", String.valueOf(cached));
+        print("wall_s", wallSeconds);
+        for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            print(metric.getKey(), metric.getValue());
+        }
+        for (Map.Entry<String, Double> metric : latencyMetrics.entrySet()) {
+            print(metric.getKey(), metric.getValue());
+        }
+    }
+
+    /**
+     * Runs a scenario, recording it if a telemetry file is given.
+     */
+    private static RunSummary run(Scenario scenario, String record) throws IOException {
+        TelemetryRecorder recorder = record == null ? null : new TelemetryRecorder(Paths.get(record));
+        try {
+            return ScenarioRunner.run(scenario, recorder);
+        } finally {
+            if (recorder != null) {
+                recorder.close();
+            }
+        }
+    }
+
+    private static void print(String key, double value) {
+        print(key, String.format(Locale.ROOT, "%.3f", value));
+    }
+
+    private static void print(String key, String value) {
+        System.out.println(key + "=" + value);
+    }
+}
@@ -1,6 +1,8 @@
 package car;
 
 import car.ActuatorInstruction.Instructions;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 
@@ -23,22 +25,36 @@ public class CarDynamics extends TimerTask implements Runnable {
     }
     // BlockingQueues used for message passing.
     private BlockingQueue<ActuatorInstruction> cruiseToDyn; // From CruiseControl to CarDynamics.
-    private BlockingQueue<DynamicsReadout> dynToCruise;  // From CarDynamics to CruiseControl.
-    private BlockingQueue<DynamicsReadout> dynToGUI; // From CarDynamics to GUI.
+    private BlockingQueue<ActuatorInstruction> priorityToDyn; // Optional. Safety-critical driver instructions, bypassing CruiseControl.
+    private ReadoutRing readouts; // From CarDynamics to CruiseControl, GUI and any other observers.
+    private ReadoutPublisher publisher; // Optional. Tells Flow subscribers about new readouts.
+    private long readoutSequence = 0; // Readouts sent so far.
+    private final List<ActuatorInstruction> received = new ArrayList<ActuatorInstruction>(); // This tick's instructions.
+    private final List<ActuatorInstruction> toExecute = new ArrayList<ActuatorInstruction>(); // The same, coalesced.
+    private final LatencyHistogram actuationLatency = new LatencyHistogram(); // Sense (or driver input) to actuation.
+    private final LatencyHistogram brakeLatency = new LatencyHistogram(); // Driver (or cruise control) brake to actuation.
+    // Sequence numbers of the last instructions applied. Instructions on the
+    // two lanes can arrive out of order; older ones must not undo newer ones.
+    private long lastIgnitionSequence = 0;
+    private long lastBrakeSequence = 0;
+    private long lastMotorSequence = 0;
     // Generates disturbances to test cruise controller.
-    private Disturbances disturbances = new Disturbances();
-    // Constants which describe the car and the environment it is in.
-    private static final double MAX_CURRENT = 400; // Max. current (A) that can be supplied to the motor.
-    private static final double MAX_BRAKE_TORQUE = 1000; // Max. torque (Nm) that can be supplied by the brakes.
-    private static final double MOTOR_SPROKET = 0.065; // radius of the motor sprocket
-    private static final double WHEEL_SPROKET = 0.11; // radius of the wheel sprocket
-    private static final double WHEEL_RADIUS = 0.25; // radius of the rear wheel
-    private static final double GRAVITY = 9.81; // gravitational force (ms^-2)
-    private static final double CAR_MASS = 1406; // mass of the car (kg)
-    private static final double K = 0.8; // DC motor constant.
-    private static final double FLUID_DENSITY = 1.2041; //Desity (kgm^-3) of air @ 20 degrees.
-    private static final double DRAG_AREA = 0.550; //m^2 - DRAG_COEFF * AREA. This is for a 1994 Porsche 911 Speedster.
-    private static final double COEFF_ROLLING_FRICTION = 0.015; //dry concrete with car tires (a typical value for automotive vehicles).
+    private Disturbances disturbances;
+    // Constants which describe the environment the car is in. Shared with the fleet kernels.
+    static final double GRAVITY = 9.81; // gravitational force (ms^-2)
+    static final double FLUID_DENSITY = 1.2041; //Desity (kgm^-3) of air @ 20 degrees.
+    // Constants which describe the car. Shared with any other cars of the same type.
+    private VehicleProfile vehicle = VehicleProfile.DEFAULT;
+    // Layout of the values written by readState().
+    public static final int STATE_DISTANCE = 0; // m.
+    public static final int STATE_SPEED = 1; // ms^-1.
+    public static final int STATE_ACCELERATION = 2; // ms^-2.
+    public static final int STATE_THROTTLE = 3; // %.
+    public static final int STATE_BRAKE = 4; // %.
+    public static final int STATE_GRADIENT = 5; // Hill disturbance (degrees).
+    public static final int STATE_WIND = 6; // Wind disturbance (ms^-1).
+    public static final int STATE_ENGINE_ON = 7; // 1 if on, 0 if off.
+    public static final int STATE_SIZE = 8;
     // Constantly changing variables relating to the car. 
     private double I = 0; // Current (A) provided to the motor
     private double propulsionForce; // Force (N) that drives the car forward.
@@ -49,26 +65,137 @@ public class CarDynamics extends TimerTask implements Runnable {
     private double distance = 0; // Distance (m) car has travelled.
     private double speed = 0; // Current speed of car (ms^-1)
     private double acceleration = 0; // Current acceleration of car (ms^-2)  
+    // Rates. One tick (run() or step(1)) integrates physicsSteps steps of physicsStep seconds.
+    private SimClock clock = SimClock.DEFAULT;
+    private int physicsSteps = clock.getPhysicsStepsPerTick();
+    private double physicsStep = clock.getPhysicsStepSeconds();
     // Driver related inputs.
     private engine engineStatus = engine.OFF;
     private double percentageThrottle = 0;
     private double percentageBrake = 0;
 
     /**
-     * CarDynamics constructor. Message passing queues must be specified.
+     * CarDynamics constructor. Message passing queue and ring must be specified.
      *
      * @param cruiseToDyn A BlockingQueues.
-     * @param dynToCruise A BlockingQueues.
-     * @param dynToGUI A BlockingQueues.
+     * @param readouts Ring every readout is published to.
      */
-    public CarDynamics(BlockingQueue<ActuatorInstruction> cruiseToDyn, BlockingQueue<DynamicsReadout> dynToCruise, BlockingQueue<DynamicsReadout> dynToGUI) {
+    public CarDynamics(BlockingQueue<ActuatorInstruction> cruiseToDyn, ReadoutRing readouts) {
+        this(cruiseToDyn, readouts, new Disturbances());
+    }
+
+    /**
+     * CarDynamics constructor with a specific set of disturbances, e.g. a
+     * seeded one for reproducible runs.
+     *
+     * @param cruiseToDyn A BlockingQueues.
+     * @param readouts Ring every readout is published to.
+     * @param disturbances Disturbances generator.
+     */
+    public CarDynamics(BlockingQueue<ActuatorInstruction> cruiseToDyn, ReadoutRing readouts, Disturbances disturbances) {
         this.cruiseToDyn = cruiseToDyn;
-        this.dynToCruise = dynToCruise;
-        this.dynToGUI = dynToGUI;
+        this.readouts = readouts;
+        this.disturbances = disturbances;
+    }
+
+    /**
+     * CarDynamics constructor for embedding the car in a caller's own loop,
+     * without any message passing. Drive it with apply(), step() and
+     * readState(); run() must not be used.
+     *
+     * @param disturbances Disturbances generator.
+     */
+    public CarDynamics(Disturbances disturbances) {
+        this(null, null, disturbances);
+    }
+
+    /**
+     * Describes every constant that affects a car's behaviour, e.g. for
+     * deciding whether a cached result is still valid. The profile's name
+     * makes no difference, only its values.
+     *
+     * @param vehicle the car's profile.
+     * @return one "NAME=value" per line.
+     */
+    static String describeConstants(VehicleProfile vehicle) {
+        return "MAX_CURRENT=" + vehicle.getMaxCurrent() + "\n"
+                + "MAX_BRAKE_TORQUE=" + vehicle.getMaxBrakeTorque() + "\n"
+                + "MOTOR_SPROKET=" + vehicle.getMotorSprocket() + "\n"
+                + "WHEEL_SPROKET=" + vehicle.getWheelSprocket() + "\n"
+                + "WHEEL_RADIUS=" + vehicle.getWheelRadius() + "\n"
+                + "GRAVITY=" + GRAVITY + "\n"
+                + "CAR_MASS=" + vehicle.getMass() + "\n"
+                + "K=" + vehicle.getMotorConstant() + "\n"
+                + "FLUID_DENSITY=" + FLUID_DENSITY + "\n"
+                + "DRAG_AREA=" + vehicle.getDragArea() + "\n"
+                + "COEFF_ROLLING_FRICTION=" + vehicle.getRollingFriction() + "\n"
+                + "SIM_TICK_MS=" + Main.SIM_TICK_MS + "\n";
+    }
+
+    /**
+     * Makes this a different type of car. Takes effect from the next physics
+     * step; the current throttle and brake settings are kept as percentages.
+     *
+     * @param vehicle the car's profile.
+     */
+    public void setVehicle(VehicleProfile vehicle) {
+        this.vehicle = vehicle;
+        setMotorPercentage(percentageThrottle / 100.0);
+        setBrakePercentage(percentageBrake / 100.0);
     }
 
     /**
-     * Putting messages in queues used for message passing between threads.
+     * @return the car's profile.
+     */
+    public VehicleProfile getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * Sets the rates the car runs at. Readouts are sent, instructions received
+     * and disturbances changed once per control tick; the physics is
+     * integrated in steps at the physics rate in between.
+     *
+     * @param clock the rates.
+     */
+    public void setClock(SimClock clock) {
+        this.clock = clock;
+        physicsSteps = clock.getPhysicsStepsPerTick();
+        physicsStep = clock.getPhysicsStepSeconds();
+    }
+
+    /**
+     * @return the rates the car runs at.
+     */
+    public SimClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Signals a ReadoutPublisher on the car's ring after every readout, so
+     * its subscribers (e.g. a TelemetryServer) are sent them.
+     *
+     * @param publisher the publisher, or null for none.
+     */
+    public void setReadoutPublisher(ReadoutPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * Gives the car a priority lane: a queue, normally from the driver, that
+     * is drained at the start of every tick and before every physics step, so
+     * instructions on it are applied within the tick they are given no matter
+     * how many routine instructions are waiting on cruiseToDyn. See
+     * ActuatorInstruction.isSafetyCritical() for what is sent on it.
+     *
+     * @param priorityToDyn the lane, or null for none.
+     */
+    public void setPriorityLane(BlockingQueue<ActuatorInstruction> priorityToDyn) {
+        this.priorityToDyn = priorityToDyn;
+    }
+
+    /**
+     * Publishing the readout used for message passing between threads.
      */
     private void send() {
 
@@ -80,20 +207,16 @@ public class CarDynamics extends TimerTask implements Runnable {
                 percentageThrottle,
                 percentageBrake,
                 disturbances.getHillDisturbance(),
-                disturbances.getWindDisturbance());
+                disturbances.getWindDisturbance(),
+                ++readoutSequence,
+                System.nanoTime());
 
-        // Send to CruiseControl.
-        try {
-            dynToCruise.put(readout);
-        } catch (InterruptedException intEx) {
-            // Do nothing. This exception will not lead to anything disastrous.
-        }
+        // Send to CruiseControl, GUI and other observers. Never blocks.
+        readouts.publish(readout);
 
-        // Send to GUI.
-        try {
-            dynToGUI.put(readout);
-        } catch (InterruptedException intEx) {
-            // Do nothing. This exception will not lead to anything disastrous.
+        // Wake Flow subscribers waiting for readouts. Never blocks.
+        if (publisher != null) {
+            publisher.signal();
         }
     }
 
@@ -102,24 +225,38 @@ public class CarDynamics extends TimerTask implements Runnable {
      */
     private void recieve() {
 
-        //Recieve an instruction from CruiseControl.
-        if (cruiseToDyn.size() > 0) {
-            try {
-                ActuatorInstruction instruction = cruiseToDyn.take();
-                executeInstruction(instruction);
-            } catch (InterruptedException intEx) {
-                // Do nothing. This exception will not lead to anything disastrous.
-            }
+        //Recieve every instruction from CruiseControl, dropping superseded ones.
+        if (cruiseToDyn.isEmpty()) {
+            return;
+        }
+        received.clear();
+        cruiseToDyn.drainTo(received);
+        toExecute.clear();
+        ActuatorInstruction.coalesce(received, toExecute);
+        for (ActuatorInstruction instruction : toExecute) {
+            executeInstruction(instruction);
         }
 
     }
 
     /**
-     * Do calculations necessary to determine the current situation of the car.
-     * Calculations include determining the speed, distance traveled,
-     * acceleration, forces and internal torques in the car. These calculations
-     * must be done regardless of what state the car is in (ie whether engine is
-     * on or off).
+     * Applying every instruction waiting on the priority lane, in order.
+     */
+    private void recievePriority() {
+        if (priorityToDyn == null || priorityToDyn.isEmpty()) {
+            return;
+        }
+        received.clear();
+        priorityToDyn.drainTo(received);
+        for (ActuatorInstruction instruction : received) {
+            executeInstruction(instruction);
+        }
+    }
+
+    /**
+     * Do calculations necessary to determine the current situation of the car
+     * over one tick. Disturbances change once per tick; the car's motion is
+     * then integrated in physicsSteps steps.
      */
     private void simulate() {
         // Generate new disturbances.
@@ -127,23 +264,41 @@ public class CarDynamics extends TimerTask implements Runnable {
         double windDisturbance = disturbances.getWindDisturbance();
         double angleDisturbance = disturbances.getHillDisturbance();
 
+        for (int i = 0; i < physicsSteps; i++) {
+            if (i > 0) {
+                recievePriority(); // Between physics steps too, at high physics rates.
+            }
+            integrate(windDisturbance, angleDisturbance);
+        }
+    }
+
+    /**
+     * Advances the car by one physics step. Calculations include determining
+     * the speed, distance traveled, acceleration, forces and internal torques
+     * in the car. These calculations must be done regardless of what state the
+     * car is in (ie whether engine is on or off).
+     *
+     * @param windDisturbance wind speed (ms^-1).
+     * @param angleDisturbance hill angle (degrees).
+     */
+    private void integrate(double windDisturbance, double angleDisturbance) {
         double accelerationNew;
 
         // Relative air speed to car. Using previous speed as an approximation for this.
         double relativeAirSpeed = -speed + windDisturbance;
-        forceDrag = (FLUID_DENSITY * Math.pow(relativeAirSpeed, 2) * DRAG_AREA) / 2;
+        forceDrag = (FLUID_DENSITY * Math.pow(relativeAirSpeed, 2) * vehicle.getDragArea()) / 2;
 
         //
         // Calculating torques and forces in and on the car.
         //
         // Torque provided by the motor
-        motorTorque = I * K;
+        motorTorque = I * vehicle.getMotorConstant();
 
         // Torque acting upon the wheel; forces are along chain.
-        wheelTorque = motorTorque * (WHEEL_SPROKET / MOTOR_SPROKET);
+        wheelTorque = motorTorque * (vehicle.getWheelSprocket() / vehicle.getMotorSprocket());
 
         // Force driving the car forward.
-        propulsionForce = (wheelTorque - brakeTorque) / WHEEL_RADIUS;
+        propulsionForce = (wheelTorque - brakeTorque) / vehicle.getWheelRadius();
 
         //Subtracting force generated due to a slope.
         propulsionForce = propulsionForce - slopeGeneratedForce(angleDisturbance);
@@ -155,14 +310,14 @@ public class CarDynamics extends TimerTask implements Runnable {
         // The new acceleration. If relativeAirSpeed is negative, then this means
         // the air is moving against the car. If zero of postive the the air is
         // helping drive the car forward.
-        accelerationNew = relativeAirSpeed <= 0 ? ((propulsionForce - forceDrag) / CAR_MASS) : ((propulsionForce + forceDrag) / CAR_MASS);
+        accelerationNew = relativeAirSpeed <= 0 ? ((propulsionForce - forceDrag) / vehicle.getMass()) : ((propulsionForce + forceDrag) / vehicle.getMass());
 
         // Calculating new car speed.
-        speed += ((acceleration + accelerationNew) * Main.SIM_TICK_S) / 2;
+        speed += ((acceleration + accelerationNew) * physicsStep) / 2;
         speed = (speed < 0) ? 0 : speed; //special case where breaking causes the car to stop and not go backwards.            
 
         // Calculating distance covered.
-        distance += speed * Main.SIM_TICK_S;
+        distance += speed * physicsStep;
 
         // If the speed is found to be zero or negative , then we are to assume 
         // the car is doing nothing. This condition stops the car from reversing 
@@ -182,35 +337,73 @@ public class CarDynamics extends TimerTask implements Runnable {
      */
     @Override
     public void run() {
+        DynamicsTickEvent event = new DynamicsTickEvent();
+        if (event.isEnabled()) {
+            runRecorded(event);
+            return;
+        }
+        recievePriority();
         send();
         recieve();
         simulate();
     }
 
     /**
-     * Processes instructions.
+     * run(), timing each stage for a Flight Recorder event.
      *
-     * @param instruction recieved.
+     * @param event the tick's event.
      */
-    private void executeInstruction(ActuatorInstruction instruction) {
-        if (instruction.getInstruction() == Instructions.MOTOR) {
+    private void runRecorded(DynamicsTickEvent event) {
+        event.begin();
+        long start = System.nanoTime();
+        recievePriority();
+        long prioritised = System.nanoTime();
+        send();
+        long sent = System.nanoTime();
+        recieve();
+        long received = System.nanoTime();
+        simulate();
+        long simulated = System.nanoTime();
+        event.end();
+        if (event.shouldCommit()) {
+            event.sequence = readoutSequence;
+            event.priorityNanos = prioritised - start;
+            event.sendNanos = sent - prioritised;
+            event.receiveNanos = received - sent;
+            event.simulateNanos = simulated - received;
+            event.commit();
+        }
+    }
+
+    /**
+     * Applies a driver or cruise control command immediately, exactly as if it
+     * had arrived through the queue. Allocates nothing.
+     *
+     * @param instruction the command.
+     * @param percentage throttle or brake (0-100%); clamped to that range.
+     * Ignored for ignition commands.
+     */
+    public void apply(Instructions instruction, double percentage) {
+        percentage = Math.max(0, Math.min(100, percentage));
+
+        if (instruction == Instructions.MOTOR) {
 
             //Throttle can only be applied if engine is on.
             if (engineStatus == engine.ON) {
-                setMotorPercentage(instruction.getFractionalPercentage());
-                percentageThrottle = instruction.getPercentage();
+                setMotorPercentage(percentage / 100.0);
+                percentageThrottle = percentage;
             }
 
-        } else if (instruction.getInstruction() == Instructions.BRAKE) {
-            setBrakePercentage(instruction.getFractionalPercentage());
-            percentageBrake = instruction.getPercentage();
+        } else if (instruction == Instructions.BRAKE) {
+            setBrakePercentage(percentage / 100.0);
+            percentageBrake = percentage;
 
-        } else if (instruction.getInstruction() == Instructions.TURN_OFF_IGNITION) {
+        } else if (instruction == Instructions.TURN_OFF_IGNITION) {
             setMotorPercentage(0);
             percentageThrottle = 0;
             engineStatus = engine.OFF;
 
-        } else if (instruction.getInstruction() == Instructions.TURN_ON_IGNITION) {
+        } else if (instruction == Instructions.TURN_ON_IGNITION) {
             //Assume when turning engine on, zero throttle results.
             setMotorPercentage(0);
             percentageThrottle = 0;
@@ -219,6 +412,116 @@ public class CarDynamics extends TimerTask implements Runnable {
         }
     }
 
+    /**
+     * Advances the car by a number of ticks (each of getClock()'s physics
+     * steps per tick), with no readouts and no
+     * instructions in between. Equivalent to run() n times on a car whose
+     * queues are empty.
+     *
+     * @param n number of ticks.
+     */
+    public void step(int n) {
+        for (int i = 0; i < n; i++) {
+            simulate();
+        }
+    }
+
+    /**
+     * Copies the car's current state, as it would appear in a readout, into a
+     * caller-supplied buffer. See the STATE_ constants for the layout.
+     *
+     * @param buf destination.
+     * @param offset index of the first value; STATE_SIZE values are written.
+     */
+    public void readState(double[] buf, int offset) {
+        buf[offset + STATE_DISTANCE] = distance;
+        buf[offset + STATE_SPEED] = speed;
+        buf[offset + STATE_ACCELERATION] = acceleration;
+        buf[offset + STATE_THROTTLE] = percentageThrottle;
+        buf[offset + STATE_BRAKE] = percentageBrake;
+        buf[offset + STATE_GRADIENT] = disturbances.getHillDisturbance();
+        buf[offset + STATE_WIND] = disturbances.getWindDisturbance();
+        buf[offset + STATE_ENGINE_ON] = engineStatus == engine.ON ? 1 : 0;
+    }
+
+    /**
+     * Processes instructions.
+     *
+     * @param instruction recieved.
+     */
+    private void executeInstruction(ActuatorInstruction instruction) {
+        boolean superseded = isSuperseded(instruction);
+        long latency = System.nanoTime() - instruction.getTimestampNanos();
+        ActuatorInstructionEvent event = new ActuatorInstructionEvent();
+        if (event.isEnabled()) {
+            event.latencyNanos = latency;
+            event.superseded = superseded;
+            if (event.shouldCommit()) {
+                event.instruction = instruction.getInstruction().name();
+                event.percentage = instruction.getPercentage();
+                event.sequence = instruction.getSequence();
+                event.commit();
+            }
+        }
+        if (superseded) {
+            return;
+        }
+        actuationLatency.record(latency);
+        if (instruction.getInstruction() == Instructions.BRAKE) {
+            brakeLatency.record(latency);
+        }
+        apply(instruction.getInstruction(), instruction.getPercentage());
+    }
+
+    /**
+     * Checks an instruction against the last ones applied, and records it as
+     * the last of its kind if it is not out of date. Brake and ignition-off
+     * instructions overtake others on the priority lane, so e.g. a throttle
+     * or ignition-on instruction given before the ignition was turned off may
+     * arrive after it, and must then be dropped.
+     *
+     * @param instruction recieved.
+     * @return true if a newer instruction has already been applied.
+     */
+    private boolean isSuperseded(ActuatorInstruction instruction) {
+        long sequence = instruction.getSequence();
+        if (instruction.getInstruction() == Instructions.MOTOR) {
+            if (sequence < lastMotorSequence || sequence < lastIgnitionSequence) {
+                return true;
+            }
+            lastMotorSequence = sequence;
+        } else if (instruction.getInstruction() == Instructions.BRAKE) {
+            if (sequence < lastBrakeSequence) {
+                return true;
+            }
+            lastBrakeSequence = sequence;
+        } else {
+            if (sequence < lastIgnitionSequence) {
+                return true;
+            }
+            lastIgnitionSequence = sequence;
+        }
+        return false;
+    }
+
+    /**
+     * @return time from each BRAKE instruction's timestamp until it was
+     * applied, whichever way it came. Only consistent when read from the
+     * car's thread or after it has stopped.
+     */
+    public LatencyHistogram getBrakeLatency() {
+        return brakeLatency;
+    }
+
+    /**
+     * @return time from each instruction's timestamp (the readout it was
+     * computed from, or the driver's input) until it was applied. Only
+     * consistent when read from the car's thread or after it has stopped.
+     */
+    public LatencyHistogram getActuationLatency() {
+        return actuationLatency;
+    }
+
     /**
      * Calculates the roll resistance acting on the car.
      *
@@ -228,7 +531,7 @@ public class CarDynamics extends TimerTask implements Runnable {
      * @return The roll resistance due to the tires of the car.
      */
     private double rollingResistance(double angle) {
-        return (COEFF_ROLLING_FRICTION * normalForce(angle));
+        return (vehicle.getRollingFriction() * normalForce(angle));
     }
 
     /**
@@ -237,7 +540,7 @@ public class CarDynamics extends TimerTask implements Runnable {
      * @param percentage Fractional percentage.
      */
     private void setMotorPercentage(double percentage) {
-        I = MAX_CURRENT * percentage;
+        I = vehicle.getMaxCurrent() * percentage;
     }
 
     /**
@@ -246,7 +549,7 @@ public class CarDynamics extends TimerTask implements Runnable {
      * @param percentage Fractional percentage.
      */
     private void setBrakePercentage(double percentage) {
-        brakeTorque = MAX_BRAKE_TORQUE * percentage;
+        brakeTorque = vehicle.getMaxBrakeTorque() * percentage;
     }
 
     /**
@@ -255,7 +558,7 @@ public class CarDynamics extends TimerTask implements Runnable {
      * @return Force is perpendicular to car.
      */
     private double normalForce(double angle) {
-        return (CAR_MASS * GRAVITY * Math.cos(angle));
+        return (vehicle.getMass() * GRAVITY * Math.cos(angle));
     }
 
     /**
@@ -264,6 +567,86 @@ public class CarDynamics extends TimerTask implements Runnable {
      * @return Force is parallel to road.
      */
     private double slopeGeneratedForce(double angle) {
-        return (CAR_MASS * GRAVITY * Math.sin(Math.toRadians(angle)));
+        return (vehicle.getMass() * GRAVITY * Math.sin(Math.toRadians(angle)));
+    }
+
+    /**
+     * Snapshot of the car's physical state, driver inputs and disturbances.
+     */
+    static final class State {
+
+        private final double I;
+        private final double propulsionForce;
+        private final double forceDrag;
+        private final double motorTorque;
+        private final double wheelTorque;
+        private final double brakeTorque;
+        private final double distance;
+        private final double speed;
+        private final double acceleration;
+        private final engine engineStatus;
+        private final double percentageThrottle;
+        private final double percentageBrake;
+        private final long readoutSequence;
+        private final long lastIgnitionSequence;
+        private final long lastBrakeSequence;
+        private final long lastMotorSequence;
+        private final VehicleProfile vehicle;
+        private final Disturbances.State disturbances;
+
+        private State(CarDynamics car) {
+            I = car.I;
+            propulsionForce = car.propulsionForce;
+            forceDrag = car.forceDrag;
+            motorTorque = car.motorTorque;
+            wheelTorque = car.wheelTorque;
+            brakeTorque = car.brakeTorque;
+            distance = car.distance;
+            speed = car.speed;
+            acceleration = car.acceleration;
+            engineStatus = car.engineStatus;
+            percentageThrottle = car.percentageThrottle;
+            percentageBrake = car.percentageBrake;
+            readoutSequence = car.readoutSequence;
+            lastIgnitionSequence = car.lastIgnitionSequence;
+            lastBrakeSequence = car.lastBrakeSequence;
+            lastMotorSequence = car.lastMotorSequence;
+            vehicle = car.vehicle;
+            disturbances = car.disturbances.getState();
+        }
+    }
+
+    /**
+     * @return a snapshot of this car. Messages in flight are not included.
+     */
+    State getState() {
+        return new State(this);
+    }
+
+    /**
+     * Continues from a snapshot taken with getState(). The snapshot is not
+     * modified, so it can be restored into any number of cars.
+     *
+     * @param state the snapshot.
+     */
+    void setState(State state) {
+        I = state.I;
+        propulsionForce = state.propulsionForce;
+        forceDrag = state.forceDrag;
+        motorTorque = state.motorTorque;
+        wheelTorque = state.wheelTorque;
+        brakeTorque = state.brakeTorque;
+        distance = state.distance;
+        speed = state.speed;
+        acceleration = state.acceleration;
+        engineStatus = state.engineStatus;
+        percentageThrottle = state.percentageThrottle;
+        percentageBrake = state.percentageBrake;
+        readoutSequence = state.readoutSequence;
+        lastIgnitionSequence = state.lastIgnitionSequence;
+        lastBrakeSequence = state.lastBrakeSequence;
+        lastMotorSequence = state.lastMotorSequence;
+        vehicle = state.vehicle;
+        disturbances = new Disturbances(state.disturbances);
     }
 }
@@ -0,0 +1,152 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Measures how many commands per second an external driver can push into a
+ * running car through CommandServer. The car is wired as in Main and runs in
+ * real time in a TickLoop; a client sends throttle and brake commands as fast
+ * as it can for a while, over TCP and over a Unix domain socket, in batches
+ * of several sizes.
+ *
+ * Reports commands per second received by the server and, once the client
+ * stops, how many were still queued for cruise control after one more tick
+ * (should be 0: the car keeps up however fast commands arrive).
+ *
+ * Usage: java -cp ... car.CommandBenchmark [--seconds S] [--batch N]
+ *
+ * Defaults to 3 seconds per run, for batches of 1, 16 and 256 commands.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class CommandBenchmark {
+
+    private static final double DEFAULT_SECONDS = 3;
+    private static final int[] DEFAULT_BATCHES = {1, 16, 256};
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        double seconds = DEFAULT_SECONDS;
+        int[] batches = DEFAULT_BATCHES;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--seconds") && i + 1 < args.length) {
+                    seconds = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                    batches = new int[]{Integer.parseInt(args[++i])};
+                    if (batches[0] < 1 || batches[0] > CommandCodec.MAX_BATCH) {
+                        throw new IllegalArgumentException(args[i]);
+                    }
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException argEx) { // Including NumberFormatException.
+            System.err.println("Usage: java car.CommandBenchmark [--seconds S] [--batch 1-" + CommandCodec.MAX_BATCH + "]");
+            System.exit(1);
+        }
+
+        // Same wiring as Main.
+        SimClock clock = SimClock.DEFAULT;
+        BlockingQueue<ActuatorInstruction> cruiseToDyn = new LinkedBlockingQueue<ActuatorInstruction>();
+        BlockingQueue<ActuatorInstruction> GUIToCruiseActInst = new LinkedBlockingQueue<ActuatorInstruction>();
+        BlockingQueue<CCInstruction> GUIToCruiseCCInst = new LinkedBlockingQueue<CCInstruction>();
+        BlockingQueue<ActuatorInstruction> GUIToDynPriority = new LinkedBlockingQueue<ActuatorInstruction>();
+        ReadoutRing readouts = new ReadoutRing(clock.getControlHz());
+        CarDynamics dynamics = new CarDynamics(cruiseToDyn, readouts, new Disturbances(0, true, true));
+        dynamics.setClock(clock);
+        dynamics.setPriorityLane(GUIToDynPriority);
+        CruiseControl cruise = new CruiseControl(readouts.newCursor(), GUIToCruiseCCInst, GUIToCruiseActInst, cruiseToDyn);
+        cruise.setClock(clock);
+        GUIToCruiseActInst.add(new ActuatorInstruction(Instructions.TURN_ON_IGNITION));
+        TickLoop loop = new TickLoop(clock.getTickNanos(), WaitStrategy.BLOCK, dynamics, cruise);
+
+        Path directory = Files.createTempDirectory("vroom");
+        Path socketFile = directory.resolve("commands.sock");
+        CommandServer server = new CommandServer(GUIToCruiseActInst, GUIToCruiseCCInst);
+        server.setPriorityLane(GUIToDynPriority);
+        server.listen(0);
+        server.listen(socketFile);
+        server.start();
+        loop.start("car");
+
+        System.out.println(String.format(Locale.ROOT, "%-5s %6s %12s %10s %8s", "via", "batch", "commands/s", "frames/s", "backlog"));
+        try {
+            for (int batch : batches) {
+                run("tcp", new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()), batch, seconds, server, GUIToCruiseActInst, clock);
+                run("unix", UnixDomainSocketAddress.of(socketFile), batch, seconds, server, GUIToCruiseActInst, clock);
+            }
+        } finally {
+            loop.stop();
+            server.close();
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void run(String name, SocketAddress address, int batch, double seconds, CommandServer server,
+            BlockingQueue<ActuatorInstruction> GUIToCruiseActInst, SimClock clock) throws IOException {
+        SocketChannel channel = SocketChannel.open(address instanceof UnixDomainSocketAddress
+                ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET);
+        channel.connect(address);
+
+        // Alternate throttle and brake, as a drive cycle script might.
+        ByteBuffer frame = ByteBuffer.allocateDirect(CommandCodec.frameBytes(batch));
+        CommandCodec.encodeHeader(frame, batch);
+        for (int i = 0; i < batch; i++) {
+            if (i % 2 == 0) {
+                CommandCodec.encodeCommand(frame, CommandCodec.COMMAND_MOTOR, i % 100);
+            } else {
+                CommandCodec.encodeCommand(frame, CommandCodec.COMMAND_BRAKE, 0);
+            }
+        }
+        frame.flip();
+
+        long startCommands = server.getCommands();
+        long startFrames = server.getFrames();
+        long sentFrames = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        while (System.nanoTime() - end < 0) {
+            frame.rewind();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            sentFrames++;
+        }
+        channel.close();
+
+        // Wait for the server to read everything, then for cruise control to
+        // drain it.
+        while (server.getFrames() - startFrames < sentFrames) {
+            Thread.yield();
+        }
+        long elapsed = System.nanoTime() - start;
+        try {
+            Thread.sleep(2 * clock.getTickNanos() / 1000000);
+        } catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-5s %6d %12.0f %10.0f %8d",
+                name,
+                batch,
+                (server.getCommands() - startCommands) / (elapsed / 1e9),
+                (server.getFrames() - startFrames) / (elapsed / 1e9),
+                GUIToCruiseActInst.size()));
+    }
+}
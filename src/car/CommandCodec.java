@@ -0,0 +1,177 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary framing for driver commands sent into a running car by
+ * external drivers (e.g. drive-cycle scripts); see CommandServer. A frame
+ * holds a batch of commands, applied in order.
+ *
+ * Each frame is laid out in network byte order as:
+ * <pre>
+ *   int    length      - number of bytes following this field.
+ *   byte   type        - FRAME_COMMANDS.
+ *   then (length - 1) / COMMAND_BYTES commands, each:
+ *   byte   command     - COMMAND_BRAKE etc.
+ *   double value       - 0-100% for BRAKE and MOTOR, km/h for
+ *                        CRUISE_ACTIVATE and CRUISE_SET_SPEED; otherwise
+ *                        ignored.
+ * </pre>
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public final class CommandCodec {
+
+    public static final byte FRAME_COMMANDS = 3; // After ReadoutCodec's and TelemetryStore's.
+    public static final int HEADER_BYTES = 4; // The length prefix.
+    public static final int COMMAND_BYTES = 1 + 8;
+    public static final int MAX_BATCH = 4096; // Commands per frame.
+    public static final int MAX_FRAME_BYTES = HEADER_BYTES + 1 + (MAX_BATCH * COMMAND_BYTES);
+
+    // Commands.
+    public static final byte COMMAND_BRAKE = 1;
+    public static final byte COMMAND_MOTOR = 2;
+    public static final byte COMMAND_IGNITION_ON = 3;
+    public static final byte COMMAND_IGNITION_OFF = 4;
+    public static final byte COMMAND_CRUISE_ACTIVATE = 5;
+    public static final byte COMMAND_CRUISE_SET_SPEED = 6;
+    public static final byte COMMAND_CRUISE_DEACTIVATE = 7;
+
+    /**
+     * Receives decoded commands.
+     */
+    public interface Handler {
+
+        /**
+         * @param instruction the command.
+         * @param percentage 0-100% for BRAKE and MOTOR, otherwise 0.
+         */
+        void actuate(Instructions instruction, double percentage);
+
+        /**
+         * @param instruction the command.
+         * @param speedSetting km/h; 0 for DEACTIVATE.
+         */
+        void cruise(CCInstructions instruction, double speedSetting);
+    }
+
+    private CommandCodec() {
+    }
+
+    /**
+     * @param commands commands in the frame.
+     * @return size of the whole frame.
+     */
+    public static int frameBytes(int commands) {
+        return HEADER_BYTES + 1 + (commands * COMMAND_BYTES);
+    }
+
+    /**
+     * Starts a frame at the buffer's current position. Follow it with exactly
+     * this many encodeCommand() calls.
+     *
+     * @param buffer must have at least frameBytes(commands) remaining.
+     * @param commands commands in the frame, 1 to MAX_BATCH.
+     */
+    public static void encodeHeader(ByteBuffer buffer, int commands) {
+        if (commands < 1 || commands > MAX_BATCH) {
+            throw new IllegalArgumentException("Batch of " + commands + " commands");
+        }
+        buffer.putInt(frameBytes(commands) - HEADER_BYTES);
+        buffer.put(FRAME_COMMANDS);
+    }
+
+    /**
+     * Writes one command of a frame at the buffer's current position.
+     *
+     * @param buffer the buffer.
+     * @param command COMMAND_BRAKE etc.
+     * @param value percentage or speed setting, or 0 if unused.
+     */
+    public static void encodeCommand(ByteBuffer buffer, byte command, double value) {
+        buffer.put(command);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Checks for a complete frame at the buffer's current position, without
+     * moving the position.
+     *
+     * @param buffer positioned at the start of a frame.
+     * @return the size of the whole frame, or -1 if not all of it is in the
+     * buffer yet.
+     * @throws IllegalArgumentException if the length cannot be that of a
+     * command frame.
+     */
+    public static int completeFrameBytes(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES) {
+            return -1;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < 1 + COMMAND_BYTES || length > MAX_FRAME_BYTES - HEADER_BYTES
+                || (length - 1) % COMMAND_BYTES != 0) {
+            throw new IllegalArgumentException("Bad command frame length " + length);
+        }
+        return buffer.remaining() < HEADER_BYTES + length ? -1 : HEADER_BYTES + length;
+    }
+
+    /**
+     * Reads a complete command frame starting at the buffer's current
+     * position, in place, passing each command to the handler. The whole
+     * frame is checked first, so either every command in it is passed on or
+     * none are.
+     *
+     * @param buffer positioned at the start of a frame; see
+     * completeFrameBytes().
+     * @param handler receives the commands.
+     * @return number of commands.
+     * @throws IllegalArgumentException if the frame is not a command frame or
+     * holds a command that cannot be read; the position is then unchanged.
+     */
+    public static int decode(ByteBuffer buffer, Handler handler) {
+        int start = buffer.position();
+        int frameBytes = completeFrameBytes(buffer);
+        if (frameBytes < 0) {
+            throw new IllegalArgumentException("Incomplete command frame");
+        }
+        byte type = buffer.get(start + HEADER_BYTES);
+        if (type != FRAME_COMMANDS) {
+            throw new IllegalArgumentException("Not a command frame (type " + type + ")");
+        }
+        int first = start + HEADER_BYTES + 1;
+        int end = start + frameBytes;
+        for (int i = first; i < end; i += COMMAND_BYTES) {
+            byte command = buffer.get(i);
+            if (command < COMMAND_BRAKE || command > COMMAND_CRUISE_DEACTIVATE) {
+                throw new IllegalArgumentException("Unknown command " + command);
+            }
+            if (Double.isNaN(buffer.getDouble(i + 1))) {
+                throw new IllegalArgumentException("Command " + command + " with NaN value");
+            }
+        }
+
+        for (int i = first; i < end; i += COMMAND_BYTES) {
+            double value = buffer.getDouble(i + 1);
+            byte command = buffer.get(i);
+            if (command == COMMAND_BRAKE) {
+                handler.actuate(Instructions.BRAKE, value);
+            } else if (command == COMMAND_MOTOR) {
+                handler.actuate(Instructions.MOTOR, value);
+            } else if (command == COMMAND_IGNITION_ON) {
+                handler.actuate(Instructions.TURN_ON_IGNITION, 0);
+            } else if (command == COMMAND_IGNITION_OFF) {
+                handler.actuate(Instructions.TURN_OFF_IGNITION, 0);
+            } else if (command == COMMAND_CRUISE_ACTIVATE) {
+                handler.cruise(CCInstructions.ACTIVATE, value);
+            } else if (command == COMMAND_CRUISE_SET_SPEED) {
+                handler.cruise(CCInstructions.SET_SPEED, value);
+            } else {
+                handler.cruise(CCInstructions.DEACTIVATE, 0);
+            }
+        }
+        buffer.position(end);
+        return (frameBytes - HEADER_BYTES - 1) / COMMAND_BYTES;
+    }
+}
@@ -0,0 +1,291 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Accepts driver commands from external drivers (e.g. drive-cycle scripts) on
+ * a localhost TCP port and/or a Unix domain socket, and passes them to cruise
+ * control and the car exactly as the GUI does. Frames are encoded with
+ * CommandCodec; each may hold a batch of commands.
+ *
+ * Every connection has its own direct buffer that the socket reads into, and
+ * frames are decoded from it in place, straight into instructions on the
+ * queues. Commands from different connections are not ordered relative to
+ * each other. The GUI does not see commands given here, so its display of
+ * the cruise control state can be out of date.
+ *
+ * A connection that sends anything that is not a command frame is closed.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class CommandServer implements Runnable, CommandCodec.Handler {
+
+    private static final Logger LOG = Logger.getLogger(CommandServer.class.getName());
+
+    private final Selector selector;
+    private final List<ServerSocketChannel> serverChannels = new ArrayList<ServerSocketChannel>();
+    private final List<Path> socketFiles = new ArrayList<Path>(); // Removed on close().
+    private Thread selectorThread;
+
+    // Where commands go, as for the GUI.
+    private final BlockingQueue<ActuatorInstruction> GUIToCruiseActInst;
+    private final BlockingQueue<CCInstruction> GUIToCruiseCCInst;
+    private BlockingQueue<ActuatorInstruction> GUIToDynPriority; // Optional.
+
+    private volatile long commands = 0; // Only written by the selector thread.
+    private volatile long frames = 0; // Only written by the selector thread.
+
+    /**
+     * Creates a server with nothing to listen on yet; see listen().
+     *
+     * @param GUIToCruiseActInst queue for actuator instructions.
+     * @param GUIToCruiseCCInst queue for cruise control instructions.
+     * @throws IOException if the selector cannot be opened.
+     */
+    public CommandServer(
+            BlockingQueue<ActuatorInstruction> GUIToCruiseActInst,
+            BlockingQueue<CCInstruction> GUIToCruiseCCInst) throws IOException {
+        this.GUIToCruiseActInst = GUIToCruiseActInst;
+        this.GUIToCruiseCCInst = GUIToCruiseCCInst;
+        selector = Selector.open();
+    }
+
+    /**
+     * Sends brake and ignition off commands straight to CarDynamics, as
+     * GUI.setPriorityLane(). Call before start().
+     *
+     * @param GUIToDynPriority the car's priority lane, or null for none.
+     */
+    public void setPriorityLane(BlockingQueue<ActuatorInstruction> GUIToDynPriority) {
+        this.GUIToDynPriority = GUIToDynPriority;
+    }
+
+    /**
+     * Listens on a TCP port on the loopback interface. Call before start().
+     *
+     * @param port TCP port; 0 picks a free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    public void listen(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        register(channel);
+    }
+
+    /**
+     * Listens on a Unix domain socket. Call before start().
+     *
+     * @param socketFile path of the socket; must not exist yet. Removed again
+     * by close().
+     * @throws IOException if the socket cannot be bound.
+     */
+    public void listen(Path socketFile) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socketFile));
+        socketFiles.add(socketFile);
+        register(channel);
+    }
+
+    private void register(ServerSocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_ACCEPT);
+        serverChannels.add(channel);
+    }
+
+    /**
+     * @return the TCP port the server is listening on, or -1 if none.
+     */
+    public int getPort() {
+        for (ServerSocketChannel channel : serverChannels) {
+            try {
+                if (channel.getLocalAddress() instanceof InetSocketAddress) {
+                    return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+                }
+            } catch (IOException ioEx) {
+                // Closed; try the next.
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return commands received so far.
+     */
+    public long getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return frames (batches of commands) received so far.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Starts the selector thread.
+     */
+    public synchronized void start() {
+        if (selectorThread == null) {
+            selectorThread = new Thread(this, "command-server");
+            selectorThread.setDaemon(true);
+            selectorThread.start();
+        }
+    }
+
+    /**
+     * Stops the selector thread and closes every connection.
+     */
+    public void close() {
+        try {
+            // Closing the selector only deregisters connections, so close
+            // them first or drivers would never see end of stream.
+            for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+                try {
+                    key.channel().close();
+                } catch (IOException ioEx) {
+                    // Do nothing. The connection is being discarded anyway.
+                }
+            }
+            selector.close();
+            for (ServerSocketChannel channel : serverChannels) {
+                channel.close();
+            }
+            for (Path socketFile : socketFiles) {
+                Files.deleteIfExists(socketFile);
+            }
+        } catch (IOException ioEx) {
+            LOG.log(Level.WARNING, "Error closing command server", ioEx);
+        }
+    }
+
+    /**
+     * Selector loop.
+     */
+    @Override
+    public void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException closedEx) {
+            // close() was called.
+        } catch (IOException ioEx) {
+            LOG.log(Level.SEVERE, "Command server stopped", ioEx);
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(2 * CommandCodec.MAX_FRAME_BYTES));
+    }
+
+    /**
+     * Reads what the driver has sent and passes on every complete frame. A
+     * partial frame is kept for the next read.
+     */
+    private void read(SelectionKey key) {
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        try {
+            if (((SocketChannel) key.channel()).read(buffer) < 0) {
+                disconnect(key);
+                return;
+            }
+        } catch (IOException ioEx) {
+            disconnect(key);
+            return;
+        }
+
+        buffer.flip();
+        try {
+            while (CommandCodec.completeFrameBytes(buffer) > 0) {
+                commands += CommandCodec.decode(buffer, this);
+                frames++;
+            }
+        } catch (IllegalArgumentException argEx) {
+            LOG.log(Level.WARNING, "Closing command connection: {0}", argEx.getMessage());
+            disconnect(key);
+            return;
+        }
+        buffer.compact();
+    }
+
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ioEx) {
+            // Do nothing. The connection is being discarded anyway.
+        }
+    }
+
+    /**
+     * Queues a decoded actuator command, as GUI.sendActuatorInstruction().
+     * Blocks if the queue is bounded and full, which holds up every
+     * connection's reads rather than dropping commands.
+     */
+    @Override
+    public void actuate(Instructions instruction, double percentage) {
+        ActuatorInstruction actuatorInstruction = new ActuatorInstruction(instruction, percentage);
+        try {
+            if (GUIToDynPriority != null && actuatorInstruction.isSafetyCritical()) {
+                GUIToDynPriority.put(actuatorInstruction);
+            } else {
+                GUIToCruiseActInst.put(actuatorInstruction);
+            }
+        } catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues a decoded cruise control command. Blocks as actuate().
+     */
+    @Override
+    public void cruise(CCInstructions instruction, double speedSetting) {
+        try {
+            GUIToCruiseCCInst.put(new CCInstruction(instruction, speedSetting));
+        } catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
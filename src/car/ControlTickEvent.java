@@ -0,0 +1,44 @@
+package car;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one CruiseControl tick, with the time spent in
+ * each stage. Only ticks longer than the threshold are recorded.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+@Name("car.ControlTick")
+@Label("Control Tick")
+@Category({"Vroom", "Cruise Control"})
+@Description("A CruiseControl tick")
+@Threshold("1 ms")
+@StackTrace(false)
+class ControlTickEvent extends jdk.jfr.Event {
+
+    @Label("Readout Sequence")
+    @Description("Number of the readout controlled with, 0 if none yet")
+    long sequence;
+
+    @Label("Stale")
+    @Description("The watchdog judged the readout too old to control with")
+    boolean stale;
+
+    @Label("Receive")
+    @Timespan(Timespan.NANOSECONDS)
+    long receiveNanos;
+
+    @Label("Control")
+    @Timespan(Timespan.NANOSECONDS)
+    long controlNanos;
+
+    @Label("Send")
+    @Timespan(Timespan.NANOSECONDS)
+    long sendNanos;
+}
@@ -3,6 +3,8 @@ package car;
 import car.ActuatorInstruction.Instructions;
 import car.CCInstruction.CCInstructions;
 import car.CarDynamics.engine;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 
@@ -17,7 +19,7 @@ import java.util.concurrent.BlockingQueue;
 public class CruiseControl extends TimerTask implements Runnable {
 
     // BlockingQueues used for message passing between threads.
-    private BlockingQueue<DynamicsReadout> dynToCruise;
+    private ReadoutRing.Cursor dynToCruise;
     private BlockingQueue<CCInstruction> GUIToCruiseCCInst;
     private BlockingQueue<ActuatorInstruction> GUIToCruiseActInst;
     private BlockingQueue<ActuatorInstruction> cruiseToDyn;
@@ -31,29 +33,37 @@ public class CruiseControl extends TimerTask implements Runnable {
     private double prevError = 0;
     private double totError = 0; //Related to integral control of PID.
     private int totErrorCounter = 0; //Reset integral error to prevent undisirable controller action.
-    private final int TOT_ERROR_MAX_COUNTS = 200;
+    static final int TOT_ERROR_MAX_COUNTS = 200;
     private double setSpeed = 0; //km/h
+    private double tickSeconds = Main.SIM_TICK_S; // Control period; see setClock().
     
     // PID Gains
-    private double Kp = 4;
-    private double Ki = 4;
-    private double Kd = 2;
+    static final double DEFAULT_KP = 4;
+    static final double DEFAULT_KI = 4;
+    static final double DEFAULT_KD = 2;
+    private double Kp = DEFAULT_KP;
+    private double Ki = DEFAULT_KI;
+    private double Kd = DEFAULT_KD;
     
-    ActuatorInstruction newInstruction; //new instruction from either PID output or driver. Driver instruction is alway of highest priority.
-    ActuatorInstruction actInstruction; //actuator instruction from driver.
+    private final List<ActuatorInstruction> newInstructions = new ArrayList<ActuatorInstruction>(); //new instructions from either PID output or driver. Driver instructions are alway of highest priority.
+    private final List<ActuatorInstruction> actBatch = new ArrayList<ActuatorInstruction>(); //actuator instructions from driver, as recieved.
+    private final List<ActuatorInstruction> actInstructions = new ArrayList<ActuatorInstruction>(); //actuator instructions from driver, coalesced.
+    private final List<CCInstruction> CCBatch = new ArrayList<CCInstruction>(); //cruise control instructions from driver.
     DynamicsReadout readout = new DynamicsReadout(); //dynamics readout for the PID controller to use to calculate error.
+    private DynamicsReadout freshReadout; //readout recieved this tick, or null if none arrived.
+    private StalenessWatchdog watchdog = new StalenessWatchdog(); //decides when readout is too old to control with.
 
     /**
      * CruiseControl constructor. Requires initialisation of the message passing
      * queues.
      * 
-     * @param dynToCruise A BlockingQueues.
+     * @param dynToCruise Cursor on CarDynamics' readout ring.
      * @param GUIToCruiseCCInst A BlockingQueues.
      * @param GUIToCruiseActInst A BlockingQueues.
      * @param cruiseToDyn A BlockingQueues.
      */
     public CruiseControl(
-            BlockingQueue<DynamicsReadout> dynToCruise,
+            ReadoutRing.Cursor dynToCruise,
             BlockingQueue<CCInstruction> GUIToCruiseCCInst,
             BlockingQueue<ActuatorInstruction> GUIToCruiseActInst,
             BlockingQueue<ActuatorInstruction> cruiseToDyn) {
@@ -68,9 +78,39 @@ public class CruiseControl extends TimerTask implements Runnable {
      */
     @Override
     public void run() {
+        ControlTickEvent event = new ControlTickEvent();
+        if (event.isEnabled()) {
+            runRecorded(event);
+            return;
+        }
+        recieve();
+        generateNextInstruction();
         send();
+    }
+
+    /**
+     * run(), timing each stage for a Flight Recorder event.
+     *
+     * @param event the tick's event.
+     */
+    private void runRecorded(ControlTickEvent event) {
+        event.begin();
+        long start = System.nanoTime();
         recieve();
+        long received = System.nanoTime();
         generateNextInstruction();
+        long controlled = System.nanoTime();
+        send();
+        long sent = System.nanoTime();
+        event.end();
+        if (event.shouldCommit()) {
+            event.sequence = readout.getSequence();
+            event.stale = watchdog.isStale();
+            event.receiveNanos = received - start;
+            event.controlNanos = controlled - received;
+            event.sendNanos = sent - controlled;
+            event.commit();
+        }
     }
 
     /*
@@ -80,6 +120,14 @@ public class CruiseControl extends TimerTask implements Runnable {
      */
     private void executeCCInstruction(CCInstruction CCInstruction) {
         CCInstructions aCCInstruction = CCInstruction.getInstruction();
+        CCInstructionEvent event = new CCInstructionEvent();
+        if (event.isEnabled()) {
+            event.instruction = aCCInstruction.name();
+            event.speedSetting = CCInstruction.getSpeedSetting();
+            event.sequence = CCInstruction.getSequence();
+            event.latencyNanos = System.nanoTime() - CCInstruction.getTimestampNanos();
+            event.commit();
+        }
         if (aCCInstruction == CCInstructions.ACTIVATE) {
             setTakeControl(true);
             setSpeed = CCInstruction.getSpeedSetting();
@@ -99,8 +147,8 @@ public class CruiseControl extends TimerTask implements Runnable {
      */
     private void send() {
         
-        //Send an instruction to CarDynamics.
-        if (newInstruction != null) { // Attempt to send an instruction only if one exists.
+        //Send this tick's instructions to CarDynamics, if there are any.
+        for (ActuatorInstruction newInstruction : newInstructions) {
             try {
                 cruiseToDyn.put(newInstruction); 
             } catch (InterruptedException intEx) {
@@ -114,51 +162,46 @@ public class CruiseControl extends TimerTask implements Runnable {
      */
     private void recieve() {
         
-        //Recieve an instruction from GUI.
-        if (GUIToCruiseActInst.size() > 0) {
-            try {
-                actInstruction = GUIToCruiseActInst.take();
-            } catch (InterruptedException intEx) {
-                // Do nothing. This exception will not lead to anything disastrous.
-            }
-        } else { // No new instructions. Required to ensure driver inputs are passed onto CarDynamics correctly when there are new ones.
-            actInstruction = null;
-        }
+        //Recieve every instruction from GUI, dropping superseded ones. Empty
+        //if there are none, so driver inputs are only passed on once.
+        actBatch.clear();
+        GUIToCruiseActInst.drainTo(actBatch);
+        actInstructions.clear();
+        ActuatorInstruction.coalesce(actBatch, actInstructions);
 
-        //Recieve an instruction from GUI.
-        if (GUIToCruiseCCInst.size() > 0) {
-            try {
-                CCInstruction CCInstruction = GUIToCruiseCCInst.take();
-                executeCCInstruction(CCInstruction);
-
-            } catch (InterruptedException intEx) {
-                // Do nothing. This exception will not lead to anything disastrous.
-            }
+        //Recieve every cruise control instruction from GUI, in order.
+        CCBatch.clear();
+        GUIToCruiseCCInst.drainTo(CCBatch);
+        for (CCInstruction CCInstruction : CCBatch) {
+            executeCCInstruction(CCInstruction);
         }
 
-        //Recieve an instruction from CarDynamics.
-        if (dynToCruise.size() > 0) {
-            try {
-                readout = dynToCruise.take();
-
-                engineStatus = readout.getEngineStatus();
-            } catch (InterruptedException intEx) {
-                // Do nothing. This exception will not lead to anything disastrous.
-            }
+        //Recieve a readout from CarDynamics.
+        freshReadout = dynToCruise.poll();
+        if (freshReadout != null) {
+            readout = freshReadout;
+            engineStatus = readout.getEngineStatus();
         }
     }
 
     /**
-     * Figuring out what the next ActuatorInstruction should be.
+     * Figuring out what the next ActuatorInstructions should be.
      */
     private void generateNextInstruction() {
-        if (ccInControl() && (engineStatus == engine.ON) && (actInstruction == null)) {
-            // newInstruction = some new instruction generated by cruise control.
-            // Note, there is no braking control to slow the car down.
-            newInstruction = new ActuatorInstruction(Instructions.MOTOR, doPID());
+        boolean stale = watchdog.check(freshReadout, readout);
+        newInstructions.clear();
+        if (ccInControl() && (engineStatus == engine.ON) && actInstructions.isEmpty()) {
+            if (!stale) {
+                // New instruction generated by cruise control.
+                // Note, there is no braking control to slow the car down.
+                newInstructions.add(new ActuatorInstruction(Instructions.MOTOR, doPID(), readout.getTimestampNanos()));
+            } else if (watchdog.getMode() == StalenessWatchdog.DegradedMode.RELEASE) {
+                newInstructions.add(new ActuatorInstruction(Instructions.MOTOR, 0));
+            }
+            // Otherwise send nothing, holding the current throttle.
         } else {
-            //pass the instruction provided by the driver.
-            newInstruction = actInstruction;
+            //pass the instructions provided by the driver.
+            newInstructions.addAll(actInstructions);
         }
     }
 
@@ -183,15 +226,134 @@ public class CruiseControl extends TimerTask implements Runnable {
         }
 
         // PID controller.
-        PIDSetSpeed = Kp * error + (Ki * totError * Main.SIM_TICK_S) + (Kd * (error - prevError) / Main.SIM_TICK_S);
+        PIDSetSpeed = Kp * error + (Ki * totError * tickSeconds) + (Kd * (error - prevError) / tickSeconds);
 
         // Mapping the PID output to the throttle.
         PIDSetSpeed = PIDSetSpeed > 100 ? 100 : PIDSetSpeed;
         PIDSetSpeed = PIDSetSpeed < 0 ? 0 : PIDSetSpeed;
 
+        PIDEvent event = new PIDEvent();
+        if (event.isEnabled()) {
+            // The same terms, separately; the sum above is left as it was so
+            // its rounding does not change.
+            event.setSpeed = setSpeed;
+            event.speed = readout.getSpeedKPH();
+            event.proportional = Kp * error;
+            event.integral = Ki * totError * tickSeconds;
+            event.derivative = Kd * (error - prevError) / tickSeconds;
+            event.output = PIDSetSpeed;
+            event.commit();
+        }
+
         return PIDSetSpeed;
     }
 
+    /**
+     * Changes the PID gains, e.g. to compare tunings from the same starting
+     * point.
+     *
+     * @param Kp proportional gain.
+     * @param Ki integral gain.
+     * @param Kd derivative gain.
+     */
+    public void setGains(double Kp, double Ki, double Kd) {
+        this.Kp = Kp;
+        this.Ki = Ki;
+        this.Kd = Kd;
+    }
+
+    /**
+     * Sets the rate the controller runs at, i.e. how often run() is called.
+     *
+     * @param clock the rates; only the control rate is used.
+     */
+    public void setClock(SimClock clock) {
+        tickSeconds = clock.getTickSeconds();
+    }
+
+    /**
+     * Replaces the staleness watchdog, e.g. to add an age limit or change the
+     * degraded mode.
+     *
+     * @param watchdog the watchdog.
+     */
+    public void setWatchdog(StalenessWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * @return the staleness watchdog, with its measurements.
+     */
+    public StalenessWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Snapshot of the controller, including its PID accumulators and the
+     * readout it is currently holding.
+     */
+    static final class State {
+
+        private final engine engineStatus;
+        private final boolean takeControl;
+        private final double error;
+        private final double prevError;
+        private final double totError;
+        private final int totErrorCounter;
+        private final double setSpeed;
+        private final double tickSeconds;
+        private final double Kp;
+        private final double Ki;
+        private final double Kd;
+        private final DynamicsReadout readout;
+        private final StalenessWatchdog watchdog;
+
+        private State(CruiseControl cruise) {
+            engineStatus = cruise.engineStatus;
+            takeControl = cruise.takeControl;
+            error = cruise.error;
+            prevError = cruise.prevError;
+            totError = cruise.totError;
+            totErrorCounter = cruise.totErrorCounter;
+            setSpeed = cruise.setSpeed;
+            tickSeconds = cruise.tickSeconds;
+            Kp = cruise.Kp;
+            Ki = cruise.Ki;
+            Kd = cruise.Kd;
+            // Messages are never modified after construction, so can be shared.
+            readout = cruise.readout;
+            watchdog = new StalenessWatchdog(cruise.watchdog);
+        }
+    }
+
+    /**
+     * @return a snapshot of this controller. Messages in flight are not included.
+     */
+    State getState() {
+        return new State(this);
+    }
+
+    /**
+     * Continues from a snapshot taken with getState().
+     *
+     * @param state the snapshot.
+     */
+    void setState(State state) {
+        engineStatus = state.engineStatus;
+        takeControl = state.takeControl;
+        error = state.error;
+        prevError = state.prevError;
+        totError = state.totError;
+        totErrorCounter = state.totErrorCounter;
+        setSpeed = state.setSpeed;
+        tickSeconds = state.tickSeconds;
+        Kp = state.Kp;
+        Ki = state.Ki;
+        Kd = state.Kd;
+        readout = state.readout;
+        watchdog = new StalenessWatchdog(state.watchdog);
+    }
+
     private void setTakeControl(boolean value) {
         takeControl = value;
     }
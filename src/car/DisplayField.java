@@ -0,0 +1,53 @@
+package car;
+
+import javax.swing.JTextField;
+
+/**
+ * A GUI text field showing a value to one decimal place followed by a unit,
+ * e.g. "87.3 km/h". The text is only rebuilt and set when the displayed digits
+ * actually change, and it is formatted into a reused buffer rather than with
+ * String.format.
+ *
+ * Must only be used from the Swing event dispatch thread.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+class DisplayField {
+
+    private final JTextField field;
+    private final String suffix;
+    private final StringBuilder text = new StringBuilder(16);
+    private long displayedTenths = Long.MIN_VALUE; // Nothing displayed yet.
+
+    /**
+     * @param field the text field to update.
+     * @param suffix appended after the number, e.g. " km/h" or "%".
+     */
+    DisplayField(JTextField field, String suffix) {
+        this.field = field;
+        this.suffix = suffix;
+    }
+
+    /**
+     * Displays a value, rounded to one decimal place.
+     *
+     * @param value the value to display.
+     * @return true if the field's text changed.
+     */
+    boolean update(double value) {
+        long tenths = Math.round(value * 10);
+        if (tenths == displayedTenths) {
+            return false;
+        }
+        displayedTenths = tenths;
+
+        text.setLength(0);
+        if (tenths < 0) {
+            text.append('-');
+            tenths = -tenths;
+        }
+        text.append(tenths / 10).append('.').append((char) ('0' + (tenths % 10))).append(suffix);
+        field.setText(text.toString());
+        return true;
+    }
+}
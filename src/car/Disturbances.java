@@ -13,6 +13,11 @@ public class Disturbances {
     private double windDisturbance = 0; // In m/s.
     private double angleDisturbance = 0; // In degrees.
     
+    private final ReplayableRandom rand;
+    private final boolean windEnabled;
+    private final boolean hillsEnabled;
+    private final double windScale; // Multiplies gust strength and bounds.
+    
     // 144km/h - Highest recorded wind speed in chch in the last 30 days (01/08/12 - 01/09/12).
     private static final double MAX_WIND_SPEED = 40;
     
@@ -33,15 +38,71 @@ public class Disturbances {
     // Steepest incline/ decline street is 19 degrees, so we will use 6 degrees (approx a third of max.) as a typical value.
     private static final double MAX_INCLINE = 6;
 
+    static final int SAVED_SIZE = 4 + ReplayableRandom.SAVED_SIZE; // Values written by save().
+
+    /**
+     * Disturbances with both wind and hills, seeded differently every run.
+     */
+    public Disturbances() {
+        this(new ReplayableRandom(new Random().nextLong()), true, true, 1);
+    }
+
+    /**
+     * Reproducible disturbances. The same seed always gives the same sequence
+     * of disturbances for the same sequence of speeds.
+     *
+     * @param seed random number generator seed.
+     * @param windEnabled false to keep wind speed at zero.
+     * @param hillsEnabled false to keep the road flat.
+     */
+    public Disturbances(long seed, boolean windEnabled, boolean hillsEnabled) {
+        this(seed, windEnabled, hillsEnabled, 1);
+    }
+
+    /**
+     * Reproducible disturbances with stronger or weaker wind gusts.
+     *
+     * @param seed random number generator seed.
+     * @param windEnabled false to keep wind speed at zero.
+     * @param hillsEnabled false to keep the road flat.
+     * @param windScale multiplies the usual gust strength and maximum wind
+     * speed, e.g. 3 for a storm.
+     */
+    public Disturbances(long seed, boolean windEnabled, boolean hillsEnabled, double windScale) {
+        this(new ReplayableRandom(seed), windEnabled, hillsEnabled, windScale);
+    }
+
+    /**
+     * Disturbances continuing exactly from a snapshot.
+     *
+     * @param state as returned by getState().
+     */
+    Disturbances(State state) {
+        this(state.rand.copy(), state.windEnabled, state.hillsEnabled, state.windScale);
+        windDisturbance = state.windDisturbance;
+        angleDisturbance = state.angleDisturbance;
+        windGustTick = state.windGustTick;
+        hillDisturbanceTick = state.hillDisturbanceTick;
+    }
+
+    private Disturbances(ReplayableRandom rand, boolean windEnabled, boolean hillsEnabled, double windScale) {
+        this.rand = rand;
+        this.windEnabled = windEnabled;
+        this.hillsEnabled = hillsEnabled;
+        this.windScale = windScale;
+    }
+
     /**
      * Generates new disturbance values.
      * 
      * @param speed Required to figure out whether a new hillDisturbance should be generated.
      */
     public void runDisturbances(double speed) {
-        generateWindDisturbance();
+        if (windEnabled) {
+            generateWindDisturbance();
+        }
 
-        if (speed > 0) {
+        if (hillsEnabled && speed > 0) {
             generateHillDisturbance();
         }
     }
@@ -52,13 +113,13 @@ public class Disturbances {
     private void generateWindDisturbance() {
         //Generating a new wind gust disturbance value ever so often.
         if (windGustTick == MAX_WIND_GUST_TICK) {
-            Random rand = new Random();
-            windDisturbance = STD_WIND_GUST * rand.nextGaussian();
+            double maxWindSpeed = MAX_WIND_SPEED * windScale;
+            windDisturbance = STD_WIND_GUST * windScale * rand.nextGaussian();
 
             // Checking wind gust bounds. There will only be a very small chance (~0.3%) 
             // that the random number generator will generate a number outside the bounds.
-            windDisturbance = windDisturbance > MAX_WIND_SPEED ? MAX_WIND_SPEED : windDisturbance;
-            windDisturbance = windDisturbance < -MAX_WIND_SPEED ? -MAX_WIND_SPEED : windDisturbance;
+            windDisturbance = windDisturbance > maxWindSpeed ? maxWindSpeed : windDisturbance;
+            windDisturbance = windDisturbance < -maxWindSpeed ? -maxWindSpeed : windDisturbance;
 
             windGustTick = 0;
         } else {
@@ -74,7 +135,6 @@ public class Disturbances {
     private void generateHillDisturbance() {
         //Generating a new hill disturbance value ever so often.
         if (hillDisturbanceTick == MAX_HILL_DISTURBANCE_TICK) { 
-            Random rand = new Random();
             double hillAngleChange = MAX_HILL_ANGLE_CHANGE * rand.nextDouble();
             
             //deciding hill change direction. True = addition to current angle, false = subtraction.
@@ -117,4 +177,70 @@ public class Disturbances {
     public double getHillDisturbance() {
         return angleDisturbance;
     }
+
+    /**
+     * Writes everything that changes as disturbances are generated (not the
+     * settings given to the constructor) as SAVED_SIZE longs, e.g. to keep a
+     * large fleet's disturbances off the heap.
+     *
+     * @param buf destination.
+     * @param offset index of the first value.
+     */
+    void save(long[] buf, int offset) {
+        buf[offset] = Double.doubleToRawLongBits(windDisturbance);
+        buf[offset + 1] = Double.doubleToRawLongBits(angleDisturbance);
+        buf[offset + 2] = windGustTick;
+        buf[offset + 3] = hillDisturbanceTick;
+        rand.save(buf, offset + 4);
+    }
+
+    /**
+     * Continues from values written by save(), by a generator with the same
+     * settings.
+     *
+     * @param buf source.
+     * @param offset index of the first value.
+     */
+    void restore(long[] buf, int offset) {
+        windDisturbance = Double.longBitsToDouble(buf[offset]);
+        angleDisturbance = Double.longBitsToDouble(buf[offset + 1]);
+        windGustTick = (int) buf[offset + 2];
+        hillDisturbanceTick = (int) buf[offset + 3];
+        rand.restore(buf, offset + 4);
+    }
+
+    /**
+     * Snapshot of everything needed to continue generating the same
+     * disturbances.
+     */
+    static final class State {
+
+        private final double windDisturbance;
+        private final double angleDisturbance;
+        private final int windGustTick;
+        private final int hillDisturbanceTick;
+        private final boolean windEnabled;
+        private final boolean hillsEnabled;
+        private final double windScale;
+        private final ReplayableRandom rand; // Private copy; never advanced.
+
+        private State(Disturbances disturbances) {
+            windDisturbance = disturbances.windDisturbance;
+            angleDisturbance = disturbances.angleDisturbance;
+            windGustTick = disturbances.windGustTick;
+            hillDisturbanceTick = disturbances.hillDisturbanceTick;
+            windEnabled = disturbances.windEnabled;
+            hillsEnabled = disturbances.hillsEnabled;
+            windScale = disturbances.windScale;
+            rand = disturbances.rand.copy();
+        }
+    }
+
+    /**
+     * @return a snapshot of this generator. Pass it to Disturbances(State) to
+     * continue from this point.
+     */
+    State getState() {
+        return new State(this);
+    }
 }
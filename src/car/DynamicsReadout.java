@@ -17,6 +17,8 @@ public class DynamicsReadout {
     private double speed; //current vehicle speed.
     private double gradient; //hill angle (degrees) - positive=uphill, negative=downhill.
     private double windSpeed; //Wind speed m/s. Positive=same direction as car's motion.
+    private long sequence; //Position in the car's stream of readouts, from 1. 0 = unknown.
+    private long timestampNanos; //System.nanoTime() when the car's state was sampled. 0 = unknown.
 
     /**
      * Constructor to create a null message (all instance variable are zero).
@@ -59,6 +61,50 @@ public class DynamicsReadout {
         this.windSpeed = windSpeed;
     }
 
+    /**
+     * Constructor to initialise message, with its place in the stream and the
+     * time it was sampled.
+     *
+     * @param distance in metres.
+     * @param speed in m/s.
+     * @param engineStatus
+     * @param throttlePercentage range is 0-100.
+     * @param brakePercentage range is 0-100.
+     * @param gradient in degrees.
+     * @param windSpeed in m/s.
+     * @param sequence readout number, from 1.
+     * @param timestampNanos System.nanoTime() when sampled.
+     */
+    public DynamicsReadout(
+            double distance,
+            double speed,
+            engine engineStatus,
+            double throttlePercentage,
+            double brakePercentage,
+            double gradient,
+            double windSpeed,
+            long sequence,
+            long timestampNanos) {
+        this(distance, speed, engineStatus, throttlePercentage, brakePercentage, gradient, windSpeed);
+        this.sequence = sequence;
+        this.timestampNanos = timestampNanos;
+    }
+
+    /**
+     * @return readout number, from 1, or 0 if unknown (e.g. decoded from
+     * telemetry).
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return System.nanoTime() when the car was sampled, or 0 if unknown.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
     /**
      *
      * @return between 0-100%.
@@ -0,0 +1,46 @@
+package car;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one CarDynamics tick, with the time spent in each
+ * stage. Only ticks longer than the threshold are recorded, so a continuous
+ * recording shows the slow ticks alongside the GC pauses, safepoints and
+ * thread scheduling that caused them.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+@Name("car.DynamicsTick")
+@Label("Dynamics Tick")
+@Category({"Vroom", "Car"})
+@Description("A CarDynamics tick")
+@Threshold("1 ms")
+@StackTrace(false)
+class DynamicsTickEvent extends jdk.jfr.Event {
+
+    @Label("Readout Sequence")
+    @Description("Number of the readout sent this tick")
+    long sequence;
+
+    @Label("Priority Lane")
+    @Timespan(Timespan.NANOSECONDS)
+    long priorityNanos;
+
+    @Label("Send")
+    @Timespan(Timespan.NANOSECONDS)
+    long sendNanos;
+
+    @Label("Receive")
+    @Timespan(Timespan.NANOSECONDS)
+    long receiveNanos;
+
+    @Label("Simulate")
+    @Timespan(Timespan.NANOSECONDS)
+    long simulateNanos;
+}
@@ -0,0 +1,402 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.util.Arrays;
+
+/**
+ * Many cars stepped together, for fleet-scale runs. The same car as
+ * CarDynamics' queue-free API (apply(), step(), readState()), but its state
+ * is kept in one primitive array per quantity rather than one object per car,
+ * so that a FleetKernel can integrate the whole fleet in tight loops, several
+ * cars at a time where the CPU has vector instructions.
+ *
+ * Each car also has a cruise controller with the same PID as CruiseControl.
+ * Its output is applied a tick after the speed it was computed from, as it
+ * is when sent through the queues.
+ *
+ * Disturbances are still generated per car, once per tick, as CarDynamics
+ * does; the kernel then runs the tick's physics steps for every car.
+ *
+ * Cars can be of different types: each car holds the number of its profile
+ * in a shared VehicleTable, and the kernel looks the constants up once per
+ * tick, so a mixed fleet steps as fast as a fleet of one type.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class Fleet {
+
+    // Class name of the Java Vector API kernel; only compiled and loadable
+    // with --add-modules jdk.incubator.vector.
+    private static final String VECTOR_KERNEL = "car.VectorFleetKernel";
+    // "auto", "scalar" or "vector".
+    private static final String KERNEL = System.getProperty("vroom.fleet.kernel", "auto");
+
+    private int size; // Cars in use; see setSize().
+    private final Disturbances[] disturbances;
+    private final FleetKernel kernel;
+    final VehicleTable vehicles;
+    private SimClock clock = SimClock.DEFAULT;
+    // PID gains, shared by every car.
+    private double Kp = CruiseControl.DEFAULT_KP;
+    private double Ki = CruiseControl.DEFAULT_KI;
+    private double Kd = CruiseControl.DEFAULT_KD;
+    // Physical state, integrated by the kernel.
+    final double[] distance; // m.
+    final double[] speed; // ms^-1.
+    final double[] acceleration; // ms^-2.
+    // Actuators and disturbances, held for a tick.
+    final double[] current; // Motor current (A).
+    final double[] brakeTorque; // Nm.
+    final double[] wind; // Wind speed (ms^-1).
+    final double[] slopeForce; // N, from the hill angle.
+    final double[] rollingForce; // N, from the hill angle.
+    // Driver related inputs.
+    final double[] percentageThrottle;
+    final double[] percentageBrake;
+    final double[] engineOn; // 1 if on, 0 if off.
+    // Cruise control.
+    final double[] cruiseOn; // 1 if in control, 0 if not.
+    final double[] setSpeed; // km/h.
+    final double[] totError; // Integral of error.
+    final double[] totErrorCounter; // Ticks since the integral was last reset.
+    final double[] pidThrottle; // PID output to apply next tick, or NaN.
+    // Type of car, as a profile number in vehicles.
+    final int[] vehicle;
+    // Number of arrays returned by columns().
+    static final int COLUMNS = 13;
+
+    /**
+     * A fleet using the fastest kernel available.
+     *
+     * @param disturbances one disturbances generator per car.
+     */
+    public Fleet(Disturbances[] disturbances) {
+        this(disturbances, createKernel());
+    }
+
+    /**
+     * @param disturbances one disturbances generator per car.
+     * @param kernel integrates the cars' physics.
+     */
+    public Fleet(Disturbances[] disturbances, FleetKernel kernel) {
+        this(disturbances, VehicleTable.DEFAULT, kernel);
+    }
+
+    /**
+     * A mixed fleet. Every car starts as profile 0; see setVehicle().
+     *
+     * @param disturbances one disturbances generator per car.
+     * @param vehicles the types of car in the fleet.
+     * @param kernel integrates the cars' physics.
+     */
+    public Fleet(Disturbances[] disturbances, VehicleTable vehicles, FleetKernel kernel) {
+        size = disturbances.length;
+        this.disturbances = disturbances.clone();
+        this.vehicles = vehicles;
+        this.kernel = kernel;
+        distance = new double[size];
+        speed = new double[size];
+        acceleration = new double[size];
+        current = new double[size];
+        brakeTorque = new double[size];
+        wind = new double[size];
+        slopeForce = new double[size];
+        rollingForce = new double[size];
+        percentageThrottle = new double[size];
+        percentageBrake = new double[size];
+        engineOn = new double[size];
+        cruiseOn = new double[size];
+        setSpeed = new double[size];
+        totError = new double[size];
+        totErrorCounter = new double[size];
+        pidThrottle = new double[size];
+        Arrays.fill(pidThrottle, Double.NaN);
+        vehicle = new int[size];
+    }
+
+    /**
+     * @return every array that makes up the cars' state (besides their
+     * disturbances), COLUMNS of them, always in the same order.
+     */
+    double[][] columns() {
+        return new double[][]{
+            distance, speed, acceleration, current, brakeTorque,
+            percentageThrottle, percentageBrake, engineOn,
+            cruiseOn, setSpeed, totError, totErrorCounter, pidThrottle};
+    }
+
+    /**
+     * @param car index of the car.
+     * @return the car's disturbances generator.
+     */
+    Disturbances getDisturbances(int car) {
+        return disturbances[car];
+    }
+
+    /**
+     * Chooses a kernel according to the vroom.fleet.kernel system property:
+     * "vector" for the Java Vector API kernel, "scalar" for plain Java, or
+     * "auto" (the default) for the vector kernel if it can be loaded.
+     *
+     * @return the kernel.
+     * @throws IllegalStateException if the vector kernel was asked for but
+     * cannot be loaded.
+     */
+    public static FleetKernel createKernel() {
+        if (KERNEL.equals("scalar")) {
+            return new ScalarFleetKernel();
+        }
+        FleetKernel vector = createVectorKernel();
+        if (vector != null) {
+            return vector;
+        }
+        if (KERNEL.equals("vector")) {
+            throw new IllegalStateException("Vector kernel unavailable; compile src/incubator and run with --add-modules jdk.incubator.vector");
+        }
+        return new ScalarFleetKernel();
+    }
+
+    /**
+     * @return the Java Vector API kernel, or null if it is not on the class
+     * path or the incubator module is not enabled.
+     */
+    public static FleetKernel createVectorKernel() {
+        try {
+            return (FleetKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException refEx) {
+            return null;
+        } catch (LinkageError linkErr) { // jdk.incubator.vector not enabled.
+            return null;
+        }
+    }
+
+    /**
+     * Sets the rates the cars run at, as CarDynamics.setClock().
+     *
+     * @param clock the rates.
+     */
+    public void setClock(SimClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return the rates the cars run at.
+     */
+    public SimClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Changes every car's PID gains, as CruiseControl.setGains().
+     *
+     * @param Kp proportional gain.
+     * @param Ki integral gain.
+     * @param Kd derivative gain.
+     */
+    public void setGains(double Kp, double Ki, double Kd) {
+        this.Kp = Kp;
+        this.Ki = Ki;
+        this.Kd = Kd;
+    }
+
+    /**
+     * @return number of cars.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Uses only the first cars, as if the fleet had been created with that
+     * many, for OffHeapFleet's last chunk, which is only partly filled. The
+     * other cars are kept but not stepped.
+     *
+     * @param cars number of cars, up to the number the fleet was created
+     * with.
+     */
+    void setSize(int cars) {
+        if (cars < 0 || cars > disturbances.length) {
+            throw new IllegalArgumentException("Fleet of " + disturbances.length + " cars cannot use " + cars);
+        }
+        size = cars;
+    }
+
+    /**
+     * @return the types of car in the fleet.
+     */
+    public VehicleTable getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Makes one car a different type of car, as CarDynamics.setVehicle().
+     *
+     * @param car index of the car.
+     * @param profile profile number in getVehicles().
+     */
+    public void setVehicle(int car, int profile) {
+        if (profile < 0 || profile >= vehicles.size()) {
+            throw new IndexOutOfBoundsException("Vehicle profile " + profile);
+        }
+        vehicle[car] = profile;
+        current[car] = vehicles.maxCurrent[profile] * (percentageThrottle[car] / 100.0);
+        brakeTorque[car] = vehicles.maxBrakeTorque[profile] * (percentageBrake[car] / 100.0);
+    }
+
+    /**
+     * @param car index of the car.
+     * @return the car's profile number in getVehicles().
+     */
+    public int getVehicle(int car) {
+        return vehicle[car];
+    }
+
+    /**
+     * @return the kernel integrating the cars' physics.
+     */
+    public FleetKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Applies a driver or cruise control command to one car, as
+     * CarDynamics.apply().
+     *
+     * @param car index of the car.
+     * @param instruction the command.
+     * @param percentage throttle or brake (0-100%); clamped to that range.
+     * Ignored for ignition commands.
+     */
+    public void apply(int car, Instructions instruction, double percentage) {
+        percentage = Math.max(0, Math.min(100, percentage));
+
+        if (instruction == Instructions.MOTOR) {
+
+            //Throttle can only be applied if engine is on.
+            if (engineOn[car] != 0) {
+                current[car] = vehicles.maxCurrent[vehicle[car]] * (percentage / 100.0);
+                percentageThrottle[car] = percentage;
+            }
+
+        } else if (instruction == Instructions.BRAKE) {
+            brakeTorque[car] = vehicles.maxBrakeTorque[vehicle[car]] * (percentage / 100.0);
+            percentageBrake[car] = percentage;
+
+        } else {
+            //Assume when turning engine on or off, zero throttle results.
+            current[car] = 0;
+            percentageThrottle[car] = 0;
+            engineOn[car] = instruction == Instructions.TURN_ON_IGNITION ? 1 : 0;
+        }
+    }
+
+    /**
+     * Applies a cruise control command to one car, as CruiseControl does.
+     *
+     * @param car index of the car.
+     * @param instruction the command.
+     * @param speedSetting set speed (km/h); ignored for DEACTIVATE.
+     */
+    public void apply(int car, CCInstructions instruction, double speedSetting) {
+        if (instruction == CCInstructions.ACTIVATE) {
+            cruiseOn[car] = 1;
+            setSpeed[car] = speedSetting;
+
+        } else if (instruction == CCInstructions.DEACTIVATE) {
+            cruiseOn[car] = 0;
+            //Don't change setSpeed.
+
+        } else if (instruction == CCInstructions.SET_SPEED) {
+            //Don't change cruiseOn.
+            setSpeed[car] = speedSetting;
+        }
+    }
+
+    /**
+     * Advances every car by a number of ticks, as CarDynamics.step().
+     *
+     * @param n number of ticks.
+     */
+    public void step(int n) {
+        int physicsSteps = clock.getPhysicsStepsPerTick();
+        double physicsStep = clock.getPhysicsStepSeconds();
+        for (int i = 0; i < n; i++) {
+            runCruiseControl();
+            runDisturbances();
+            kernel.integrate(this, physicsSteps, physicsStep);
+        }
+    }
+
+    /**
+     * Applies the throttle cruise control chose last tick, then runs the PID
+     * on each car whose cruise control is in control and engine is on, as
+     * CruiseControl.doPID().
+     */
+    private void runCruiseControl() {
+        double tickSeconds = clock.getTickSeconds();
+        for (int car = 0; car < size; car++) {
+            if (!Double.isNaN(pidThrottle[car])) {
+                apply(car, Instructions.MOTOR, pidThrottle[car]);
+                pidThrottle[car] = Double.NaN;
+            }
+            if (cruiseOn[car] == 0 || engineOn[car] == 0) {
+                continue;
+            }
+
+            double error = setSpeed[car] - speed[car] * 3.6;
+            totError[car] += error;
+
+            //zero intergral error to prevent integral control issues.
+            if (totErrorCounter[car] > CruiseControl.TOT_ERROR_MAX_COUNTS) {
+                totError[car] = 0;
+                totErrorCounter[car] = 0;
+            } else {
+                totErrorCounter[car]++;
+            }
+
+            // PID controller. CruiseControl's previous error is always 0.
+            double PIDSetSpeed = Kp * error + (Ki * totError[car] * tickSeconds) + (Kd * error / tickSeconds);
+            PIDSetSpeed = PIDSetSpeed > 100 ? 100 : PIDSetSpeed;
+            PIDSetSpeed = PIDSetSpeed < 0 ? 0 : PIDSetSpeed;
+            pidThrottle[car] = PIDSetSpeed;
+        }
+    }
+
+    /**
+     * Generates each car's disturbances for the next tick, and the forces
+     * that depend only on them.
+     */
+    private void runDisturbances() {
+        for (int car = 0; car < size; car++) {
+            Disturbances carDisturbances = disturbances[car];
+            carDisturbances.runDisturbances(speed[car]);
+            double angle = carDisturbances.getHillDisturbance();
+            double mass = vehicles.mass[vehicle[car]];
+            wind[car] = carDisturbances.getWindDisturbance();
+            // As CarDynamics.slopeGeneratedForce() and rollingResistance().
+            slopeForce[car] = mass * CarDynamics.GRAVITY * Math.sin(Math.toRadians(angle));
+            rollingForce[car] = vehicles.rollingFriction[vehicle[car]] * (mass * CarDynamics.GRAVITY * Math.cos(angle));
+        }
+    }
+
+    /**
+     * Copies one car's current state into a caller-supplied buffer, as
+     * CarDynamics.readState().
+     *
+     * @param car index of the car.
+     * @param buf destination.
+     * @param offset index of the first value; CarDynamics.STATE_SIZE values
+     * are written.
+     */
+    public void readState(int car, double[] buf, int offset) {
+        buf[offset + CarDynamics.STATE_DISTANCE] = distance[car];
+        buf[offset + CarDynamics.STATE_SPEED] = speed[car];
+        buf[offset + CarDynamics.STATE_ACCELERATION] = acceleration[car];
+        buf[offset + CarDynamics.STATE_THROTTLE] = percentageThrottle[car];
+        buf[offset + CarDynamics.STATE_BRAKE] = percentageBrake[car];
+        buf[offset + CarDynamics.STATE_GRADIENT] = disturbances[car].getHillDisturbance();
+        buf[offset + CarDynamics.STATE_WIND] = disturbances[car].getWindDisturbance();
+        buf[offset + CarDynamics.STATE_ENGINE_ON] = engineOn[car];
+    }
+}
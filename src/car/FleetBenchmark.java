@@ -0,0 +1,277 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks the fleet kernels against CarDynamics and measures how fast each
+ * steps a large fleet.
+ *
+ * First every kernel, an OffHeapFleet, and a CarDynamics per car are driven
+ * through the same random throttle and brake inputs, and the largest
+ * difference in any state value is reported; the run fails (exit status 1)
+ * if it is over TOLERANCE. The check uses a mix of vehicle profiles, car i
+ * having profile i modulo their number. Then each kernel steps a fleet, reporting physics
+ * steps per wall second for the kernel alone and for whole ticks (including
+ * disturbances and cruise control), with CarDynamics objects as the baseline
+ * and an OffHeapFleet using the fastest kernel. heap_mb is the heap in use
+ * once the fleet is built. The measured fleets are of VehicleProfile.DEFAULT
+ * cars, or mixed in the same way from a VehicleTable file given with
+ * --vehicles.
+ *
+ * Usage: java -cp ... car.FleetBenchmark [--cars N] [--ticks T] [--physics HZ]
+ * [--vehicles FILE]
+ *
+ * Defaults to 100000 cars for 200 ticks at 1000 Hz physics. The vector kernel
+ * is only included when run with --add-modules jdk.incubator.vector and
+ * src/incubator compiled in.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class FleetBenchmark {
+
+    private static final int DEFAULT_CARS = 100000;
+    private static final int DEFAULT_TICKS = 200;
+    private static final int DEFAULT_PHYSICS_HZ = 1000;
+    private static final int CHECK_CARS = 1003; // Not a multiple of any vector length.
+    private static final int CHECK_TICKS = 3000;
+    private static final int CHECK_INPUT_TICKS = 50; // Inputs change this often.
+    private static final double TOLERANCE = 1e-9; // Relative.
+    // Deliberately different cars, for the check.
+    private static final VehicleTable CHECK_VEHICLES = new VehicleTable(Arrays.asList(
+            VehicleProfile.DEFAULT,
+            new VehicleProfile("van", 2600, 1.1, 0.015, 600, 1800, 0.8, 0.065, 0.11, 0.3),
+            new VehicleProfile("hatch", 1100, 0.62, 0.012, 300, 800, 0.9, 0.06, 0.12, 0.28)));
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int cars = DEFAULT_CARS;
+        int ticks = DEFAULT_TICKS;
+        int physicsHz = DEFAULT_PHYSICS_HZ;
+        VehicleTable vehicles = VehicleTable.DEFAULT;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--cars") && i + 1 < args.length) {
+                    cars = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--ticks") && i + 1 < args.length) {
+                    ticks = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--physics") && i + 1 < args.length) {
+                    physicsHz = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--vehicles") && i + 1 < args.length) {
+                    vehicles = VehicleTable.load(Paths.get(args[++i]));
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException argEx) { // Including NumberFormatException.
+            System.err.println("Usage: java car.FleetBenchmark [--cars N] [--ticks T] [--physics HZ] [--vehicles FILE]");
+            System.exit(1);
+        } catch (IOException ioEx) {
+            System.err.println("Cannot read vehicles: " + ioEx.getMessage());
+            System.exit(1);
+        } catch (ParseException parseEx) {
+            System.err.println("Bad vehicles file: " + parseEx.getMessage());
+            System.exit(1);
+        }
+        SimClock clock = new SimClock(physicsHz, SimClock.DEFAULT_HZ, SimClock.DEFAULT_HZ);
+
+        List<FleetKernel> kernels = new ArrayList<FleetKernel>();
+        kernels.add(new ScalarFleetKernel());
+        FleetKernel vector = Fleet.createVectorKernel();
+        if (vector != null) {
+            kernels.add(vector);
+        } else {
+            System.out.println("Vector kernel unavailable; scalar only.");
+        }
+
+        boolean equivalent = true;
+        for (FleetKernel kernel : kernels) {
+            double difference = check(kernel, false, clock);
+            System.out.println(String.format(Locale.ROOT, "%-20s max_relative_difference=%.3g", name(kernel), difference));
+            equivalent &= difference <= TOLERANCE;
+        }
+        double difference = check(kernels.get(kernels.size() - 1), true, clock);
+        System.out.println(String.format(Locale.ROOT, "%-20s max_relative_difference=%.3g", "OffHeapFleet", difference));
+        equivalent &= difference <= TOLERANCE;
+
+        System.out.println(String.format(Locale.ROOT, "%-20s %8s %8s %18s %18s %8s",
+                "kernel", "cars", "ticks", "kernel_steps_per_s", "tick_steps_per_s", "heap_mb"));
+        measureCarDynamics(cars, ticks, clock, vehicles);
+        for (FleetKernel kernel : kernels) {
+            measure(kernel, cars, ticks, clock, vehicles);
+        }
+        measureOffHeap(kernels.get(kernels.size() - 1), cars, ticks, clock, vehicles);
+
+        if (!equivalent) {
+            System.err.println("Kernel results differ from CarDynamics by more than " + TOLERANCE);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs CarDynamics and a fleet (on or off the heap) through the same
+     * inputs.
+     *
+     * @return largest difference in any state value, relative to its size
+     * (or absolute, below 1).
+     */
+    private static double check(FleetKernel kernel, boolean offHeap, SimClock clock) {
+        CarDynamics[] reference = new CarDynamics[CHECK_CARS];
+        Disturbances[] disturbances = new Disturbances[CHECK_CARS];
+        for (int car = 0; car < CHECK_CARS; car++) {
+            reference[car] = new CarDynamics(new Disturbances(car, true, true));
+            reference[car].setClock(clock);
+            reference[car].setVehicle(CHECK_VEHICLES.get(car % CHECK_VEHICLES.size()));
+            disturbances[car] = new Disturbances(car, true, true);
+        }
+        Fleet fleet = null;
+        OffHeapFleet offHeapFleet = null;
+        if (offHeap) {
+            offHeapFleet = new OffHeapFleet(FleetStore.allocate(CHECK_CARS, OffHeapFleet.COLUMNS), CHECK_VEHICLES, 0, true, true, kernel);
+            offHeapFleet.setClock(clock);
+            for (int car = 0; car < CHECK_CARS; car++) {
+                offHeapFleet.setVehicle(car, car % CHECK_VEHICLES.size());
+            }
+        } else {
+            fleet = new Fleet(disturbances, CHECK_VEHICLES, kernel);
+            fleet.setClock(clock);
+            for (int car = 0; car < CHECK_CARS; car++) {
+                fleet.setVehicle(car, car % CHECK_VEHICLES.size());
+            }
+        }
+
+        Random random = new Random(0);
+        double[] expected = new double[CarDynamics.STATE_SIZE];
+        double[] actual = new double[CarDynamics.STATE_SIZE];
+        double worst = 0;
+        for (int tick = 0; tick < CHECK_TICKS; tick += CHECK_INPUT_TICKS) {
+            for (int car = 0; car < CHECK_CARS; car++) {
+                Instructions instruction = tick == 0 ? Instructions.TURN_ON_IGNITION
+                        : random.nextInt(4) == 0 ? Instructions.BRAKE : Instructions.MOTOR;
+                double percentage = random.nextInt(101);
+                reference[car].apply(instruction, percentage);
+                reference[car].step(CHECK_INPUT_TICKS);
+                if (offHeap) {
+                    offHeapFleet.apply(car, instruction, percentage);
+                } else {
+                    fleet.apply(car, instruction, percentage);
+                }
+            }
+            if (offHeap) {
+                offHeapFleet.step(CHECK_INPUT_TICKS);
+            } else {
+                fleet.step(CHECK_INPUT_TICKS);
+            }
+
+            for (int car = 0; car < CHECK_CARS; car++) {
+                reference[car].readState(expected, 0);
+                if (offHeap) {
+                    offHeapFleet.readState(car, actual, 0);
+                } else {
+                    fleet.readState(car, actual, 0);
+                }
+                for (int i = 0; i < CarDynamics.STATE_SIZE; i++) {
+                    worst = Math.max(worst, Math.abs(actual[i] - expected[i]) / Math.max(1, Math.abs(expected[i])));
+                }
+            }
+        }
+        return worst;
+    }
+
+    private static void measureCarDynamics(int cars, int ticks, SimClock clock, VehicleTable vehicles) {
+        CarDynamics[] plants = new CarDynamics[cars];
+        for (int car = 0; car < cars; car++) {
+            plants[car] = new CarDynamics(new Disturbances(car, true, true));
+            plants[car].setClock(clock);
+            plants[car].setVehicle(vehicles.get(car % vehicles.size()));
+            plants[car].apply(Instructions.TURN_ON_IGNITION, 0);
+            plants[car].apply(Instructions.MOTOR, 60);
+        }
+        for (CarDynamics car : plants) {
+            car.step(ticks / 2); // Warm up.
+        }
+        long start = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            for (CarDynamics car : plants) {
+                car.step(1);
+            }
+        }
+        double physicsSteps = (double) cars * ticks * clock.getPhysicsStepsPerTick();
+        System.out.println(String.format(Locale.ROOT, "%-20s %8d %8d %18s %18.3g %8d",
+                "CarDynamics", cars, ticks, "-", physicsSteps / ((System.nanoTime() - start) / 1e9), heapMegabytes()));
+    }
+
+    private static void measure(FleetKernel kernel, int cars, int ticks, SimClock clock, VehicleTable vehicles) {
+        Disturbances[] disturbances = new Disturbances[cars];
+        for (int car = 0; car < cars; car++) {
+            disturbances[car] = new Disturbances(car, true, true);
+        }
+        Fleet fleet = new Fleet(disturbances, vehicles, kernel);
+        fleet.setClock(clock);
+        for (int car = 0; car < cars; car++) {
+            fleet.setVehicle(car, car % vehicles.size());
+            fleet.apply(car, Instructions.TURN_ON_IGNITION, 0);
+            fleet.apply(car, Instructions.MOTOR, 60);
+        }
+        fleet.step(ticks / 2); // Warm up.
+        long heap = heapMegabytes();
+
+        int stepsPerTick = clock.getPhysicsStepsPerTick();
+        double stepSeconds = clock.getPhysicsStepSeconds();
+        long start = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            kernel.integrate(fleet, stepsPerTick, stepSeconds);
+        }
+        double kernelSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        fleet.step(ticks);
+        double tickSeconds = (System.nanoTime() - start) / 1e9;
+
+        double physicsSteps = (double) cars * ticks * stepsPerTick;
+        System.out.println(String.format(Locale.ROOT, "%-20s %8d %8d %18.3g %18.3g %8d",
+                name(kernel), cars, ticks, physicsSteps / kernelSeconds, physicsSteps / tickSeconds, heap));
+    }
+
+    private static void measureOffHeap(FleetKernel kernel, int cars, int ticks, SimClock clock, VehicleTable vehicles) {
+        OffHeapFleet fleet = new OffHeapFleet(FleetStore.allocate(cars, OffHeapFleet.COLUMNS), vehicles, 0, true, true, kernel);
+        fleet.setClock(clock);
+        for (int car = 0; car < cars; car++) {
+            fleet.setVehicle(car, car % vehicles.size());
+            fleet.apply(car, Instructions.TURN_ON_IGNITION, 0);
+            fleet.apply(car, Instructions.MOTOR, 60);
+        }
+        fleet.step(ticks / 2); // Warm up.
+        long heap = heapMegabytes();
+
+        long start = System.nanoTime();
+        fleet.step(ticks);
+        double tickSeconds = (System.nanoTime() - start) / 1e9;
+
+        double physicsSteps = (double) cars * ticks * clock.getPhysicsStepsPerTick();
+        System.out.println(String.format(Locale.ROOT, "%-20s %8d %8d %18s %18.3g %8d",
+                "OffHeapFleet", cars, ticks, "-", physicsSteps / tickSeconds, heap));
+    }
+
+    /**
+     * @return heap in use after a full collection, in megabytes.
+     */
+    private static long heapMegabytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+    }
+
+    private static String name(FleetKernel kernel) {
+        return kernel.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,24 @@
+package car;
+
+/**
+ * Integrates the physics of every car in a Fleet, in place. The same math as
+ * CarDynamics' physics step: drag, slope and rolling resistance, motor torque
+ * through the sprockets, and the trapezoidal speed update.
+ *
+ * Implementations must give the same results as CarDynamics to within
+ * rounding; FleetBenchmark checks this.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public interface FleetKernel {
+
+    /**
+     * Advances every car by a number of physics steps. The cars' throttle,
+     * brakes and disturbances are held for all of them.
+     *
+     * @param fleet the cars.
+     * @param steps number of physics steps.
+     * @param stepSeconds length of each step.
+     */
+    void integrate(Fleet fleet, int steps, double stepSeconds);
+}
@@ -0,0 +1,205 @@
+package car;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed-size table of 8-byte values, one row per car and a fixed number of
+ * columns, kept outside the Java heap: in direct buffers, or in a
+ * memory-mapped file so that it survives the program and can be used as a
+ * checkpoint. The garbage collector never scans it, so a fleet's size is
+ * limited by memory (or disk), not by collection pauses.
+ *
+ * The table is split into chunks of CHUNK_CARS cars, each held in one buffer
+ * with the chunk's values for each column next to each other, so a chunk of
+ * a column can be copied to or from an array in one go. The number of rows
+ * is rounded up to a whole number of chunks.
+ *
+ * Values are little-endian, whatever the machine. A file starts with a
+ * header giving the number of cars and columns, and is only reopened with
+ * the same ones.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public final class FleetStore implements Closeable {
+
+    public static final int CHUNK_CARS = 1 << 16;
+    private static final long MAGIC = 0x76726f6f6d666c31L; // "vroomfl1".
+    private static final int HEADER_BYTES = 4096; // Keeps chunks page-aligned.
+
+    private final int cars;
+    private final int columns;
+    private final ByteBuffer[] chunks;
+    private final FileChannel channel; // Null unless file-backed.
+    private final boolean created;
+
+    private FleetStore(int cars, int columns, ByteBuffer[] chunks, FileChannel channel, boolean created) {
+        this.cars = cars;
+        this.columns = columns;
+        this.chunks = chunks;
+        this.channel = channel;
+        this.created = created;
+    }
+
+    /**
+     * Allocates a table in direct memory, filled with zeros. Direct memory is
+     * limited by -XX:MaxDirectMemorySize (by default, the maximum heap size).
+     *
+     * @param cars number of rows.
+     * @param columns number of columns.
+     * @return the table.
+     */
+    public static FleetStore allocate(int cars, int columns) {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(cars)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkBytes(columns)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new FleetStore(cars, columns, chunks, null, true);
+    }
+
+    /**
+     * Maps a table in a file, creating the file (filled with zeros) if it does
+     * not exist, or reopening it as it was last checkpointed if it does.
+     *
+     * @param file the file.
+     * @param cars number of rows.
+     * @param columns number of columns.
+     * @return the table.
+     * @throws IOException if the file cannot be mapped, or holds a table of a
+     * different shape.
+     */
+    public static FleetStore map(Path file, int cars, int columns) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() == 0;
+            ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            if (created) {
+                header.putLong(MAGIC).putLong(cars).putLong(columns).flip();
+                channel.write(header, 0);
+            } else {
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < 24 || header.getLong() != MAGIC) {
+                    throw new IOException(file + " is not a fleet store");
+                }
+                long fileCars = header.getLong();
+                long fileColumns = header.getLong();
+                if (fileCars != cars || fileColumns != columns) {
+                    throw new IOException(file + " holds " + fileCars + " cars x " + fileColumns + " columns, not " + cars + " x " + columns);
+                }
+            }
+
+            ByteBuffer[] chunks = new ByteBuffer[chunkCount(cars)];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long) i * chunkBytes(columns), chunkBytes(columns))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new FleetStore(cars, columns, chunks, channel, created);
+        } catch (IOException ioEx) {
+            channel.close();
+            throw ioEx;
+        }
+    }
+
+    private static int chunkCount(int cars) {
+        if (cars < 1) {
+            throw new IllegalArgumentException("Need at least one car");
+        }
+        return (cars + CHUNK_CARS - 1) / CHUNK_CARS;
+    }
+
+    private static int chunkBytes(int columns) {
+        if (columns < 1 || columns > Integer.MAX_VALUE / 8 / CHUNK_CARS) {
+            throw new IllegalArgumentException("Columns out of range: " + columns);
+        }
+        return columns * CHUNK_CARS * 8;
+    }
+
+    /**
+     * @return number of cars the table was created for.
+     */
+    public int getCars() {
+        return cars;
+    }
+
+    /**
+     * @return number of columns.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return number of chunks; every chunk has CHUNK_CARS rows.
+     */
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * @return false if this table was mapped from an existing file, so holds
+     * a checkpoint rather than zeros.
+     */
+    public boolean isNew() {
+        return created;
+    }
+
+    /**
+     * @param chunk chunk index.
+     * @param column column index.
+     * @return a view of one column of one chunk, CHUNK_CARS values long.
+     */
+    public DoubleBuffer doubles(int chunk, int column) {
+        return slice(chunk, column).asDoubleBuffer();
+    }
+
+    /**
+     * @param chunk chunk index.
+     * @param column column index.
+     * @return a view of one column of one chunk, CHUNK_CARS values long.
+     */
+    public LongBuffer longs(int chunk, int column) {
+        return slice(chunk, column).asLongBuffer();
+    }
+
+    private ByteBuffer slice(int chunk, int column) {
+        if (column < 0 || column >= columns) {
+            throw new IndexOutOfBoundsException("Column " + column);
+        }
+        return chunks[chunk].slice(column * CHUNK_CARS * 8, CHUNK_CARS * 8).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes a file-backed table's contents to the file, so the file holds a
+     * consistent checkpoint. Does nothing for direct memory.
+     */
+    public void checkpoint() {
+        for (ByteBuffer chunk : chunks) {
+            if (chunk instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) chunk).force();
+            }
+        }
+    }
+
+    /**
+     * Checkpoints and closes the file, if any. The memory itself is released
+     * when the table is garbage collected.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            checkpoint();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.util.Arrays;
+
+/**
+ * A Fleet in single precision: the same cars, cruise control and API, but
+ * state and arithmetic in float, so a car takes half the memory and a vector
+ * holds twice as many cars. Run car.PrecisionReport to see how far its
+ * results drift from Fleet's.
+ *
+ * Only the distance travelled is kept in double, since it grows without
+ * limit: in float, a car 100 km along would move in steps of a centimetre.
+ * The kernel adds each tick's distance to it once.
+ *
+ * Disturbances are generated exactly as for a Fleet (in double) and rounded
+ * to float.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class FloatFleet {
+
+    // Class name of the Java Vector API kernel; only compiled and loadable
+    // with --add-modules jdk.incubator.vector.
+    private static final String VECTOR_KERNEL = "car.VectorFloatFleetKernel";
+    // "auto", "scalar" or "vector", as for Fleet.
+    private static final String KERNEL = System.getProperty("vroom.fleet.kernel", "auto");
+
+    private final int size;
+    private final Disturbances[] disturbances;
+    private final FloatFleetKernel kernel;
+    final VehicleTable vehicles;
+    private SimClock clock = SimClock.DEFAULT;
+    // PID gains, shared by every car.
+    private float Kp = (float) CruiseControl.DEFAULT_KP;
+    private float Ki = (float) CruiseControl.DEFAULT_KI;
+    private float Kd = (float) CruiseControl.DEFAULT_KD;
+    // Physical state, integrated by the kernel.
+    final double[] distance; // m.
+    final float[] speed; // ms^-1.
+    final float[] acceleration; // ms^-2.
+    // Actuators and disturbances, held for a tick.
+    final float[] current; // Motor current (A).
+    final float[] brakeTorque; // Nm.
+    final float[] wind; // Wind speed (ms^-1).
+    final float[] slopeForce; // N, from the hill angle.
+    final float[] rollingForce; // N, from the hill angle.
+    // Driver related inputs.
+    final float[] percentageThrottle;
+    final float[] percentageBrake;
+    final boolean[] engineOn;
+    // Cruise control.
+    final boolean[] cruiseOn;
+    final float[] setSpeed; // km/h.
+    final float[] totError; // Integral of error.
+    final int[] totErrorCounter; // Ticks since the integral was last reset.
+    final float[] pidThrottle; // PID output to apply next tick, or NaN.
+    // Type of car, as a profile number in vehicles.
+    final int[] vehicle;
+
+    /**
+     * A fleet of VehicleProfile.DEFAULT cars using the fastest kernel
+     * available.
+     *
+     * @param disturbances one disturbances generator per car.
+     */
+    public FloatFleet(Disturbances[] disturbances) {
+        this(disturbances, VehicleTable.DEFAULT, createKernel());
+    }
+
+    /**
+     * A mixed fleet. Every car starts as profile 0; see setVehicle().
+     *
+     * @param disturbances one disturbances generator per car.
+     * @param vehicles the types of car in the fleet.
+     * @param kernel integrates the cars' physics.
+     */
+    public FloatFleet(Disturbances[] disturbances, VehicleTable vehicles, FloatFleetKernel kernel) {
+        size = disturbances.length;
+        this.disturbances = disturbances.clone();
+        this.vehicles = vehicles;
+        this.kernel = kernel;
+        distance = new double[size];
+        speed = new float[size];
+        acceleration = new float[size];
+        current = new float[size];
+        brakeTorque = new float[size];
+        wind = new float[size];
+        slopeForce = new float[size];
+        rollingForce = new float[size];
+        percentageThrottle = new float[size];
+        percentageBrake = new float[size];
+        engineOn = new boolean[size];
+        cruiseOn = new boolean[size];
+        setSpeed = new float[size];
+        totError = new float[size];
+        totErrorCounter = new int[size];
+        pidThrottle = new float[size];
+        Arrays.fill(pidThrottle, Float.NaN);
+        vehicle = new int[size];
+    }
+
+    /**
+     * @param car index of the car.
+     * @return the car's disturbances generator.
+     */
+    Disturbances getDisturbances(int car) {
+        return disturbances[car];
+    }
+
+    /**
+     * Chooses a kernel according to the vroom.fleet.kernel system property,
+     * as Fleet.createKernel().
+     *
+     * @return the kernel.
+     * @throws IllegalStateException if the vector kernel was asked for but
+     * cannot be loaded.
+     */
+    public static FloatFleetKernel createKernel() {
+        if (KERNEL.equals("scalar")) {
+            return new ScalarFloatFleetKernel();
+        }
+        FloatFleetKernel vector = createVectorKernel();
+        if (vector != null) {
+            return vector;
+        }
+        if (KERNEL.equals("vector")) {
+            throw new IllegalStateException("Vector kernel unavailable; compile src/incubator and run with --add-modules jdk.incubator.vector");
+        }
+        return new ScalarFloatFleetKernel();
+    }
+
+    /**
+     * @return the Java Vector API kernel, or null if it is not on the class
+     * path or the incubator module is not enabled.
+     */
+    public static FloatFleetKernel createVectorKernel() {
+        try {
+            return (FloatFleetKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException refEx) {
+            return null;
+        } catch (LinkageError linkErr) { // jdk.incubator.vector not enabled.
+            return null;
+        }
+    }
+
+    /**
+     * Sets the rates the cars run at, as CarDynamics.setClock().
+     *
+     * @param clock the rates.
+     */
+    public void setClock(SimClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return the rates the cars run at.
+     */
+    public SimClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Changes every car's PID gains, as CruiseControl.setGains().
+     *
+     * @param Kp proportional gain.
+     * @param Ki integral gain.
+     * @param Kd derivative gain.
+     */
+    public void setGains(double Kp, double Ki, double Kd) {
+        this.Kp = (float) Kp;
+        this.Ki = (float) Ki;
+        this.Kd = (float) Kd;
+    }
+
+    /**
+     * @return number of cars.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the types of car in the fleet.
+     */
+    public VehicleTable getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Makes one car a different type of car, as Fleet.setVehicle().
+     *
+     * @param car index of the car.
+     * @param profile profile number in getVehicles().
+     */
+    public void setVehicle(int car, int profile) {
+        if (profile < 0 || profile >= vehicles.size()) {
+            throw new IndexOutOfBoundsException("Vehicle profile " + profile);
+        }
+        vehicle[car] = profile;
+        current[car] = (float) vehicles.maxCurrent[profile] * (percentageThrottle[car] / 100f);
+        brakeTorque[car] = (float) vehicles.maxBrakeTorque[profile] * (percentageBrake[car] / 100f);
+    }
+
+    /**
+     * @return the kernel integrating the cars' physics.
+     */
+    public FloatFleetKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Applies a driver or cruise control command to one car, as
+     * Fleet.apply().
+     *
+     * @param car index of the car.
+     * @param instruction the command.
+     * @param percentage throttle or brake (0-100%); clamped to that range.
+     * Ignored for ignition commands.
+     */
+    public void apply(int car, Instructions instruction, double percentage) {
+        float clamped = (float) Math.max(0, Math.min(100, percentage));
+
+        if (instruction == Instructions.MOTOR) {
+
+            //Throttle can only be applied if engine is on.
+            if (engineOn[car]) {
+                current[car] = (float) vehicles.maxCurrent[vehicle[car]] * (clamped / 100f);
+                percentageThrottle[car] = clamped;
+            }
+
+        } else if (instruction == Instructions.BRAKE) {
+            brakeTorque[car] = (float) vehicles.maxBrakeTorque[vehicle[car]] * (clamped / 100f);
+            percentageBrake[car] = clamped;
+
+        } else {
+            //Assume when turning engine on or off, zero throttle results.
+            current[car] = 0;
+            percentageThrottle[car] = 0;
+            engineOn[car] = instruction == Instructions.TURN_ON_IGNITION;
+        }
+    }
+
+    /**
+     * Applies a cruise control command to one car, as Fleet.apply().
+     *
+     * @param car index of the car.
+     * @param instruction the command.
+     * @param speedSetting set speed (km/h); ignored for DEACTIVATE.
+     */
+    public void apply(int car, CCInstructions instruction, double speedSetting) {
+        if (instruction == CCInstructions.ACTIVATE) {
+            cruiseOn[car] = true;
+            setSpeed[car] = (float) speedSetting;
+
+        } else if (instruction == CCInstructions.DEACTIVATE) {
+            cruiseOn[car] = false;
+            //Don't change setSpeed.
+
+        } else if (instruction == CCInstructions.SET_SPEED) {
+            //Don't change cruiseOn.
+            setSpeed[car] = (float) speedSetting;
+        }
+    }
+
+    /**
+     * Advances every car by a number of ticks, as Fleet.step().
+     *
+     * @param n number of ticks.
+     */
+    public void step(int n) {
+        int physicsSteps = clock.getPhysicsStepsPerTick();
+        float physicsStep = (float) clock.getPhysicsStepSeconds();
+        for (int i = 0; i < n; i++) {
+            runCruiseControl();
+            runDisturbances();
+            kernel.integrate(this, physicsSteps, physicsStep);
+        }
+    }
+
+    /**
+     * As Fleet.runCruiseControl(), in float.
+     */
+    private void runCruiseControl() {
+        float tickSeconds = (float) clock.getTickSeconds();
+        for (int car = 0; car < size; car++) {
+            if (!Float.isNaN(pidThrottle[car])) {
+                apply(car, Instructions.MOTOR, pidThrottle[car]);
+                pidThrottle[car] = Float.NaN;
+            }
+            if (!cruiseOn[car] || !engineOn[car]) {
+                continue;
+            }
+
+            float error = setSpeed[car] - speed[car] * 3.6f;
+            totError[car] += error;
+
+            //zero intergral error to prevent integral control issues.
+            if (totErrorCounter[car] > CruiseControl.TOT_ERROR_MAX_COUNTS) {
+                totError[car] = 0;
+                totErrorCounter[car] = 0;
+            } else {
+                totErrorCounter[car]++;
+            }
+
+            // PID controller. CruiseControl's previous error is always 0.
+            float PIDSetSpeed = Kp * error + (Ki * totError[car] * tickSeconds) + (Kd * error / tickSeconds);
+            PIDSetSpeed = PIDSetSpeed > 100 ? 100 : PIDSetSpeed;
+            PIDSetSpeed = PIDSetSpeed < 0 ? 0 : PIDSetSpeed;
+            pidThrottle[car] = PIDSetSpeed;
+        }
+    }
+
+    /**
+     * As Fleet.runDisturbances(), rounding the forces to float.
+     */
+    private void runDisturbances() {
+        for (int car = 0; car < size; car++) {
+            Disturbances carDisturbances = disturbances[car];
+            carDisturbances.runDisturbances(speed[car]);
+            double angle = carDisturbances.getHillDisturbance();
+            double mass = vehicles.mass[vehicle[car]];
+            wind[car] = (float) carDisturbances.getWindDisturbance();
+            slopeForce[car] = (float) (mass * CarDynamics.GRAVITY * Math.sin(Math.toRadians(angle)));
+            rollingForce[car] = (float) (vehicles.rollingFriction[vehicle[car]] * (mass * CarDynamics.GRAVITY * Math.cos(angle)));
+        }
+    }
+
+    /**
+     * Copies one car's current state into a caller-supplied buffer, as
+     * CarDynamics.readState().
+     *
+     * @param car index of the car.
+     * @param buf destination.
+     * @param offset index of the first value; CarDynamics.STATE_SIZE values
+     * are written.
+     */
+    public void readState(int car, double[] buf, int offset) {
+        buf[offset + CarDynamics.STATE_DISTANCE] = distance[car];
+        buf[offset + CarDynamics.STATE_SPEED] = speed[car];
+        buf[offset + CarDynamics.STATE_ACCELERATION] = acceleration[car];
+        buf[offset + CarDynamics.STATE_THROTTLE] = percentageThrottle[car];
+        buf[offset + CarDynamics.STATE_BRAKE] = percentageBrake[car];
+        buf[offset + CarDynamics.STATE_GRADIENT] = disturbances[car].getHillDisturbance();
+        buf[offset + CarDynamics.STATE_WIND] = disturbances[car].getWindDisturbance();
+        buf[offset + CarDynamics.STATE_ENGINE_ON] = engineOn[car] ? 1 : 0;
+    }
+}
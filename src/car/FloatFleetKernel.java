@@ -0,0 +1,20 @@
+package car;
+
+/**
+ * Integrates the physics of every car in a FloatFleet, in place, in single
+ * precision. The same math as FleetKernel, in the same order.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public interface FloatFleetKernel {
+
+    /**
+     * Advances every car by a number of physics steps. The cars' throttle,
+     * brakes and disturbances are held for all of them.
+     *
+     * @param fleet the cars.
+     * @param steps number of physics steps.
+     * @param stepSeconds length of each step.
+     */
+    void integrate(FloatFleet fleet, int steps, float stepSeconds);
+}
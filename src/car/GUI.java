@@ -2,9 +2,19 @@ package car;
 
 import car.ActuatorInstruction.Instructions;
 import car.CCInstruction.CCInstructions;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
 import javax.swing.Timer;
 
 /**
@@ -29,8 +39,9 @@ public class GUI extends javax.swing.JFrame {
     
     // BlockingQueues used for message passing between threads.
     private BlockingQueue<ActuatorInstruction> GUIToCruiseActInst;
+    private BlockingQueue<ActuatorInstruction> GUIToDynPriority; // Optional. Brake and ignition off, straight to CarDynamics.
     private BlockingQueue<CCInstruction> GUIToCruiseCCInst;
-    private BlockingQueue<DynamicsReadout> dynToGUI;
+    private ReadoutRing.Cursor dynToGUI;
     
     private double cruiseSpeed = 0; //currently set cruise speed.
     private double currSpeed = 0; //current vehicle speed.
@@ -38,22 +49,80 @@ public class GUI extends javax.swing.JFrame {
     private static final int CRUISE_SPEED_CHANGE = 5; //the amount the speed of cruise controller changes by with a +/- button push.
     private CCStates CCState = CCStates.OFF;
     private Timer GUIUpdateTimer;
+    
+    // Dashboard fields. Only redrawn when the displayed value changes.
+    private DisplayField gradientDisplay;
+    private DisplayField windSpeedDisplay;
+    private DisplayField accelDisplay;
+    private DisplayField brakeDisplay;
+    private DisplayField distanceDisplay;
+    private DisplayField speedDisplay;
+    
+    // Strip charts of the last CHART_WINDOW_S seconds.
+    private static final int CHART_WINDOW_S = 60;
+    private static final int CHART_WIDTH = 360;
+    private static final int CHART_HEIGHT = 70;
+    private StripChart speedChart;
+    private StripChart pedalChart;
+    private StripChart gradientChart;
+    private StripChart windChart;
+    private int speedSeries;
+    private int setSpeedSeries;
+    private int throttleSeries;
+    private int brakeSeries;
+    private int gradientSeries;
+    private int windSeries;
+
+    // Time warp. The loop is optional; without it the warp cannot be changed.
+    private static final String[] WARP_NAMES = {"0.5x", "1x", "2x", "5x", "10x", "20x", "50x", "100x", "max"};
+    private static final double[] WARPS = {0.5, 1, 2, 5, 10, 20, 50, 100, Double.POSITIVE_INFINITY};
+    private static final long WARP_MEASURE_NANOS = 500000000L; // How often the measured warp is updated.
+    private volatile TickLoop loop;
+    private double tickSeconds;
+    private JLabel measuredWarpLabel;
+    private DynamicsReadout warpReference; // Start of the current measurement.
 
     
     /**
-     * GUI constructor. Requires BlockingQueues to be used between this thread
-     * and others in the car.
+     * GUI constructor. Requires BlockingQueues and a readout ring cursor to be
+     * used between this thread and others in the car.
      * 
      * @param dynToGUI
      * @param GUIToCruiseActInst
      * @param GUIToCruiseCCInst 
      */
     public GUI(
-            BlockingQueue<DynamicsReadout> dynToGUI,
+            ReadoutRing.Cursor dynToGUI,
             BlockingQueue<ActuatorInstruction> GUIToCruiseActInst,
             BlockingQueue<CCInstruction> GUIToCruiseCCInst) {
+        this(dynToGUI, GUIToCruiseActInst, GUIToCruiseCCInst, SimClock.DEFAULT);
+    }
+
+    /**
+     * GUI constructor for a car running at non-default rates.
+     * 
+     * @param dynToGUI
+     * @param GUIToCruiseActInst
+     * @param GUIToCruiseCCInst 
+     * @param clock rates; readouts arrive at the control rate and the GUI is
+     * updated at the display rate.
+     */
+    public GUI(
+            ReadoutRing.Cursor dynToGUI,
+            BlockingQueue<ActuatorInstruction> GUIToCruiseActInst,
+            BlockingQueue<CCInstruction> GUIToCruiseCCInst,
+            final SimClock clock) {
         initComponents();
 
+        gradientDisplay = new DisplayField(terrainGradient, "\u00b0");
+        windSpeedDisplay = new DisplayField(windSpeed, " km/h");
+        accelDisplay = new DisplayField(accelPercentageField, "%");
+        brakeDisplay = new DisplayField(brakePercentageField, "%");
+        distanceDisplay = new DisplayField(distanceField, " km");
+        speedDisplay = new DisplayField(speedField, " km/h");
+        tickSeconds = clock.getTickSeconds();
+        initCharts(clock);
+
         // BlockingQueue initialisations.
         this.dynToGUI = dynToGUI;
         this.GUIToCruiseActInst = GUIToCruiseActInst;
@@ -64,11 +133,11 @@ public class GUI extends javax.swing.JFrame {
             @Override
             public void run() {
                 setVisible(true);
-                GUIUpdateTimer = new Timer(Main.SIM_TICK_MS / 2, new ActionListener() { 
+                // Fields repaint themselves when their text changes.
+                GUIUpdateTimer = new Timer(clock.getDisplayPeriodMillis(), new ActionListener() { 
                     @Override
                     public void actionPerformed(ActionEvent e) {
                         updateDynamicsReadout();
-                        repaint();
                     }
                 });
                 GUIUpdateTimer.start();
@@ -77,26 +146,177 @@ public class GUI extends javax.swing.JFrame {
     }
 
     /**
-     * Updates all the fields on the GUI.
+     * Sends brake and ignition off instructions straight to CarDynamics
+     * rather than via cruise control.
+     * 
+     * @param GUIToDynPriority the car's priority lane, or null for none.
+     */
+    public void setPriorityLane(BlockingQueue<ActuatorInstruction> GUIToDynPriority) {
+        this.GUIToDynPriority = GUIToDynPriority;
+    }
+
+    /**
+     * Adds a warp control, so the driver can run the car faster or slower than
+     * real time, and a display of the warp actually achieved.
+     *
+     * @param loop the car's tick loop.
+     */
+    public void setTickLoop(final TickLoop loop) {
+        this.loop = loop;
+
+        // The presets, plus the loop's warp if it started at another.
+        final List<Double> warps = new ArrayList<Double>();
+        final JComboBox<String> warpChoice = new JComboBox<String>();
+        for (int i = 0; i < WARPS.length; i++) {
+            warps.add(WARPS[i]);
+            warpChoice.addItem(WARP_NAMES[i]);
+        }
+        double startWarp = loop.getWarp();
+        int selected = warps.indexOf(startWarp);
+        if (selected < 0) {
+            selected = 0;
+            while (warps.get(selected) < startWarp) {
+                selected++;
+            }
+            warps.add(selected, startWarp);
+            warpChoice.insertItemAt(new DecimalFormat("0.###").format(startWarp) + "x", selected);
+        }
+        warpChoice.setSelectedIndex(selected);
+        warpChoice.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loop.setWarp(warps.get(warpChoice.getSelectedIndex()));
+            }
+        });
+        measuredWarpLabel = new JLabel("sim/wall: -");
+
+        JPanel warpPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        warpPanel.add(new JLabel("Time warp"));
+        warpPanel.add(warpChoice);
+        warpPanel.add(measuredWarpLabel);
+        getContentPane().add(warpPanel, BorderLayout.NORTH);
+        pack();
+    }
+
+    /**
+     * Updates all the fields on the GUI. Only the newest readout is displayed;
+     * any older ones published since the last update are only charted. If the
+     * GUI falls too far behind, the oldest are skipped rather than holding up
+     * the car.
+     *
+     * While the car runs faster than real time, the GUI only samples: the
+     * newest readout is displayed and charted and the rest are skipped, so the
+     * charts show wall-clock time rather than simulated time.
      */
     void updateDynamicsReadout() {
-        if (dynToGUI.size() > 0) {
-            try {
-                DynamicsReadout readout = dynToGUI.take();
-                
-                // Display information.
-                currSpeed = readout.getSpeedKPH();
-                terrainGradient.setText(String.format("%.01f%s", readout.getGradient(), "\u00b0"));
-                windSpeed.setText(String.format("%.01f %s", readout.getWindSpeedKPH(), "km/h"));
-                accelPercentageField.setText(String.format("%.01f%s", readout.getThrottleSetting(), "%"));
-                brakePercentageField.setText(String.format("%.01f%s", readout.getBrakePercentage(), "%"));
-                distanceField.setText(String.format("%.01f %s", readout.getDistanceKMeters(), "km"));
-                speedField.setText(String.format("%.01f %s", currSpeed, "km/h"));
-                
-            } catch (InterruptedException intEx) {
-                // Do nothing. This exception will not lead to anything disastrous.
+        DynamicsReadout readout = null;
+        TickLoop warpedLoop = loop;
+        if (warpedLoop != null && warpedLoop.getWarp() > 1) {
+            readout = dynToGUI.pollLatest();
+            if (readout != null) {
+                addChartSamples(readout);
+            }
+        } else {
+            DynamicsReadout next;
+            while ((next = dynToGUI.poll()) != null) {
+                readout = next;
+                addChartSamples(readout); // Charts show every readout, not just the newest.
             }
         }
+        if (readout == null) {
+            return;
+        }
+        updateMeasuredWarp(readout);
+        speedChart.repaint();
+        pedalChart.repaint();
+        gradientChart.repaint();
+        windChart.repaint();
+
+        // Display information.
+        currSpeed = readout.getSpeedKPH();
+        gradientDisplay.update(readout.getGradient());
+        windSpeedDisplay.update(readout.getWindSpeedKPH());
+        accelDisplay.update(readout.getThrottleSetting());
+        brakeDisplay.update(readout.getBrakePercentage());
+        distanceDisplay.update(readout.getDistanceKMeters());
+        speedDisplay.update(currSpeed);
+    }
+
+    /**
+     * Shows how many simulated seconds passed per wall-clock second, from
+     * readout numbers and timestamps, about every WARP_MEASURE_NANOS.
+     *
+     * @param readout the newest readout.
+     */
+    private void updateMeasuredWarp(DynamicsReadout readout) {
+        if (measuredWarpLabel == null || readout.getTimestampNanos() == 0) {
+            return;
+        }
+        if (warpReference == null || readout.getSequence() < warpReference.getSequence()) {
+            warpReference = readout;
+            return;
+        }
+        long wallNanos = readout.getTimestampNanos() - warpReference.getTimestampNanos();
+        if (wallNanos < WARP_MEASURE_NANOS) {
+            return;
+        }
+        double simSeconds = (readout.getSequence() - warpReference.getSequence()) * tickSeconds;
+        measuredWarpLabel.setText(String.format("sim/wall: %.1fx", simSeconds / (wallNanos / 1e9)));
+        warpReference = readout;
+    }
+
+    /**
+     * Creates the strip charts and places them below the existing panels.
+     *
+     * @param clock rates; the charts hold one sample per control tick.
+     */
+    private void initCharts(SimClock clock) {
+        int capacity = CHART_WINDOW_S * clock.getControlHz();
+
+        speedChart = new StripChart("Speed (km/h)", 0, MAX_CRUISE_SPEED, capacity, CHART_WIDTH, CHART_HEIGHT);
+        speedSeries = speedChart.addSeries("speed", Color.BLUE);
+        setSpeedSeries = speedChart.addSeries("set", Color.GRAY);
+
+        pedalChart = new StripChart("Pedals (%)", 0, 100, capacity, CHART_WIDTH, CHART_HEIGHT);
+        throttleSeries = pedalChart.addSeries("throttle", new Color(0x008000));
+        brakeSeries = pedalChart.addSeries("brake", Color.RED);
+
+        gradientChart = new StripChart("Gradient (\u00b0)", -6, 6, capacity, CHART_WIDTH, CHART_HEIGHT);
+        gradientSeries = gradientChart.addSeries("", new Color(0x8B4513));
+
+        windChart = new StripChart("Wind (km/h)", -150, 150, capacity, CHART_WIDTH, CHART_HEIGHT);
+        windSeries = windChart.addSeries("", Color.DARK_GRAY);
+
+        JPanel charts = new JPanel(new GridLayout(0, 1, 0, 2));
+        charts.add(speedChart);
+        charts.add(pedalChart);
+        charts.add(gradientChart);
+        charts.add(windChart);
+
+        // The generated layout fixes the frame's size; wrap it and let the
+        // frame grow to fit the charts.
+        JPanel root = new JPanel(new BorderLayout());
+        root.add(getContentPane(), BorderLayout.CENTER);
+        root.add(charts, BorderLayout.SOUTH);
+        setContentPane(root);
+        setMinimumSize(null);
+        setMaximumSize(null);
+        setPreferredSize(null);
+        pack();
+    }
+
+    /**
+     * Appends a readout to the strip charts.
+     *
+     * @param readout the readout.
+     */
+    private void addChartSamples(DynamicsReadout readout) {
+        speedChart.add(speedSeries, readout.getSpeedKPH());
+        speedChart.add(setSpeedSeries, CCState == CCStates.ON ? cruiseSpeed : Double.NaN);
+        pedalChart.add(throttleSeries, readout.getThrottleSetting());
+        pedalChart.add(brakeSeries, readout.getBrakePercentage());
+        gradientChart.add(gradientSeries, readout.getGradient());
+        windChart.add(windSeries, readout.getWindSpeedKPH());
     }
 
     /**
@@ -111,9 +331,9 @@ public class GUI extends javax.swing.JFrame {
                 // the driver is doing nothing whilst the cruise control system
                 //is enabled.
                 brakeSlider.setValue(0);
-                GUIToCruiseActInst.put(new ActuatorInstruction(Instructions.BRAKE, 0));
+                sendActuatorInstruction(new ActuatorInstruction(Instructions.BRAKE, 0));
                 accelSlider.setValue(0);
-                GUIToCruiseActInst.put(new ActuatorInstruction(Instructions.MOTOR, 0));
+                sendActuatorInstruction(new ActuatorInstruction(Instructions.MOTOR, 0));
                 
                 CCState = CCStates.ON;
                 GUIToCruiseCCInst.put(new CCInstruction(CCInstructions.ACTIVATE, cruiseSpeed));
@@ -153,6 +373,21 @@ public class GUI extends javax.swing.JFrame {
         }
     }
 
+    /**
+     * Sends brake and ignition off instructions on the car's priority lane, if
+     * it has one, and everything else via cruise control.
+     * 
+     * @param instruction the driver's instruction.
+     * @throws InterruptedException if interrupted while waiting for space.
+     */
+    private void sendActuatorInstruction(ActuatorInstruction instruction) throws InterruptedException {
+        if (GUIToDynPriority != null && instruction.isSafetyCritical()) {
+            GUIToDynPriority.put(instruction);
+        } else {
+            GUIToCruiseActInst.put(instruction);
+        }
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -604,14 +839,14 @@ public class GUI extends javax.swing.JFrame {
         try {
             if (ignition.isSelected()) {
                 stateChange(CCStates.OFF);//Ensuring cruise controller is off.
-                GUIToCruiseActInst.put(new ActuatorInstruction(Instructions.TURN_ON_IGNITION));
-                GUIToCruiseActInst.put(new ActuatorInstruction(Instructions.BRAKE, brakeSlider.getValue()));
-                GUIToCruiseActInst.put(new ActuatorInstruction(Instructions.MOTOR, accelSlider.getValue()));
+                sendActuatorInstruction(new ActuatorInstruction(Instructions.TURN_ON_IGNITION));
+                sendActuatorInstruction(new ActuatorInstruction(Instructions.BRAKE, brakeSlider.getValue()));
+                sendActuatorInstruction(new ActuatorInstruction(Instructions.MOTOR, accelSlider.getValue()));
                 cruiseControlToggle.setEnabled(true);
             } else {
                 stateChange(CCStates.OFF);//Ensuring cruise controller is off.
-                GUIToCruiseActInst.put(new ActuatorInstruction(Instructions.TURN_OFF_IGNITION));
-                GUIToCruiseActInst.put(new ActuatorInstruction(Instructions.BRAKE, brakeSlider.getValue()));
+                sendActuatorInstruction(new ActuatorInstruction(Instructions.TURN_OFF_IGNITION));
+                sendActuatorInstruction(new ActuatorInstruction(Instructions.BRAKE, brakeSlider.getValue()));
                 cruiseControlToggle.setEnabled(false);
             }
 
@@ -648,7 +883,7 @@ public class GUI extends javax.swing.JFrame {
             stateChange(CCStates.INACTIVE);
         }
         try {
-            GUIToCruiseActInst.put(new ActuatorInstruction(Instructions.MOTOR, accelSlider.getValue()));
+            sendActuatorInstruction(new ActuatorInstruction(Instructions.MOTOR, accelSlider.getValue()));
         } catch (InterruptedException intEx) {
             // Do nothing. This exception will not lead to anything disastrous.
         }
@@ -664,7 +899,7 @@ public class GUI extends javax.swing.JFrame {
             stateChange(CCStates.INACTIVE);
         }
         try {
-            GUIToCruiseActInst.put(new ActuatorInstruction(Instructions.BRAKE, brakeSlider.getValue()));
+            sendActuatorInstruction(new ActuatorInstruction(Instructions.BRAKE, brakeSlider.getValue()));
         } catch (InterruptedException intEx) {
             // Do nothing. This exception will not lead to anything disastrous.
         }
@@ -0,0 +1,195 @@
+package car;
+
+import car.CCInstruction.CCInstructions;
+
+/**
+ * Cruise controller quality figures for one vehicle, updated one readout at a
+ * time in constant memory, so a fleet can report on its controllers without
+ * storing any per-tick data.
+ *
+ * Feed it the vehicle's cruise control instructions (accept(CCInstruction))
+ * and its readouts (accept(DynamicsReadout)) in the order they happen. Error
+ * is set speed - speed, in km/h, and is only measured while cruise control is
+ * active. A new set point starts at every ACTIVATE, and at every SET_SPEED
+ * while active.
+ * <ul>
+ * <li>integral absolute error: sum of |error| * tick length (km/h s).</li>
+ * <li>overshoot: furthest the speed went past a set point, in the direction
+ * of the change (km/h). The largest over the run.</li>
+ * <li>settling time: from a set point until speed last entered, and stayed
+ * within, SETTLING_BAND of it. The largest over the run, or NaN if speed had
+ * not settled when a set point ended.</li>
+ * <li>throttle total variation: sum of |change in throttle| between readouts
+ * (%), whoever is controlling the throttle. Large values mean a busy
+ * controller.</li>
+ * <li>error mean and variance: Welford's running algorithm.</li>
+ * </ul>
+ *
+ * Not thread-safe; use one engine per vehicle.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class KpiEngine {
+
+    private static final double SETTLING_BAND = 0.02; // Fraction of set speed.
+    private static final double MIN_SETTLING_BAND_KPH = 1;
+
+    private long ticks = 0;
+    private double speed = 0; // km/h, latest.
+    private double throttle = Double.NaN; // %, latest.
+
+    // Current set point.
+    private boolean ccActive = false;
+    private double setSpeed = 0; // km/h.
+    private double stepDirection = 0; // +1 = speeding up to setSpeed, -1 = slowing down.
+    private long setPointTick = 0; // Tick setSpeed last changed.
+    private long lastUnsettledTick = 0; // Last tick speed was outside the settling band.
+
+    // Results.
+    private double integralAbsError = 0;
+    private double maxOvershoot = 0;
+    private double maxSettlingTime = 0;
+    private boolean unsettled = false; // A set point ended before speed settled.
+    private int setPoints = 0;
+    private double throttleVariation = 0;
+    private long errorCount = 0;
+    private double errorMean = 0;
+    private double errorM2 = 0; // Sum of squared differences from the mean.
+
+    /**
+     * Notes a cruise control instruction. Call before accept(DynamicsReadout)
+     * for the tick it was submitted in.
+     *
+     * @param instruction the instruction.
+     */
+    public void accept(CCInstruction instruction) {
+        CCInstructions type = instruction.getInstruction();
+        if (type == CCInstructions.DEACTIVATE) {
+            endSetPoint();
+            ccActive = false;
+        } else if (type == CCInstructions.ACTIVATE || ccActive) {
+            endSetPoint();
+            ccActive = true;
+            setSpeed = instruction.getSpeedSetting();
+            stepDirection = setSpeed >= speed ? 1 : -1;
+            setPointTick = ticks;
+            lastUnsettledTick = ticks;
+            setPoints++;
+        } else { // SET_SPEED while inactive; replaced by the next ACTIVATE.
+            setSpeed = instruction.getSpeedSetting();
+        }
+    }
+
+    /**
+     * Adds the readout from one tick.
+     *
+     * @param readout the readout.
+     */
+    public void accept(DynamicsReadout readout) {
+        ticks++;
+        speed = readout.getSpeedKPH();
+
+        double newThrottle = readout.getThrottleSetting();
+        if (!Double.isNaN(throttle)) {
+            throttleVariation += Math.abs(newThrottle - throttle);
+        }
+        throttle = newThrottle;
+
+        if (!ccActive) {
+            return;
+        }
+        double error = setSpeed - speed;
+        integralAbsError += Math.abs(error) * Main.SIM_TICK_S;
+        maxOvershoot = Math.max(maxOvershoot, -error * stepDirection);
+        if (Math.abs(error) > Math.max(setSpeed * SETTLING_BAND, MIN_SETTLING_BAND_KPH)) {
+            lastUnsettledTick = ticks;
+        }
+
+        errorCount++;
+        double delta = error - errorMean;
+        errorMean += delta / errorCount;
+        errorM2 += delta * (error - errorMean);
+    }
+
+    /**
+     * Finishes the settling time measurement for the current set point.
+     */
+    private void endSetPoint() {
+        if (!ccActive || ticks == setPointTick) { // Nothing to measure.
+            return;
+        }
+        if (lastUnsettledTick == ticks) {
+            unsettled = true;
+        } else {
+            maxSettlingTime = Math.max(maxSettlingTime, (lastUnsettledTick - setPointTick) * Main.SIM_TICK_S);
+        }
+    }
+
+    /**
+     * @return true if cruise control is currently active.
+     */
+    public boolean isCruiseActive() {
+        return ccActive;
+    }
+
+    /**
+     * @return number of set points seen.
+     */
+    public int getSetPointCount() {
+        return setPoints;
+    }
+
+    /**
+     * @return in km/h s.
+     */
+    public double getIntegralAbsError() {
+        return integralAbsError;
+    }
+
+    /**
+     * @return largest overshoot of a set point, in km/h.
+     */
+    public double getMaxOvershootKPH() {
+        return maxOvershoot;
+    }
+
+    /**
+     * @return longest settling time, in seconds, or NaN if the speed failed
+     * to settle. The current set point counts as unsettled if speed is
+     * outside the band right now.
+     */
+    public double getSettlingTimeSeconds() {
+        if (unsettled) {
+            return Double.NaN;
+        }
+        if (!ccActive || ticks == setPointTick) {
+            return maxSettlingTime;
+        }
+        if (lastUnsettledTick == ticks) {
+            return Double.NaN;
+        }
+        return Math.max(maxSettlingTime, (lastUnsettledTick - setPointTick) * Main.SIM_TICK_S);
+    }
+
+    /**
+     * @return sum of throttle changes, in %.
+     */
+    public double getThrottleTotalVariation() {
+        return throttleVariation;
+    }
+
+    /**
+     * @return mean speed error in km/h, or NaN if never active.
+     */
+    public double getErrorMeanKPH() {
+        return errorCount == 0 ? Double.NaN : errorMean;
+    }
+
+    /**
+     * @return sample variance of speed error in (km/h)^2, or NaN with fewer
+     * than two samples.
+     */
+    public double getErrorVariance() {
+        return errorCount < 2 ? Double.NaN : errorM2 / (errorCount - 1);
+    }
+}
@@ -0,0 +1,129 @@
+package car;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Fixed-size histogram of non-negative durations in nanoseconds, precise to
+ * about 6% at any magnitude: values are bucketed by power of two, and each
+ * power of two is split into SUB_BUCKETS linear buckets. Recording is a few
+ * arithmetic operations and never allocates, so it can be done on every tick.
+ *
+ * Record from one thread only. Other threads may read at any time, but only
+ * see consistent figures once the recording thread has stopped (or otherwise
+ * published them).
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long total = 0;
+    private long max = 0;
+
+    /**
+     * @param nanos a duration; negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucket(value)]++;
+        count++;
+        total += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return mean in nanoseconds, or NaN if nothing has been recorded.
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : total / (double) count;
+    }
+
+    /**
+     * @return largest value recorded, in nanoseconds (exact).
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile 0-100.
+     * @return a value (the top of its bucket) that at least that percentage of
+     * recorded values are at or below, in nanoseconds; 0 if nothing has been
+     * recorded.
+     */
+    public long getPercentile(double percentile) {
+        long wanted = (long) Math.ceil(count * Math.max(0, Math.min(100, percentile)) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= wanted && seen > 0) {
+                return Math.min(bucketTop(i), max);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return count, mean, 50th, 99th and 99.9th percentiles and maximum, in
+     * microseconds.
+     */
+    public String summary() {
+        return String.format(Locale.ROOT, "n=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count, getMean() / 1e3, getPercentile(50) / 1e3, getPercentile(99) / 1e3, getPercentile(99.9) / 1e3, max / 1e3);
+    }
+
+    /**
+     * Adds the count, mean, 50th, 99th and 99.9th percentiles and maximum to
+     * a metrics map, in microseconds.
+     *
+     * @param prefix metric name prefix, e.g. "readout_age".
+     * @param metrics destination.
+     */
+    public void addMetrics(String prefix, Map<String, Double> metrics) {
+        metrics.put(prefix + "_count", (double) count);
+        metrics.put(prefix + "_mean_us", getMean() / 1e3);
+        metrics.put(prefix + "_p50_us", getPercentile(50) / 1e3);
+        metrics.put(prefix + "_p99_us", getPercentile(99) / 1e3);
+        metrics.put(prefix + "_p999_us", getPercentile(99.9) / 1e3);
+        metrics.put(prefix + "_max_us", max / 1e3);
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long bucketTop(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+    }
+}
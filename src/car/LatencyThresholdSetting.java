@@ -0,0 +1,88 @@
+package car;
+
+import java.util.Set;
+import jdk.jfr.SettingControl;
+
+/**
+ * Flight Recorder setting for events that are too frequent to record all of
+ * and have a latency rather than a duration: only events with at least this
+ * latency are recorded. Values are written as JFR thresholds are ("20 ms",
+ * "0 ns"). When several recordings are running, the lowest value wins.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class LatencyThresholdSetting extends SettingControl {
+
+    // Used when no recording sets a value.
+    static final String DEFAULT = "50 ms";
+
+    private String value = DEFAULT;
+    private volatile long nanos = parse(DEFAULT);
+
+    @Override
+    public String combine(Set<String> settingValues) {
+        String lowest = null;
+        for (String settingValue : settingValues) {
+            try {
+                if (lowest == null || parse(settingValue) < parse(lowest)) {
+                    lowest = settingValue;
+                }
+            } catch (IllegalArgumentException argEx) { // Including NumberFormatException
+                // Ignore values that cannot be read.
+            }
+        }
+        return lowest == null ? DEFAULT : lowest;
+    }
+
+    @Override
+    public void setValue(String settingValue) {
+        try {
+            nanos = parse(settingValue);
+            value = settingValue;
+        } catch (IllegalArgumentException argEx) { // Including NumberFormatException
+            // Keep the previous value.
+        }
+    }
+
+    @Override
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return the threshold in nanoseconds.
+     */
+    long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Reads a threshold.
+     *
+     * @param settingValue a number and a unit (ns, us, ms or s), or 0.
+     * @return nanoseconds.
+     * @throws IllegalArgumentException if the value cannot be read.
+     */
+    static long parse(String settingValue) {
+        String trimmed = settingValue.trim();
+        if (trimmed.equals("0")) {
+            return 0;
+        }
+        int split = 0;
+        while (split < trimmed.length() && Character.isDigit(trimmed.charAt(split))) {
+            split++;
+        }
+        long amount = Long.parseLong(trimmed.substring(0, split));
+        String unit = trimmed.substring(split).trim();
+        if (unit.equals("ns")) {
+            return amount;
+        } else if (unit.equals("us")) {
+            return amount * 1000L;
+        } else if (unit.equals("ms")) {
+            return amount * 1000000L;
+        } else if (unit.equals("s")) {
+            return amount * 1000000000L;
+        }
+        throw new IllegalArgumentException("Unknown unit '" + unit + "'");
+    }
+}
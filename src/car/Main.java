@@ -1,7 +1,8 @@
 package car;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import javax.swing.UIManager;
@@ -15,34 +16,105 @@ public class Main {
 
     public static final int SIM_TICK_MS = 20;//milliseconds between each tick.
     public static final double SIM_TICK_S = SIM_TICK_MS / 1000.0; //seconds between each tick.
+    // Localhost port to stream telemetry on (-Dvroom.telemetry.port=N). 0 = disabled.
+    private static final int TELEMETRY_PORT = Integer.getInteger("vroom.telemetry.port", 0);
+    // Localhost port for external drivers' commands (-Dvroom.command.port=N). 0 = disabled.
+    private static final int COMMAND_PORT = Integer.getInteger("vroom.command.port", 0);
+    // Unix domain socket for external drivers' commands (-Dvroom.command.socket=PATH).
+    private static final String COMMAND_SOCKET = System.getProperty("vroom.command.socket");
+    // Seconds of readouts kept for consumers that fall behind.
+    private static final int READOUT_RING_SECONDS = 5;
+    // Cruise control's response to stale readouts (-Dvroom.watchdog.mode=HOLD|RELEASE).
+    private static final String WATCHDOG_MODE = System.getProperty("vroom.watchdog.mode", StalenessWatchdog.DegradedMode.HOLD.name());
+    // Oldest readout cruise control will act on, in ticks (-Dvroom.watchdog.max.age.ticks=N).
+    private static final int WATCHDOG_MAX_AGE_TICKS = Integer.getInteger("vroom.watchdog.max.age.ticks", 3);
+    // How the car's loop waits between ticks (-Dvroom.wait=BUSY_SPIN|YIELD|PARK|BLOCK).
+    private static final String WAIT_STRATEGY = System.getProperty("vroom.wait", WaitStrategy.BLOCK.name());
+    // Type of car to drive (-Dvroom.vehicle=NAME), from the table in -Dvroom.vehicles=FILE.
+    private static final String VEHICLE = System.getProperty("vroom.vehicle");
+    // Simulated seconds per real second to start at (-Dvroom.warp=N); the GUI can change it.
+    private static final String WARP = System.getProperty("vroom.warp", "1");
 
     /**
      * @param args the command line arguments
      */
     public static void main(String[] args) {
 
-        Timer timer = new Timer();
+        // Physics, control and display rates (-Dvroom.physics.hz=N etc.).
+        SimClock clock = SimClock.fromSystemProperties();
+        WaitStrategy waitStrategy = WaitStrategy.valueOf(WAIT_STRATEGY);
 
         //BlockingQueues between CruiseControl and CarDynamics.
         final BlockingQueue<ActuatorInstruction> cruiseToDyn = new LinkedBlockingQueue<ActuatorInstruction>();
-        final BlockingQueue<DynamicsReadout> dynToCruise = new LinkedBlockingQueue<DynamicsReadout>();
 
         //BlockingQueues between GUI and CruiseControl.
         final BlockingQueue<ActuatorInstruction> GUIToCruiseActInst = new LinkedBlockingQueue<ActuatorInstruction>();
         final BlockingQueue<CCInstruction> GUIToCruiseCCInst = new LinkedBlockingQueue<CCInstruction>();
 
-        //BlockingQueues between GUI and CarDynamics.
-        final BlockingQueue<DynamicsReadout> dynToGUI = new LinkedBlockingQueue<DynamicsReadout>();
+        //Priority lane from GUI straight to CarDynamics, for brake and ignition off.
+        final BlockingQueue<ActuatorInstruction> GUIToDynPriority = new LinkedBlockingQueue<ActuatorInstruction>();
+
+        //Ring from CarDynamics to CruiseControl and GUI, each with its own cursor.
+        final ReadoutRing readouts = new ReadoutRing(READOUT_RING_SECONDS * clock.getControlHz());
+        ReadoutRing.Cursor dynToCruise = readouts.newCursor();
+        ReadoutRing.Cursor dynToGUI = readouts.newCursor();
 
         //Creating objects.
-        TimerTask dynamics = new CarDynamics(cruiseToDyn, dynToCruise, dynToGUI);
-        TimerTask cruise = new CruiseControl(dynToCruise, GUIToCruiseCCInst, GUIToCruiseActInst, cruiseToDyn);
+        CarDynamics dynamics = new CarDynamics(cruiseToDyn, readouts);
+        dynamics.setClock(clock);
+        dynamics.setVehicle(loadVehicle());
+        dynamics.setPriorityLane(GUIToDynPriority);
+        CruiseControl cruise = new CruiseControl(dynToCruise, GUIToCruiseCCInst, GUIToCruiseActInst, cruiseToDyn);
+        cruise.setClock(clock);
+        cruise.setWatchdog(new StalenessWatchdog(
+                StalenessWatchdog.DEFAULT_MAX_MISSED_TICKS,
+                WATCHDOG_MAX_AGE_TICKS * clock.getTickNanos(),
+                StalenessWatchdog.DegradedMode.valueOf(WATCHDOG_MODE)));
+
+        //Flow publisher on the ring, for observers that subscribe at runtime.
+        ReadoutPublisher publisher = new ReadoutPublisher(readouts);
+        dynamics.setReadoutPublisher(publisher);
+
+        //Optional telemetry stream for external observers.
+        if (TELEMETRY_PORT > 0) {
+            try {
+                TelemetryServer telemetry = new TelemetryServer(TELEMETRY_PORT);
+                telemetry.start();
+                publisher.subscribe(telemetry);
+            } catch (IOException ioEx) {
+                java.util.logging.Logger.getLogger(TelemetryServer.class.getName()).log(java.util.logging.Level.SEVERE, null, ioEx);
+            }
+        }
 
-        //Giving objects a timer. This is mainly so that CarDynamics is operating 
-        //in a discrete-time manner.
-        timer.scheduleAtFixedRate(dynamics, 0, Main.SIM_TICK_MS);
+        //Optional command server for external drivers, alongside the GUI.
+        if (COMMAND_PORT > 0 || COMMAND_SOCKET != null) {
+            try {
+                CommandServer commandServer = new CommandServer(GUIToCruiseActInst, GUIToCruiseCCInst);
+                commandServer.setPriorityLane(GUIToDynPriority);
+                if (COMMAND_PORT > 0) {
+                    commandServer.listen(COMMAND_PORT);
+                }
+                if (COMMAND_SOCKET != null) {
+                    commandServer.listen(Paths.get(COMMAND_SOCKET));
+                }
+                commandServer.start();
+                closeOnExit(commandServer);
+            } catch (IOException ioEx) {
+                java.util.logging.Logger.getLogger(CommandServer.class.getName()).log(java.util.logging.Level.SEVERE, null, ioEx);
+            }
+        }
 
-        timer.scheduleAtFixedRate(cruise, 0, Main.SIM_TICK_MS);
+        //Giving objects a tick loop. This is mainly so that CarDynamics is operating 
+        //in a discrete-time manner. CarDynamics runs before CruiseControl every tick.
+        final TickLoop loop = new TickLoop(clock.getTickNanos(), waitStrategy, dynamics, cruise);
+        cruise.getWatchdog().setTickLoop(loop);
+        try {
+            loop.setWarp(Double.parseDouble(WARP));
+        } catch (IllegalArgumentException argEx) { // Including NumberFormatException
+            System.err.println("Bad warp '" + WARP + "': must be a number of at least " + TickLoop.MIN_WARP);
+            System.exit(1);
+        }
+        reportTimingOnExit(loop, dynamics, cruise);
 
         /*
          * Gui related. This code configures the 'look and feel' of the gui.
@@ -60,12 +132,72 @@ public class Main {
         }
 
         //Create gui object. This is what the driver 'interfaces' with.
-        GUI gui = new GUI(dynToGUI,GUIToCruiseActInst, GUIToCruiseCCInst);
+        GUI gui = new GUI(dynToGUI,GUIToCruiseActInst, GUIToCruiseCCInst, clock);
+        gui.setPriorityLane(GUIToDynPriority);
+        gui.setTickLoop(loop);
         
-        //Begin threads.
-        Thread dynThread = new Thread(dynamics);
-        Thread cruiseThread = new Thread(cruise);
-        dynThread.start(); 
-        cruiseThread.start();         
+        //Begin the car's thread.
+        loop.start("car");
+    }
+
+    /**
+     * Finds the car to drive. Exits if it cannot be found.
+     *
+     * @return the vroom.vehicle profile, or the table's first if none is
+     * named.
+     */
+    private static VehicleProfile loadVehicle() {
+        VehicleTable vehicles = null;
+        try {
+            vehicles = VehicleTable.fromSystemProperties();
+        } catch (IOException ioEx) {
+            System.err.println("Cannot read vehicles: " + ioEx.getMessage());
+            System.exit(1);
+        } catch (ParseException parseEx) {
+            System.err.println("Bad vehicles file: " + parseEx.getMessage());
+            System.exit(1);
+        }
+        if (VEHICLE == null) {
+            return vehicles.get(0);
+        }
+        int index = vehicles.indexOf(VEHICLE);
+        if (index < 0) {
+            System.err.println("Unknown vehicle '" + VEHICLE + "'");
+            System.exit(1);
+        }
+        return vehicles.get(index);
+    }
+
+    /**
+     * Closes the command server when the program exits, removing its socket
+     * file.
+     */
+    private static void closeOnExit(final CommandServer commandServer) {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                commandServer.close();
+            }
+        }, "command-server-close"));
+    }
+
+    /**
+     * Logs the loop's wake-up latency, readout age, sense-to-actuate and
+     * brake latencies and watchdog counts when the program exits.
+     */
+    private static void reportTimingOnExit(final TickLoop loop, final CarDynamics dynamics, final CruiseControl cruise) {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop.stop(); // So the figures are final.
+                StalenessWatchdog watchdog = cruise.getWatchdog();
+                java.util.logging.Logger.getLogger(Main.class.getName()).info(
+                        "wake-up latency: " + loop.getWakeLatency().summary()
+                        + "\nreadout age: " + watchdog.getReadoutAge().summary()
+                        + "\nsense to actuate: " + dynamics.getActuationLatency().summary()
+                        + "\nbrake to actuate: " + dynamics.getBrakeLatency().summary()
+                        + "\nstale ticks: " + watchdog.getStaleTicks() + " in " + watchdog.getDegradedEntries() + " episodes");
+            }
+        }, "timing-report"));
     }
 }
@@ -0,0 +1,341 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A Fleet whose state lives in a FleetStore, outside the Java heap, for
+ * fleets of tens of millions of cars. Everything a Fleet keeps per car is
+ * stored: speed, distance, acceleration, motor current, brake torque, driver
+ * inputs, the cruise controller's set speed and PID accumulators, its
+ * vehicle profile number, and the state of the car's disturbances generator
+ * (including its random numbers).
+ *
+ * Cars are stepped one store chunk at a time: the chunk is copied into a
+ * Fleet of FleetStore.CHUNK_CARS cars on the heap, stepped with its kernel,
+ * and copied back. Only that one chunk is ever on the heap, whatever the
+ * size of the fleet. The last chunk is usually only partly filled, and only
+ * its cars are copied and stepped. Results are exactly those of a Fleet.
+ *
+ * If the store is file-backed, checkpoint() saves the fleet, and a new
+ * OffHeapFleet on the same file carries on from there.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class OffHeapFleet {
+
+    // Columns needed in the store: the Fleet's, the vehicle profile number,
+    // then the disturbances.
+    public static final int COLUMNS = Fleet.COLUMNS + 1 + Disturbances.SAVED_SIZE;
+    private static final int VEHICLE_COLUMN = Fleet.COLUMNS;
+    private static final int DISTURBANCES_COLUMN = Fleet.COLUMNS + 1;
+
+    private final FleetStore store;
+    private final int size;
+    private final boolean windEnabled;
+    private final boolean hillsEnabled;
+    private final Fleet block; // The chunk being worked on.
+    private final double[][] blockColumns;
+    // Views of the store, by chunk; made once, as each is a new object.
+    private final DoubleBuffer[][] stateColumns; // The Fleet's columns.
+    private final LongBuffer[] vehicleColumns;
+    private final LongBuffer[][] disturbanceColumns;
+    private final long[] saved = new long[Disturbances.SAVED_SIZE];
+
+    /**
+     * A fleet of VehicleProfile.DEFAULT cars.
+     *
+     * @param store where the cars are kept; must have COLUMNS columns. A new
+     * store is filled with stationary cars with their engines off, car i's
+     * disturbances generated as by new Disturbances(seed + i, windEnabled,
+     * hillsEnabled). A store mapped from an existing file carries on from its
+     * last checkpoint.
+     * @param seed disturbances seed for a new store.
+     * @param windEnabled false to keep wind speed at zero.
+     * @param hillsEnabled false to keep the road flat.
+     * @param kernel integrates the cars' physics.
+     */
+    public OffHeapFleet(FleetStore store, long seed, boolean windEnabled, boolean hillsEnabled, FleetKernel kernel) {
+        this(store, VehicleTable.DEFAULT, seed, windEnabled, hillsEnabled, kernel);
+    }
+
+    /**
+     * A mixed fleet. Cars in a new store start as profile 0; see
+     * setVehicle().
+     *
+     * @param store where the cars are kept, as above. A store mapped from an
+     * existing file must be used with the same table.
+     * @param vehicles the types of car in the fleet.
+     * @param seed disturbances seed for a new store.
+     * @param windEnabled false to keep wind speed at zero.
+     * @param hillsEnabled false to keep the road flat.
+     * @param kernel integrates the cars' physics.
+     */
+    public OffHeapFleet(FleetStore store, VehicleTable vehicles, long seed, boolean windEnabled, boolean hillsEnabled, FleetKernel kernel) {
+        if (store.getColumns() != COLUMNS) {
+            throw new IllegalArgumentException("Store has " + store.getColumns() + " columns, not " + COLUMNS);
+        }
+        this.store = store;
+        this.size = store.getCars();
+        this.windEnabled = windEnabled;
+        this.hillsEnabled = hillsEnabled;
+
+        Disturbances[] disturbances = new Disturbances[FleetStore.CHUNK_CARS];
+        for (int i = 0; i < disturbances.length; i++) {
+            disturbances[i] = new Disturbances(0, windEnabled, hillsEnabled); // State replaced by the store's.
+        }
+        block = new Fleet(disturbances, vehicles, kernel);
+        blockColumns = block.columns();
+
+        int chunks = store.getChunkCount();
+        stateColumns = new DoubleBuffer[chunks][Fleet.COLUMNS];
+        vehicleColumns = new LongBuffer[chunks];
+        disturbanceColumns = new LongBuffer[chunks][Disturbances.SAVED_SIZE];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            for (int column = 0; column < Fleet.COLUMNS; column++) {
+                stateColumns[chunk][column] = store.doubles(chunk, column);
+            }
+            vehicleColumns[chunk] = store.longs(chunk, VEHICLE_COLUMN);
+            for (int k = 0; k < Disturbances.SAVED_SIZE; k++) {
+                disturbanceColumns[chunk][k] = store.longs(chunk, DISTURBANCES_COLUMN + k);
+            }
+        }
+
+        if (store.isNew()) {
+            reset(seed);
+        }
+    }
+
+    /**
+     * Puts every car back at the start.
+     *
+     * @param seed car i's disturbances are as new Disturbances(seed + i, ...).
+     */
+    public void reset(long seed) {
+        for (double[] column : blockColumns) {
+            Arrays.fill(column, 0);
+        }
+        Arrays.fill(block.pidThrottle, Double.NaN);
+        for (int chunk = 0; chunk < store.getChunkCount(); chunk++) {
+            int cars = chunkCars(chunk);
+            for (int column = 0; column < Fleet.COLUMNS; column++) {
+                stateColumns[chunk][column].put(0, blockColumns[column], 0, cars);
+            }
+            LongBuffer vehicles = vehicleColumns[chunk];
+            LongBuffer[] disturbances = disturbanceColumns[chunk];
+            for (int i = 0; i < cars; i++) {
+                vehicles.put(i, 0);
+                long car = (long) chunk * FleetStore.CHUNK_CARS + i;
+                new Disturbances(seed + car, windEnabled, hillsEnabled).save(saved, 0);
+                for (int k = 0; k < saved.length; k++) {
+                    disturbances[k].put(i, saved[k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the rates the cars run at, as CarDynamics.setClock().
+     *
+     * @param clock the rates.
+     */
+    public void setClock(SimClock clock) {
+        block.setClock(clock);
+    }
+
+    /**
+     * @return the rates the cars run at.
+     */
+    public SimClock getClock() {
+        return block.getClock();
+    }
+
+    /**
+     * Changes every car's PID gains, as CruiseControl.setGains().
+     *
+     * @param Kp proportional gain.
+     * @param Ki integral gain.
+     * @param Kd derivative gain.
+     */
+    public void setGains(double Kp, double Ki, double Kd) {
+        block.setGains(Kp, Ki, Kd);
+    }
+
+    /**
+     * @return number of cars.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the types of car in the fleet.
+     */
+    public VehicleTable getVehicles() {
+        return block.getVehicles();
+    }
+
+    /**
+     * Makes one car a different type of car, as Fleet.setVehicle().
+     *
+     * @param car index of the car.
+     * @param profile profile number in getVehicles().
+     */
+    public void setVehicle(int car, int profile) {
+        loadCar(car);
+        block.setVehicle(0, profile);
+        storeCar(car);
+    }
+
+    /**
+     * @param car index of the car.
+     * @return the car's profile number in getVehicles().
+     */
+    public int getVehicle(int car) {
+        loadCar(car);
+        return block.getVehicle(0);
+    }
+
+    /**
+     * Applies a driver or cruise control command to one car, as
+     * Fleet.apply().
+     *
+     * @param car index of the car.
+     * @param instruction the command.
+     * @param percentage throttle or brake (0-100%).
+     */
+    public void apply(int car, Instructions instruction, double percentage) {
+        loadCar(car);
+        block.apply(0, instruction, percentage);
+        storeCar(car);
+    }
+
+    /**
+     * Applies a cruise control command to one car, as Fleet.apply().
+     *
+     * @param car index of the car.
+     * @param instruction the command.
+     * @param speedSetting set speed (km/h); ignored for DEACTIVATE.
+     */
+    public void apply(int car, CCInstructions instruction, double speedSetting) {
+        loadCar(car);
+        block.apply(0, instruction, speedSetting);
+        storeCar(car);
+    }
+
+    /**
+     * Advances every car by a number of ticks, as Fleet.step().
+     *
+     * @param n number of ticks.
+     */
+    public void step(int n) {
+        for (int chunk = 0; chunk < store.getChunkCount(); chunk++) {
+            int cars = chunkCars(chunk);
+            loadChunk(chunk, cars);
+            block.setSize(cars);
+            block.step(n);
+            storeChunk(chunk, cars);
+        }
+    }
+
+    /**
+     * Copies one car's current state into a caller-supplied buffer, as
+     * CarDynamics.readState().
+     *
+     * @param car index of the car.
+     * @param buf destination.
+     * @param offset index of the first value; CarDynamics.STATE_SIZE values
+     * are written.
+     */
+    public void readState(int car, double[] buf, int offset) {
+        loadCar(car);
+        block.readState(0, buf, offset);
+    }
+
+    /**
+     * Saves the fleet to its file, if it has one.
+     */
+    public void checkpoint() {
+        store.checkpoint();
+    }
+
+    /**
+     * @return number of cars in the chunk; less than FleetStore.CHUNK_CARS
+     * only for the last.
+     */
+    private int chunkCars(int chunk) {
+        return Math.min(FleetStore.CHUNK_CARS, size - chunk * FleetStore.CHUNK_CARS);
+    }
+
+    private void loadChunk(int chunk, int cars) {
+        for (int column = 0; column < Fleet.COLUMNS; column++) {
+            stateColumns[chunk][column].get(0, blockColumns[column], 0, cars);
+        }
+        LongBuffer vehicles = vehicleColumns[chunk];
+        LongBuffer[] disturbances = disturbanceColumns[chunk];
+        for (int i = 0; i < cars; i++) {
+            block.vehicle[i] = (int) vehicles.get(i);
+            for (int k = 0; k < saved.length; k++) {
+                saved[k] = disturbances[k].get(i);
+            }
+            block.getDisturbances(i).restore(saved, 0);
+        }
+    }
+
+    private void storeChunk(int chunk, int cars) {
+        for (int column = 0; column < Fleet.COLUMNS; column++) {
+            stateColumns[chunk][column].put(0, blockColumns[column], 0, cars);
+        }
+        LongBuffer vehicles = vehicleColumns[chunk];
+        LongBuffer[] disturbances = disturbanceColumns[chunk];
+        for (int i = 0; i < cars; i++) {
+            vehicles.put(i, block.vehicle[i]);
+            block.getDisturbances(i).save(saved, 0);
+            for (int k = 0; k < saved.length; k++) {
+                disturbances[k].put(i, saved[k]);
+            }
+        }
+    }
+
+    /**
+     * Copies one car into the first place in the block.
+     */
+    private void loadCar(int car) {
+        checkIndex(car);
+        int chunk = car / FleetStore.CHUNK_CARS;
+        int i = car % FleetStore.CHUNK_CARS;
+        for (int column = 0; column < Fleet.COLUMNS; column++) {
+            blockColumns[column][0] = stateColumns[chunk][column].get(i);
+        }
+        block.vehicle[0] = (int) vehicleColumns[chunk].get(i);
+        for (int k = 0; k < saved.length; k++) {
+            saved[k] = disturbanceColumns[chunk][k].get(i);
+        }
+        block.getDisturbances(0).restore(saved, 0);
+    }
+
+    /**
+     * Copies the first car in the block back to its place in the store.
+     */
+    private void storeCar(int car) {
+        int chunk = car / FleetStore.CHUNK_CARS;
+        int i = car % FleetStore.CHUNK_CARS;
+        for (int column = 0; column < Fleet.COLUMNS; column++) {
+            stateColumns[chunk][column].put(i, blockColumns[column][0]);
+        }
+        vehicleColumns[chunk].put(i, block.vehicle[0]);
+        block.getDisturbances(0).save(saved, 0);
+        for (int k = 0; k < saved.length; k++) {
+            disturbanceColumns[chunk][k].put(i, saved[k]);
+        }
+    }
+
+    private void checkIndex(int car) {
+        if (car < 0 || car >= size) {
+            throw new IndexOutOfBoundsException("Car " + car);
+        }
+    }
+}
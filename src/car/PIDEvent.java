@@ -0,0 +1,45 @@
+package car;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one PID output, with its three terms before the
+ * output is clamped to 0-100%. One per control tick while cruise control is
+ * driving, so disabled unless asked for (car.PID#enabled=true).
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+@Name("car.PID")
+@Label("PID Output")
+@Category({"Vroom", "Cruise Control"})
+@Description("A cruise control PID output")
+@Enabled(false)
+@StackTrace(false)
+class PIDEvent extends jdk.jfr.Event {
+
+    @Label("Set Speed")
+    @Description("km/h")
+    double setSpeed;
+
+    @Label("Speed")
+    @Description("km/h")
+    double speed;
+
+    @Label("Proportional")
+    double proportional;
+
+    @Label("Integral")
+    double integral;
+
+    @Label("Derivative")
+    double derivative;
+
+    @Label("Output")
+    @Description("Throttle percentage sent to the car")
+    double output;
+}
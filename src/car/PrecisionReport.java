@@ -0,0 +1,313 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures what single precision costs: drives a Fleet and a FloatFleet of
+ * the same cars through the same long run, and reports how far the
+ * FloatFleet's distance, speed and controller figures drift from the double
+ * precision reference, and how much faster it steps.
+ *
+ * A car whose speed reaches zero a tick earlier or later in one fleet than
+ * the other (when braking to a stop, say) stops or starts its hills
+ * generator at a different time, and from then on drives a different road.
+ * Such cars are counted as diverged rather than measured: their difference
+ * is no longer rounding. Errors and figures are over the other cars.
+ *
+ * Three in four cars are on cruise control, given a new set speed every
+ * SEGMENT_S; the rest are driven by hand, with a new throttle or brake
+ * setting every MANUAL_S. Wind and hills are on. State errors are reported
+ * at 1, 2, 5, 10, 20, 50... minutes and at the end; the RunSummary figures of
+ * the first KPI_CARS cars are compared at the end. Throughput is reported for
+ * whole ticks (with disturbances and cruise control) and for the kernels
+ * alone.
+ *
+ * Usage: java -cp ... car.PrecisionReport [--cars N] [--minutes M]
+ * [--physics HZ] [--vehicles FILE] [--max-speed-error KPH]
+ * [--max-distance-error FRACTION]
+ *
+ * Defaults to 1000 cars for 60 minutes at 1000 Hz physics. With the --max
+ * options, exits with status 1 if the largest speed error (km/h) or relative
+ * distance error at the end is over the budget.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class PrecisionReport {
+
+    private static final int DEFAULT_CARS = 1000;
+    private static final double DEFAULT_MINUTES = 60;
+    private static final int DEFAULT_PHYSICS_HZ = 1000;
+    private static final int KPI_CARS = 200;
+    private static final double SEGMENT_S = 300;
+    private static final double MANUAL_S = 60;
+    private static final double CRUISE_START_S = 20;
+    private static final int KERNEL_TICKS = 500; // For timing the kernels alone.
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int cars = DEFAULT_CARS;
+        double minutes = DEFAULT_MINUTES;
+        int physicsHz = DEFAULT_PHYSICS_HZ;
+        VehicleTable vehicles = VehicleTable.DEFAULT;
+        double maxSpeedError = Double.NaN;
+        double maxDistanceError = Double.NaN;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--cars") && i + 1 < args.length) {
+                    cars = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--minutes") && i + 1 < args.length) {
+                    minutes = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--physics") && i + 1 < args.length) {
+                    physicsHz = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--vehicles") && i + 1 < args.length) {
+                    vehicles = VehicleTable.load(Paths.get(args[++i]));
+                } else if (args[i].equals("--max-speed-error") && i + 1 < args.length) {
+                    maxSpeedError = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--max-distance-error") && i + 1 < args.length) {
+                    maxDistanceError = Double.parseDouble(args[++i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException argEx) { // Including NumberFormatException.
+            System.err.println("Usage: java car.PrecisionReport [--cars N] [--minutes M] [--physics HZ] [--vehicles FILE]"
+                    + " [--max-speed-error KPH] [--max-distance-error FRACTION]");
+            System.exit(1);
+        } catch (IOException ioEx) {
+            System.err.println("Cannot read vehicles: " + ioEx.getMessage());
+            System.exit(1);
+        } catch (ParseException parseEx) {
+            System.err.println("Bad vehicles file: " + parseEx.getMessage());
+            System.exit(1);
+        }
+
+        SimClock clock = new SimClock(physicsHz, SimClock.DEFAULT_HZ, SimClock.DEFAULT_HZ);
+        Disturbances[] doubleDisturbances = new Disturbances[cars];
+        Disturbances[] floatDisturbances = new Disturbances[cars];
+        for (int car = 0; car < cars; car++) {
+            doubleDisturbances[car] = new Disturbances(car, true, true);
+            floatDisturbances[car] = new Disturbances(car, true, true);
+        }
+        Fleet reference = new Fleet(doubleDisturbances, vehicles, Fleet.createKernel());
+        FloatFleet fleet = new FloatFleet(floatDisturbances, vehicles, FloatFleet.createKernel());
+        reference.setClock(clock);
+        fleet.setClock(clock);
+        for (int car = 0; car < cars; car++) {
+            reference.setVehicle(car, car % vehicles.size());
+            fleet.setVehicle(car, car % vehicles.size());
+        }
+        int kpiCars = Math.min(cars, KPI_CARS);
+        RunSummary[] referenceSummaries = new RunSummary[kpiCars];
+        RunSummary[] summaries = new RunSummary[kpiCars];
+        boolean[] kpiDiverged = new boolean[kpiCars];
+        for (int car = 0; car < kpiCars; car++) {
+            referenceSummaries[car] = new RunSummary();
+            summaries[car] = new RunSummary();
+        }
+
+        System.out.println(String.format(Locale.ROOT, "double kernel: %s, float kernel: %s, %d cars, %d Hz physics",
+                reference.getKernel().getClass().getSimpleName(), fleet.getKernel().getClass().getSimpleName(), cars, physicsHz));
+        System.out.println(String.format(Locale.ROOT, "%10s %18s %18s %16s %16s %10s",
+                "minutes", "distance_err_m", "distance_err_rel", "speed_err_kph", "speed_rms_kph", "diverged"));
+
+        Random random = new Random(0);
+        double[] expected = new double[CarDynamics.STATE_SIZE];
+        double[] actual = new double[CarDynamics.STATE_SIZE];
+        long ticks = Math.round(minutes * 60 / Main.SIM_TICK_S);
+        long nextCheckpoint = Math.round(60 / Main.SIM_TICK_S);
+        int checkpoint = 0;
+        long referenceNanos = 0;
+        long floatNanos = 0;
+        double[] errors = null;
+
+        for (long tick = 0; tick < ticks; tick++) {
+            for (int car = 0; car < cars; car++) {
+                drive(car, tick, random, reference, fleet, car < kpiCars ? referenceSummaries[car] : null, car < kpiCars ? summaries[car] : null);
+            }
+
+            long start = System.nanoTime();
+            reference.step(1);
+            referenceNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            fleet.step(1);
+            floatNanos += System.nanoTime() - start;
+
+            for (int car = 0; car < kpiCars; car++) {
+                reference.readState(car, expected, 0);
+                fleet.readState(car, actual, 0);
+                referenceSummaries[car].accept(toReadout(expected));
+                summaries[car].accept(toReadout(actual));
+                kpiDiverged[car] |= isDiverged(reference, fleet, car);
+            }
+
+            if (tick + 1 == nextCheckpoint || tick + 1 == ticks) {
+                errors = stateErrors(reference, fleet, expected, actual);
+                System.out.println(String.format(Locale.ROOT, "%10.1f %18.4g %18.4g %16.4g %16.4g %10d",
+                        (tick + 1) * Main.SIM_TICK_S / 60, errors[0], errors[1], errors[2], errors[3], (long) errors[4]));
+                checkpoint++;
+                nextCheckpoint = Math.round(checkpointMinutes(checkpoint) * 60 / Main.SIM_TICK_S);
+            }
+        }
+
+        int kpiCount = 0;
+        for (int car = 0; car < kpiCars; car++) {
+            kpiCount += kpiDiverged[car] ? 0 : 1;
+        }
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-24s %14s %14s %14s", "kpi (" + kpiCount + " cars)", "double_mean", "float_mean", "max_abs_diff"));
+        for (String name : RunSummary.METRIC_NAMES) {
+            double referenceSum = 0;
+            double sum = 0;
+            double worst = 0;
+            int count = 0;
+            for (int car = 0; car < kpiCars; car++) {
+                if (kpiDiverged[car]) {
+                    continue;
+                }
+                double expectedValue = referenceSummaries[car].toMetrics().get(name);
+                double actualValue = summaries[car].toMetrics().get(name);
+                if (Double.isNaN(expectedValue) || Double.isNaN(actualValue)) {
+                    continue;
+                }
+                referenceSum += expectedValue;
+                sum += actualValue;
+                worst = Math.max(worst, Math.abs(actualValue - expectedValue));
+                count++;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-24s %14.5g %14.5g %14.4g", name, referenceSum / count, sum / count, worst));
+        }
+
+        double physicsSteps = (double) cars * ticks * clock.getPhysicsStepsPerTick();
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "double_tick_steps_per_s=%.3g", physicsSteps / (referenceNanos / 1e9)));
+        System.out.println(String.format(Locale.ROOT, "float_tick_steps_per_s=%.3g", physicsSteps / (floatNanos / 1e9)));
+        physicsSteps = (double) cars * KERNEL_TICKS * clock.getPhysicsStepsPerTick();
+        long start = System.nanoTime();
+        for (int tick = 0; tick < KERNEL_TICKS; tick++) {
+            reference.getKernel().integrate(reference, clock.getPhysicsStepsPerTick(), clock.getPhysicsStepSeconds());
+        }
+        System.out.println(String.format(Locale.ROOT, "double_kernel_steps_per_s=%.3g", physicsSteps / ((System.nanoTime() - start) / 1e9)));
+        start = System.nanoTime();
+        for (int tick = 0; tick < KERNEL_TICKS; tick++) {
+            fleet.getKernel().integrate(fleet, clock.getPhysicsStepsPerTick(), (float) clock.getPhysicsStepSeconds());
+        }
+        System.out.println(String.format(Locale.ROOT, "float_kernel_steps_per_s=%.3g", physicsSteps / ((System.nanoTime() - start) / 1e9)));
+
+        boolean overBudget = false;
+        if (!Double.isNaN(maxSpeedError) && errors != null && errors[2] > maxSpeedError) {
+            System.err.println("Speed error " + errors[2] + " km/h is over the budget of " + maxSpeedError);
+            overBudget = true;
+        }
+        if (!Double.isNaN(maxDistanceError) && errors != null && errors[1] > maxDistanceError) {
+            System.err.println("Relative distance error " + errors[1] + " is over the budget of " + maxDistanceError);
+            overBudget = true;
+        }
+        if (overBudget) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return minutes of the n-th checkpoint after the first: 2, 5, 10, 20,
+     * 50, 100...
+     */
+    private static double checkpointMinutes(int n) {
+        double[] steps = {1, 2, 5};
+        return steps[n % 3] * Math.pow(10, n / 3);
+    }
+
+    /**
+     * Gives one car its inputs for a tick, the same in both fleets.
+     */
+    private static void drive(int car, long tick, Random random, Fleet reference, FloatFleet fleet,
+            RunSummary referenceSummary, RunSummary summary) {
+        double seconds = tick * Main.SIM_TICK_S;
+        boolean manual = car % 4 == 3;
+        if (tick == 0) {
+            reference.apply(car, Instructions.TURN_ON_IGNITION, 0);
+            fleet.apply(car, Instructions.TURN_ON_IGNITION, 0);
+            reference.apply(car, Instructions.MOTOR, 60);
+            fleet.apply(car, Instructions.MOTOR, 60);
+        } else if (manual) {
+            if (tick % Math.round(MANUAL_S / Main.SIM_TICK_S) == 0) {
+                boolean brake = random.nextInt(5) == 0;
+                double percentage = brake ? 10 + random.nextInt(40) : random.nextInt(101);
+                reference.apply(car, Instructions.BRAKE, brake ? percentage : 0);
+                fleet.apply(car, Instructions.BRAKE, brake ? percentage : 0);
+                reference.apply(car, Instructions.MOTOR, brake ? 0 : percentage);
+                fleet.apply(car, Instructions.MOTOR, brake ? 0 : percentage);
+            }
+        } else if (tick == Math.round(CRUISE_START_S / Main.SIM_TICK_S) || (seconds > CRUISE_START_S && tick % Math.round(SEGMENT_S / Main.SIM_TICK_S) == 0)) {
+            CCInstruction instruction = new CCInstruction(
+                    seconds > CRUISE_START_S ? CCInstructions.SET_SPEED : CCInstructions.ACTIVATE, 60 + random.nextInt(71));
+            reference.apply(car, instruction.getInstruction(), instruction.getSpeedSetting());
+            fleet.apply(car, instruction.getInstruction(), instruction.getSpeedSetting());
+            if (summary != null) {
+                referenceSummary.accept(instruction);
+                summary.accept(instruction);
+            }
+        }
+    }
+
+    /**
+     * @return true if a car's disturbances generators are no longer in step,
+     * so the two fleets' cars are on different roads.
+     */
+    private static boolean isDiverged(Fleet reference, FloatFleet fleet, int car) {
+        long[] expected = new long[Disturbances.SAVED_SIZE];
+        long[] actual = new long[Disturbances.SAVED_SIZE];
+        reference.getDisturbances(car).save(expected, 0);
+        fleet.getDisturbances(car).save(actual, 0);
+        return !Arrays.equals(expected, actual);
+    }
+
+    /**
+     * @return the largest distance error (m), the largest distance error
+     * relative to the distance, the largest speed error (km/h) and the RMS
+     * speed error (km/h), over cars that have not diverged, and the number
+     * that have.
+     */
+    private static double[] stateErrors(Fleet reference, FloatFleet fleet, double[] expected, double[] actual) {
+        double distanceError = 0;
+        double relativeDistanceError = 0;
+        double speedError = 0;
+        double squaredSpeedErrors = 0;
+        int diverged = 0;
+        for (int car = 0; car < reference.size(); car++) {
+            reference.readState(car, expected, 0);
+            fleet.readState(car, actual, 0);
+            if (isDiverged(reference, fleet, car)) {
+                diverged++;
+                continue;
+            }
+            double distance = Math.abs(actual[CarDynamics.STATE_DISTANCE] - expected[CarDynamics.STATE_DISTANCE]);
+            double speed = Math.abs(actual[CarDynamics.STATE_SPEED] - expected[CarDynamics.STATE_SPEED]) * 3.6;
+            distanceError = Math.max(distanceError, distance);
+            relativeDistanceError = Math.max(relativeDistanceError, distance / Math.max(1, expected[CarDynamics.STATE_DISTANCE]));
+            speedError = Math.max(speedError, speed);
+            squaredSpeedErrors += speed * speed;
+        }
+        int measured = Math.max(1, reference.size() - diverged);
+        return new double[]{distanceError, relativeDistanceError, speedError, Math.sqrt(squaredSpeedErrors / measured), diverged};
+    }
+
+    private static DynamicsReadout toReadout(double[] state) {
+        return new DynamicsReadout(
+                state[CarDynamics.STATE_DISTANCE],
+                state[CarDynamics.STATE_SPEED],
+                state[CarDynamics.STATE_ENGINE_ON] != 0 ? CarDynamics.engine.ON : CarDynamics.engine.OFF,
+                state[CarDynamics.STATE_THROTTLE],
+                state[CarDynamics.STATE_BRAKE],
+                state[CarDynamics.STATE_GRADIENT],
+                state[CarDynamics.STATE_WIND]);
+    }
+}
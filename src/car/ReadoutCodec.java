@@ -0,0 +1,91 @@
+package car;
+
+import car.CarDynamics.engine;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary framing for DynamicsReadout messages. Used when readouts leave
+ * the process (telemetry subscribers) or are written to disk.
+ *
+ * Each frame is laid out in network byte order as:
+ * <pre>
+ *   int    length      - number of bytes following this field.
+ *   byte   type        - FRAME_READOUT.
+ *   long   sequence    - increases by one for every readout published.
+ *   double distance    - m.
+ *   double speed       - m/s.
+ *   double throttle    - 0-100%.
+ *   double brake       - 0-100%.
+ *   double gradient    - degrees.
+ *   double windSpeed   - m/s.
+ *   byte   engine      - 0 = OFF, 1 = ON.
+ * </pre>
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public final class ReadoutCodec {
+
+    public static final byte FRAME_READOUT = 1;
+    public static final int HEADER_BYTES = 4; // The length prefix.
+    public static final int READOUT_PAYLOAD_BYTES = 1 + 8 + (6 * 8) + 1;
+    public static final int READOUT_FRAME_BYTES = HEADER_BYTES + READOUT_PAYLOAD_BYTES;
+
+    private ReadoutCodec() {
+    }
+
+    /**
+     * Writes a complete readout frame at the buffer's current position.
+     *
+     * @param buffer must have at least READOUT_FRAME_BYTES remaining.
+     * @param sequence sequence number of the readout.
+     * @param readout the readout to encode.
+     */
+    public static void encode(ByteBuffer buffer, long sequence, DynamicsReadout readout) {
+        buffer.putInt(READOUT_PAYLOAD_BYTES);
+        buffer.put(FRAME_READOUT);
+        buffer.putLong(sequence);
+        buffer.putDouble(readout.getDistanceMeters());
+        buffer.putDouble(readout.getSpeedMPS());
+        buffer.putDouble(readout.getThrottleSetting());
+        buffer.putDouble(readout.getBrakePercentage());
+        buffer.putDouble(readout.getGradient());
+        buffer.putDouble(readout.getWindSpeedMPS());
+        buffer.put((byte) (readout.getEngineStatus() == engine.ON ? 1 : 0));
+    }
+
+    /**
+     * Reads the sequence number of the frame starting at the buffer's current
+     * position, without moving the position.
+     *
+     * @param buffer positioned at the start of a frame.
+     * @return the sequence number.
+     */
+    public static long peekSequence(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + HEADER_BYTES + 1);
+    }
+
+    /**
+     * Reads a complete readout frame starting at the buffer's current position.
+     *
+     * @param buffer positioned at the start of a frame.
+     * @return the decoded readout.
+     * @throws IllegalArgumentException if the frame is not a readout frame.
+     */
+    public static DynamicsReadout decode(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte type = buffer.get();
+        if (type != FRAME_READOUT || length != READOUT_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Not a readout frame (type " + type + ", length " + length + ")");
+        }
+        buffer.getLong(); // Sequence; use peekSequence() if it is needed.
+        double distance = buffer.getDouble();
+        double speed = buffer.getDouble();
+        double throttle = buffer.getDouble();
+        double brake = buffer.getDouble();
+        double gradient = buffer.getDouble();
+        double windSpeed = buffer.getDouble();
+        engine engineStatus = buffer.get() == 1 ? engine.ON : engine.OFF;
+
+        return new DynamicsReadout(distance, speed, engineStatus, throttle, brake, gradient, windSpeed);
+    }
+}
@@ -0,0 +1,249 @@
+package car;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reactive-streams view of a ReadoutRing: any number of Flow.Subscribers
+ * (recorders, KPI engines, network bridges) can subscribe and cancel at any
+ * time, and each is sent readouts only as fast as it requests them.
+ *
+ * Each subscription reads the ring through its own Cursor, on the
+ * publisher's Executor, so the producer never waits for a subscriber and
+ * never knows how many there are; it only calls signal() after publishing.
+ * A subscriber that requests too slowly falls behind in the ring and skips
+ * the readouts that are overwritten (see ReadoutSubscription.getSkipped()),
+ * so no amount of slowness can make readouts pile up in memory.
+ *
+ * Readouts are delivered in order, one signal at a time per subscriber, as
+ * java.util.concurrent.Flow requires.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class ReadoutPublisher implements Flow.Publisher<DynamicsReadout> {
+
+    private static final Logger LOG = Logger.getLogger(ReadoutPublisher.class.getName());
+
+    private final ReadoutRing ring;
+    private final Executor executor;
+    private final ExecutorService ownExecutor; // Shut down by close(), if the publisher made its executor.
+    private final List<ReadoutSubscription> subscriptions = new CopyOnWriteArrayList<ReadoutSubscription>();
+    private volatile boolean closed = false;
+
+    /**
+     * A subscriber's subscription. Subscribers may cast their
+     * Flow.Subscription to this to see how many readouts they have missed.
+     */
+    public final class ReadoutSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super DynamicsReadout> subscriber;
+        private final ReadoutRing.Cursor cursor;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingRuns = new AtomicInteger(); // Non-zero while delivery is scheduled or running.
+        private volatile boolean cancelled = false;
+        private volatile Throwable badRequest;
+        // Only touched while delivering.
+        private boolean started = false;
+        private boolean done = false;
+
+        private ReadoutSubscription(Flow.Subscriber<? super DynamicsReadout> subscriber) {
+            this.subscriber = subscriber;
+            this.cursor = ring.newCursor();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n; // Saturates, as Flow allows.
+                } while (!demand.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        /**
+         * @return readouts this subscriber missed because it fell too far
+         * behind. Only up to date when read by the subscriber.
+         */
+        public long getSkipped() {
+            return cursor.getSkipped();
+        }
+
+        /**
+         * Arranges for run() to deliver whatever is available and wanted.
+         */
+        private void schedule() {
+            if (pendingRuns.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException rejected) { // E.g. executor shut down.
+                    if (closed) {
+                        run(); // Nothing else is delivering; complete here.
+                    } else {
+                        cancel();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Delivers readouts. Never runs on two threads at once.
+         */
+        @Override
+        public void run() {
+            int runs = 1;
+            do {
+                deliver();
+                runs = pendingRuns.addAndGet(-runs);
+            } while (runs != 0);
+        }
+
+        private void deliver() {
+            if (done) {
+                return;
+            }
+            try {
+                if (!started) {
+                    started = true;
+                    subscriber.onSubscribe(this);
+                }
+                if (badRequest != null) {
+                    finish();
+                    subscriber.onError(badRequest);
+                    return;
+                }
+                while (!cancelled && demand.get() > 0) {
+                    DynamicsReadout readout = cursor.poll();
+                    if (readout == null) {
+                        break;
+                    }
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    subscriber.onNext(readout);
+                }
+                if (cancelled) {
+                    finish();
+                } else if (closed) {
+                    finish();
+                    subscriber.onComplete();
+                }
+            } catch (RuntimeException subscriberEx) {
+                // A subscriber that throws is treated as having cancelled.
+                finish();
+                LOG.log(Level.WARNING, "Readout subscriber failed; cancelled", subscriberEx);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            cancel();
+        }
+    }
+
+    /**
+     * Delivers readouts on threads of the publisher's own, so a subscriber
+     * that takes its time in onNext() does not hold up the others.
+     *
+     * @param ring the ring readouts are published to.
+     */
+    public ReadoutPublisher(ReadoutRing ring) {
+        this(ring, Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "readout-publisher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), true);
+    }
+
+    /**
+     * @param ring the ring readouts are published to.
+     * @param executor runs deliveries; at most one task per subscriber is
+     * ever waiting.
+     */
+    public ReadoutPublisher(ReadoutRing ring, Executor executor) {
+        this(ring, executor, false);
+    }
+
+    private ReadoutPublisher(ReadoutRing ring, Executor executor, boolean ownsExecutor) {
+        this.ring = ring;
+        this.executor = executor;
+        this.ownExecutor = ownsExecutor ? (ExecutorService) executor : null;
+    }
+
+    /**
+     * Starts sending readouts published from now on to a subscriber, as it
+     * requests them.
+     *
+     * @param subscriber the subscriber.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super DynamicsReadout> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        ReadoutSubscription subscription = new ReadoutSubscription(subscriber);
+        if (closed) {
+            subscriber.onSubscribe(subscription);
+            subscriber.onComplete();
+            return;
+        }
+        subscriptions.add(subscription);
+        subscription.schedule(); // Calls onSubscribe() on the executor.
+    }
+
+    /**
+     * Tells subscribers that want more readouts that the ring has a new one.
+     * Called by the producer after each publish; never blocks.
+     */
+    public void signal() {
+        for (ReadoutSubscription subscription : subscriptions) {
+            if (subscription.demand.get() > 0) {
+                subscription.schedule();
+            }
+        }
+    }
+
+    /**
+     * Completes every subscription, after delivering whatever each has
+     * requested and is still in the ring.
+     */
+    public void close() {
+        closed = true;
+        for (ReadoutSubscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+        if (ownExecutor != null) {
+            ownExecutor.shutdown(); // Already scheduled deliveries still run.
+        }
+    }
+
+    /**
+     * @return number of subscribers that have not cancelled or completed.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+}
@@ -0,0 +1,173 @@
+package car;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Single-producer, multi-consumer ring of readouts. CarDynamics publishes
+ * each readout once; every consumer (CruiseControl, GUI, recorders, metrics)
+ * reads it through its own Cursor, at its own pace.
+ *
+ * The producer never waits. A consumer that falls more than the ring's
+ * capacity behind skips the readouts that have been overwritten, and the
+ * number skipped is counted, so a slow display or recorder can never hold up
+ * the controller. Consumers that only care about the present can jump
+ * straight to the newest readout with pollLatest().
+ *
+ * Only one thread may publish. Each Cursor must be used by one thread at a
+ * time, but different cursors can be used by different threads.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class ReadoutRing {
+
+    private final AtomicReferenceArray<DynamicsReadout> slots;
+    private final int mask;
+    // Sequence numbers. claimed is advanced before a slot is overwritten and
+    // published after, so a reader can tell if a slot changed under it.
+    private volatile long claimed = 0;
+    private volatile long published = 0;
+
+    /**
+     * Independent read position in the ring. Starts at the readout after the
+     * newest one published when it was created.
+     */
+    public final class Cursor {
+
+        private long next;
+        private long skipped = 0;
+
+        private Cursor(long next) {
+            this.next = next;
+        }
+
+        /**
+         * @return the next readout in order, or null if there is no new one.
+         */
+        public DynamicsReadout poll() {
+            while (true) {
+                long head = published;
+                if (next >= head) {
+                    return null;
+                }
+                catchUp(head);
+                DynamicsReadout readout = slots.get(index(next));
+                if (claimed - next <= slots.length()) { // Not overwritten while reading.
+                    next++;
+                    return readout;
+                }
+            }
+        }
+
+        /**
+         * Skips to the newest readout. Readouts passed over count as read,
+         * not as skipped.
+         *
+         * @return the newest readout, or null if there is no new one.
+         */
+        public DynamicsReadout pollLatest() {
+            while (true) {
+                long head = published;
+                if (next >= head) {
+                    return null;
+                }
+                DynamicsReadout readout = slots.get(index(head - 1));
+                if (claimed - (head - 1) <= slots.length()) {
+                    next = head;
+                    return readout;
+                }
+            }
+        }
+
+        /**
+         * @return readouts published but not yet read (at most the ring's
+         * capacity).
+         */
+        public int available() {
+            return (int) Math.min(published - next, slots.length());
+        }
+
+        /**
+         * @return readouts this cursor missed because it fell too far behind.
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Copies the unread readouts without reading them. Must not be called
+         * while the producer is publishing.
+         *
+         * @return unread readouts, oldest first.
+         */
+        DynamicsReadout[] toArray() {
+            catchUp(published);
+            DynamicsReadout[] unread = new DynamicsReadout[(int) (published - next)];
+            for (int i = 0; i < unread.length; i++) {
+                unread[i] = slots.get(index(next + i));
+            }
+            return unread;
+        }
+
+        private void catchUp(long head) {
+            long oldest = head - slots.length();
+            if (next < oldest) {
+                skipped += oldest - next;
+                next = oldest;
+            }
+        }
+    }
+
+    /**
+     * @param capacity number of readouts kept; rounded up to a power of two.
+     */
+    public ReadoutRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new AtomicReferenceArray<DynamicsReadout>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a readout, overwriting the oldest if the ring is full. Never
+     * blocks. Producer thread only.
+     *
+     * @param readout the readout.
+     */
+    public void publish(DynamicsReadout readout) {
+        long sequence = published;
+        claimed = sequence + 1;
+        slots.set(index(sequence), readout);
+        published = sequence + 1;
+    }
+
+    /**
+     * @return a new consumer, which will see only readouts published from now
+     * on.
+     */
+    public Cursor newCursor() {
+        return new Cursor(published);
+    }
+
+    /**
+     * @return number of readouts kept.
+     */
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * @return number of readouts published so far.
+     */
+    public long getPublishedCount() {
+        return published;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+}
@@ -0,0 +1,104 @@
+package car;
+
+import java.util.Random;
+
+/**
+ * A java.util.Random whose complete internal state can be copied, so a
+ * simulation can be snapshotted and continued with exactly the same random
+ * disturbances. Produces the same sequence as java.util.Random for the same
+ * seed.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class ReplayableRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    static final int SAVED_SIZE = 3; // Values written by save().
+
+    // No initialisers: Random's constructor calls setSeed() before this
+    // class's initialisers would run, and they would overwrite its work.
+    private long state;
+    private double nextNextGaussian;
+    private boolean haveNextNextGaussian;
+
+    /**
+     * @param seed initial seed.
+     */
+    public ReplayableRandom(long seed) {
+        super(seed);
+    }
+
+    /**
+     * @return an independent generator that will produce the same sequence
+     * as this one from this point on.
+     */
+    public synchronized ReplayableRandom copy() {
+        ReplayableRandom copy = new ReplayableRandom(0);
+        copy.state = state;
+        copy.nextNextGaussian = nextNextGaussian;
+        copy.haveNextNextGaussian = haveNextNextGaussian;
+        return copy;
+    }
+
+    /**
+     * Writes the generator's state as SAVED_SIZE longs, e.g. to keep it off
+     * the heap.
+     *
+     * @param buf destination.
+     * @param offset index of the first value.
+     */
+    synchronized void save(long[] buf, int offset) {
+        buf[offset] = state;
+        buf[offset + 1] = Double.doubleToRawLongBits(nextNextGaussian);
+        buf[offset + 2] = haveNextNextGaussian ? 1 : 0;
+    }
+
+    /**
+     * Continues from a state written by save().
+     *
+     * @param buf source.
+     * @param offset index of the first value.
+     */
+    synchronized void restore(long[] buf, int offset) {
+        state = buf[offset];
+        nextNextGaussian = Double.longBitsToDouble(buf[offset + 1]);
+        haveNextNextGaussian = buf[offset + 2] != 0;
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+        haveNextNextGaussian = false;
+    }
+
+    @Override
+    protected synchronized int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * Same polar method as java.util.Random, but with the cached second value
+     * held where copy() can see it.
+     */
+    @Override
+    public synchronized double nextGaussian() {
+        if (haveNextNextGaussian) {
+            haveNextNextGaussian = false;
+            return nextNextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextNextGaussian = v2 * multiplier;
+        haveNextNextGaussian = true;
+        return v1 * multiplier;
+    }
+}
@@ -0,0 +1,267 @@
+package car;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache of run results, keyed by a hash of everything that determines
+ * a run: the scenario (inputs, duration, disturbance seed and gains), the
+ * CarDynamics constants and the simulation tick. Identical runs can then be
+ * answered without simulating.
+ *
+ * Each entry is a small text file of summary figures, optionally with a
+ * gzipped telemetry trace next to it, under a two-character shard directory.
+ * Entries are written to a temporary file and atomically renamed into place,
+ * so any number of threads or processes can share a cache directory; readers
+ * see either a whole entry or none. Reading an entry updates its modification
+ * time, and the least recently used entries are deleted once there are more
+ * than maxEntries.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class ResultCache {
+
+    // Change whenever the simulation's behaviour changes without any of the
+    // hashed inputs changing.
+    private static final String FORMAT_VERSION = "vroom-result-3";
+    private static final String METRICS_SUFFIX = ".kpi";
+    private static final String TRACE_SUFFIX = ".trace.gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int EVICT_INTERVAL = 64; // Puts between eviction passes.
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000; // Left behind by a crashed writer.
+
+    private final Path directory;
+    private final int maxEntries;
+    private final AtomicInteger puts = new AtomicInteger();
+
+    /**
+     * @param directory cache directory; created if missing.
+     * @param maxEntries number of entries to keep.
+     * @throws IOException if the directory cannot be created.
+     */
+    public ResultCache(Path directory, int maxEntries) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param scenario a reproducible scenario.
+     * @return the scenario's cache key (hex SHA-256).
+     * @throws IllegalArgumentException if the scenario isn't reproducible.
+     */
+    public static String key(Scenario scenario) {
+        if (!scenario.isReproducible()) {
+            throw new IllegalArgumentException("Scenario " + scenario.getName() + " has no seed, so can't be cached");
+        }
+        String spec = FORMAT_VERSION + "\n" + CarDynamics.describeConstants(scenario.getVehicle()) + scenario.canonicalForm();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(spec.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException noAlgEx) {
+            throw new IllegalStateException("Every JVM has SHA-256", noAlgEx);
+        }
+    }
+
+    /**
+     * Looks up a result.
+     *
+     * @param key from key().
+     * @return the summary figures as stored by put(), or null if not cached.
+     * @throws IOException if the entry exists but cannot be read.
+     */
+    public Map<String, Double> get(String key) throws IOException {
+        Path file = entry(key, METRICS_SUFFIX);
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        try {
+            BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int equals = line.indexOf('=');
+                    metrics.put(line.substring(0, equals), Double.valueOf(line.substring(equals + 1)));
+                }
+            } finally {
+                reader.close();
+            }
+            touch(file);
+        } catch (NoSuchFileException missEx) {
+            return null;
+        }
+        return metrics;
+    }
+
+    /**
+     * Stores a result, replacing any existing one.
+     *
+     * @param key from key().
+     * @param metrics summary figures.
+     * @throws IOException if writing fails.
+     */
+    public void put(String key, Map<String, Double> metrics) throws IOException {
+        Path temp = tempFile(key);
+        try {
+            Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8);
+            try {
+                for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+                    writer.write(metric.getKey() + "=" + metric.getValue() + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(temp, entry(key, METRICS_SUFFIX), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        if (puts.incrementAndGet() % EVICT_INTERVAL == 0) {
+            evict();
+        }
+    }
+
+    /**
+     * Stores a compressed copy of a run's telemetry file. Store the figures
+     * with put() too, or the trace will be evicted early.
+     *
+     * @param key from key().
+     * @param trace telemetry file written by TelemetryRecorder.
+     * @throws IOException if reading or writing fails.
+     */
+    public void putTrace(String key, Path trace) throws IOException {
+        Path temp = tempFile(key);
+        try {
+            OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp));
+            try {
+                Files.copy(trace, out);
+            } finally {
+                out.close();
+            }
+            Files.move(temp, entry(key, TRACE_SUFFIX), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Restores a cached telemetry file.
+     *
+     * @param key from key().
+     * @param destination where to write the telemetry file; replaced.
+     * @return false if no trace is cached.
+     * @throws IOException if reading or writing fails.
+     */
+    public boolean getTrace(String key, Path destination) throws IOException {
+        try {
+            InputStream in = new GZIPInputStream(Files.newInputStream(entry(key, TRACE_SUFFIX)));
+            try {
+                Files.copy(in, destination, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                in.close();
+            }
+            return true;
+        } catch (NoSuchFileException missEx) {
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until at most maxEntries
+     * remain, along with temporary files abandoned by crashed writers. Called
+     * automatically every so often by put().
+     *
+     * @throws IOException if the directory cannot be listed.
+     */
+    public void evict() throws IOException {
+        final List<Path> entries = new ArrayList<Path>();
+        final Map<Path, FileTime> lastUsed = new LinkedHashMap<Path, FileTime>();
+        long now = System.currentTimeMillis();
+
+        DirectoryStream<Path> shards = Files.newDirectoryStream(directory);
+        try {
+            for (Path shard : shards) {
+                if (!Files.isDirectory(shard)) {
+                    continue;
+                }
+                DirectoryStream<Path> files = Files.newDirectoryStream(shard);
+                try {
+                    for (Path file : files) {
+                        String name = file.getFileName().toString();
+                        try {
+                            FileTime modified = Files.getLastModifiedTime(file);
+                            if (name.endsWith(METRICS_SUFFIX)) {
+                                entries.add(file);
+                                lastUsed.put(file, modified);
+                            } else if (name.endsWith(TEMP_SUFFIX) && now - modified.toMillis() > STALE_TEMP_MILLIS) {
+                                Files.deleteIfExists(file);
+                            }
+                        } catch (NoSuchFileException goneEx) {
+                            // Another process evicted it first.
+                        }
+                    }
+                } finally {
+                    files.close();
+                }
+            }
+        } finally {
+            shards.close();
+        }
+
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        Collections.sort(entries, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return lastUsed.get(a).compareTo(lastUsed.get(b));
+            }
+        });
+        for (Path file : entries.subList(0, entries.size() - maxEntries)) {
+            String name = file.getFileName().toString();
+            String key = name.substring(0, name.length() - METRICS_SUFFIX.length());
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.resolveSibling(key + TRACE_SUFFIX));
+        }
+    }
+
+    private Path entry(String key, String suffix) throws IOException {
+        Path shard = directory.resolve(key.substring(0, 2));
+        Files.createDirectories(shard);
+        return shard.resolve(key + suffix);
+    }
+
+    private Path tempFile(String key) throws IOException {
+        return Files.createTempFile(entry(key, "").getParent(), key, TEMP_SUFFIX);
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ioEx) {
+            // Do nothing. At worst the entry is evicted a little early.
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package car;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size buffer of the most recent double samples. Once full, each new
+ * sample overwrites the oldest one, so memory use and the cost of reading the
+ * buffer do not grow with the length of a run.
+ *
+ * Not thread-safe.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class RingBuffer {
+
+    private final double[] samples;
+    private long count = 0; // Total samples ever added.
+
+    /**
+     * @param capacity number of samples retained.
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        samples = new double[capacity];
+    }
+
+    /**
+     * Adds a sample, overwriting the oldest if the buffer is full. NaN may be
+     * used to mark a gap (no value).
+     *
+     * @param value the sample.
+     */
+    public void add(double value) {
+        samples[(int) (count % samples.length)] = value;
+        count++;
+    }
+
+    /**
+     * @return number of samples that can be retained.
+     */
+    public int capacity() {
+        return samples.length;
+    }
+
+    /**
+     * @return number of samples currently retained.
+     */
+    public int size() {
+        return (int) Math.min(count, samples.length);
+    }
+
+    /**
+     * @param index 0 is the oldest retained sample, size() - 1 the newest.
+     * @return the sample.
+     */
+    public double get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+        long oldest = count - size();
+        return samples[(int) ((oldest + index) % samples.length)];
+    }
+
+    /**
+     * Reduces the whole capacity of the buffer to a number of columns (usually
+     * one per pixel), keeping the minimum and maximum sample that falls in each
+     * column so that peaks are never lost. Column 0 holds the oldest samples.
+     * Columns without any samples, or with only NaN samples, are set to NaN.
+     *
+     * @param min receives the minimum of each column.
+     * @param max receives the maximum of each column.
+     * @param columns number of columns to fill; at most min.length and max.length.
+     */
+    public void decimate(double[] min, double[] max, int columns) {
+        Arrays.fill(min, 0, columns, Double.NaN);
+        Arrays.fill(max, 0, columns, Double.NaN);
+
+        int size = size();
+        long oldest = count - size;
+        for (int column = 0; column < columns; column++) {
+            int from = (int) ((long) column * samples.length / columns);
+            int to = (int) ((long) (column + 1) * samples.length / columns);
+            to = Math.min(Math.max(to, from + 1), size); // At least one sample per column when zoomed in.
+
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                double value = samples[(int) ((oldest + i) % samples.length)];
+                if (value < lo) {
+                    lo = value;
+                }
+                if (value > hi) {
+                    hi = value;
+                }
+            }
+            if (lo <= hi) { // False if every sample was NaN, or there were none.
+                min[column] = lo;
+                max[column] = hi;
+            }
+        }
+    }
+}
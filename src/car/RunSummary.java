@@ -0,0 +1,203 @@
+package car;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary figures for a run, accumulated one readout at a time so nothing
+ * per-tick needs to be kept. Controller figures come from a KpiEngine; see it
+ * for their definitions.
+ *
+ * The steady-state error is the mean (set speed - speed) over the last
+ * STEADY_STATE_WINDOW_S of the run, counting only ticks with cruise control
+ * active, or NaN if there were none.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class RunSummary {
+
+    private static final double STEADY_STATE_WINDOW_S = 5;
+
+    /**
+     * Names of the figures returned by toMetrics(), in order.
+     */
+    public static final List<String> METRIC_NAMES = Collections.unmodifiableList(Arrays.asList(
+            "simulated_s",
+            "distance_m",
+            "final_speed_kph",
+            "max_speed_kph",
+            "max_throttle_pct",
+            "max_brake_pct",
+            "overshoot_kph",
+            "settling_s",
+            "steady_state_error_kph",
+            "iae_kph_s",
+            "throttle_tv_pct",
+            "error_mean_kph",
+            "error_std_kph"));
+
+    private long ticks = 0;
+    private double distance = 0; // m.
+    private double finalSpeed = 0; // km/h.
+    private double maxSpeed = 0; // km/h.
+    private double maxThrottle = 0; // %.
+    private double maxBrake = 0; // %.
+    private double setSpeed = 0; // km/h.
+
+    private final KpiEngine kpis = new KpiEngine();
+    private Map<String, Double> latencyMetrics = Collections.emptyMap();
+    private final RingBuffer recentError = new RingBuffer((int) Math.round(STEADY_STATE_WINDOW_S / Main.SIM_TICK_S));
+
+    /**
+     * Notes a cruise control instruction. Call before accept() for the tick it
+     * is submitted in.
+     *
+     * @param instruction the instruction.
+     */
+    public void accept(CCInstruction instruction) {
+        kpis.accept(instruction);
+        setSpeed = instruction.getSpeedSetting();
+    }
+
+    /**
+     * Adds the readout from one tick.
+     *
+     * @param readout the readout.
+     */
+    public void accept(DynamicsReadout readout) {
+        ticks++;
+        distance = readout.getDistanceMeters();
+        finalSpeed = readout.getSpeedKPH();
+        maxSpeed = Math.max(maxSpeed, finalSpeed);
+        maxThrottle = Math.max(maxThrottle, readout.getThrottleSetting());
+        maxBrake = Math.max(maxBrake, readout.getBrakePercentage());
+
+        kpis.accept(readout);
+        recentError.add(kpis.isCruiseActive() ? setSpeed - finalSpeed : Double.NaN);
+    }
+
+    /**
+     * @return every summary figure, keyed and ordered by METRIC_NAMES. NaN
+     * means "no value".
+     */
+    public Map<String, Double> toMetrics() {
+        double[] values = {
+            getSimulatedSeconds(),
+            getDistanceMeters(),
+            getFinalSpeedKPH(),
+            getMaxSpeedKPH(),
+            getMaxThrottle(),
+            getMaxBrake(),
+            getMaxOvershootKPH(),
+            getSettlingTimeSeconds(),
+            getSteadyStateErrorKPH(),
+            kpis.getIntegralAbsError(),
+            kpis.getThrottleTotalVariation(),
+            kpis.getErrorMeanKPH(),
+            Math.sqrt(kpis.getErrorVariance())};
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        for (int i = 0; i < values.length; i++) {
+            metrics.put(METRIC_NAMES.get(i), values[i]);
+        }
+        return metrics;
+    }
+
+    /**
+     * @param latencyMetrics the run's timing figures; see
+     * Simulation.getLatencyMetrics().
+     */
+    void setLatencyMetrics(Map<String, Double> latencyMetrics) {
+        this.latencyMetrics = Collections.unmodifiableMap(latencyMetrics);
+    }
+
+    /**
+     * @return timing figures of the run (empty if not known). Unlike
+     * toMetrics(), these vary from run to run, so are never cached.
+     */
+    public Map<String, Double> getLatencyMetrics() {
+        return latencyMetrics;
+    }
+
+    /**
+     * @return the controller figures.
+     */
+    public KpiEngine getKpis() {
+        return kpis;
+    }
+
+    /**
+     * @return simulated time covered, in seconds.
+     */
+    public double getSimulatedSeconds() {
+        return ticks * Main.SIM_TICK_S;
+    }
+
+    /**
+     * @return in m.
+     */
+    public double getDistanceMeters() {
+        return distance;
+    }
+
+    /**
+     * @return in km/h.
+     */
+    public double getFinalSpeedKPH() {
+        return finalSpeed;
+    }
+
+    /**
+     * @return in km/h.
+     */
+    public double getMaxSpeedKPH() {
+        return maxSpeed;
+    }
+
+    /**
+     * @return 0-100%.
+     */
+    public double getMaxThrottle() {
+        return maxThrottle;
+    }
+
+    /**
+     * @return 0-100%.
+     */
+    public double getMaxBrake() {
+        return maxBrake;
+    }
+
+    /**
+     * @return largest overshoot of a set speed, in km/h.
+     */
+    public double getMaxOvershootKPH() {
+        return kpis.getMaxOvershootKPH();
+    }
+
+    /**
+     * @return longest settling time, in seconds, or NaN if the speed failed
+     * to settle.
+     */
+    public double getSettlingTimeSeconds() {
+        return kpis.getSettlingTimeSeconds();
+    }
+
+    /**
+     * @return mean (set speed - speed) in km/h at the end of the run, or NaN.
+     */
+    public double getSteadyStateErrorKPH() {
+        double total = 0;
+        int count = 0;
+        for (int i = 0; i < recentError.size(); i++) {
+            double error = recentError.get(i);
+            if (!Double.isNaN(error)) {
+                total += error;
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : total / count;
+    }
+}
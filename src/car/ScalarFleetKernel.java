@@ -0,0 +1,58 @@
+package car;
+
+/**
+ * FleetKernel in plain Java, one car at a time. Gives exactly the same
+ * results as CarDynamics, and is used wherever the vector kernel is
+ * unavailable and for the cars left over after its last full vector.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class ScalarFleetKernel implements FleetKernel {
+
+    @Override
+    public void integrate(Fleet fleet, int steps, double stepSeconds) {
+        integrate(fleet, 0, fleet.size(), steps, stepSeconds);
+    }
+
+    /**
+     * Advances cars from (inclusive) to to (exclusive).
+     */
+    static void integrate(Fleet fleet, int from, int to, int steps, double stepSeconds) {
+        double[] distances = fleet.distance;
+        double[] speeds = fleet.speed;
+        double[] accelerations = fleet.acceleration;
+        VehicleTable vehicles = fleet.vehicles;
+
+        for (int car = from; car < to; car++) {
+            double distance = distances[car];
+            double speed = speeds[car];
+            double acceleration = accelerations[car];
+            double wind = fleet.wind[car];
+            int profile = fleet.vehicle[car];
+            double dragArea = vehicles.dragArea[profile];
+            double mass = vehicles.mass[profile];
+
+            // Everything but drag is constant while the inputs are held.
+            double wheelTorque = fleet.current[car] * vehicles.motorConstant[profile] * vehicles.sprocketRatio[profile];
+            double propulsionForce = (wheelTorque - fleet.brakeTorque[car]) / vehicles.wheelRadius[profile];
+            propulsionForce = propulsionForce - fleet.slopeForce[car];
+            propulsionForce = propulsionForce - fleet.rollingForce[car];
+
+            for (int i = 0; i < steps; i++) {
+                double relativeAirSpeed = -speed + wind;
+                double forceDrag = (CarDynamics.FLUID_DENSITY * (relativeAirSpeed * relativeAirSpeed) * dragArea) / 2;
+                double accelerationNew = relativeAirSpeed <= 0
+                        ? ((propulsionForce - forceDrag) / mass)
+                        : ((propulsionForce + forceDrag) / mass);
+                speed += ((acceleration + accelerationNew) * stepSeconds) / 2;
+                speed = (speed < 0) ? 0 : speed;
+                distance += speed * stepSeconds;
+                acceleration = accelerationNew;
+            }
+
+            distances[car] = distance;
+            speeds[car] = speed;
+            accelerations[car] = acceleration;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package car;
+
+/**
+ * FloatFleetKernel in plain Java, one car at a time. Used wherever the vector
+ * kernel is unavailable and for the cars left over after its last full
+ * vector.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class ScalarFloatFleetKernel implements FloatFleetKernel {
+
+    static final float FLUID_DENSITY = (float) CarDynamics.FLUID_DENSITY;
+
+    @Override
+    public void integrate(FloatFleet fleet, int steps, float stepSeconds) {
+        integrate(fleet, 0, fleet.size(), steps, stepSeconds);
+    }
+
+    /**
+     * Advances cars from (inclusive) to to (exclusive).
+     */
+    static void integrate(FloatFleet fleet, int from, int to, int steps, float stepSeconds) {
+        float[] speeds = fleet.speed;
+        float[] accelerations = fleet.acceleration;
+        VehicleTable vehicles = fleet.vehicles;
+
+        for (int car = from; car < to; car++) {
+            float distance = 0; // This tick's; added to the car's in double.
+            float speed = speeds[car];
+            float acceleration = accelerations[car];
+            float wind = fleet.wind[car];
+            int profile = fleet.vehicle[car];
+            float dragArea = (float) vehicles.dragArea[profile];
+            float mass = (float) vehicles.mass[profile];
+
+            // Everything but drag is constant while the inputs are held.
+            float wheelTorque = fleet.current[car] * (float) vehicles.motorConstant[profile] * (float) vehicles.sprocketRatio[profile];
+            float propulsionForce = (wheelTorque - fleet.brakeTorque[car]) / (float) vehicles.wheelRadius[profile];
+            propulsionForce = propulsionForce - fleet.slopeForce[car];
+            propulsionForce = propulsionForce - fleet.rollingForce[car];
+
+            for (int i = 0; i < steps; i++) {
+                float relativeAirSpeed = -speed + wind;
+                float forceDrag = (FLUID_DENSITY * (relativeAirSpeed * relativeAirSpeed) * dragArea) / 2;
+                float accelerationNew = relativeAirSpeed <= 0
+                        ? ((propulsionForce - forceDrag) / mass)
+                        : ((propulsionForce + forceDrag) / mass);
+                speed += ((acceleration + accelerationNew) * stepSeconds) / 2;
+                speed = (speed < 0) ? 0 : speed;
+                distance += speed * stepSeconds;
+                acceleration = accelerationNew;
+            }
+
+            fleet.distance[car] += distance;
+            speeds[car] = speed;
+            accelerations[car] = acceleration;
+        }
+    }
+}
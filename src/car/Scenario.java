@@ -0,0 +1,338 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A scripted drive: how long to run for, how the disturbances are set up, and
+ * the driver's inputs at given times. Scenario files are plain text with one
+ * setting or event per line; '#' starts a comment.
+ *
+ * <pre>
+ *   name      steep-hill-cruise
+ *   duration  120              # seconds
+ *   seed      42               # disturbances seed; omit for a random one
+ *   wind      on               # on | off
+ *   hills     on               # on | off
+ *   gains     4 4 2            # Kp Ki Kd; omit for CruiseControl's defaults
+ *   physics   1000             # Hz; a multiple of the tick rate (50 Hz)
+ *   vehicle   van mass=2600    # see VehicleProfile; omit for the default car
+ *
+ *   at 0    ignition on        # ignition on | off
+ *   at 0.5  throttle 40        # 0-100%
+ *   at 10   brake 30           # 0-100%
+ *   at 12   cc activate 100    # km/h
+ *   at 20   cc set 80          # km/h
+ *   at 30   cc deactivate
+ * </pre>
+ *
+ * Scenarios always run at the default control rate, so that times and the
+ * figures in RunSummary mean the same in every scenario; only the physics
+ * rate can be raised.
+ *
+ * Events are submitted exactly as written. Unlike GUI, moving a pedal does not
+ * automatically deactivate cruise control.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class Scenario {
+
+    private String name = "unnamed";
+    private boolean named = false;
+    private double durationSeconds = 60;
+    private Long seed = null; // null = random.
+    private boolean windEnabled = true;
+    private boolean hillsEnabled = true;
+    private double[] gains = {CruiseControl.DEFAULT_KP, CruiseControl.DEFAULT_KI, CruiseControl.DEFAULT_KD};
+    private int physicsHz = SimClock.DEFAULT_HZ;
+    private VehicleProfile vehicle = VehicleProfile.DEFAULT;
+    private final List<Event> events = new ArrayList<Event>();
+
+    /**
+     * A driver input at a particular tick. Exactly one of the instructions is
+     * non-null.
+     */
+    public static class Event {
+
+        private final long tick;
+        private final ActuatorInstruction actuatorInstruction;
+        private final CCInstruction ccInstruction;
+
+        private Event(long tick, ActuatorInstruction actuatorInstruction, CCInstruction ccInstruction) {
+            this.tick = tick;
+            this.actuatorInstruction = actuatorInstruction;
+            this.ccInstruction = ccInstruction;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        public ActuatorInstruction getActuatorInstruction() {
+            return actuatorInstruction;
+        }
+
+        public CCInstruction getCCInstruction() {
+            return ccInstruction;
+        }
+    }
+
+    /**
+     * Reads a scenario file.
+     *
+     * @param in the scenario text.
+     * @return the scenario, with events in time order.
+     * @throws IOException if reading fails.
+     * @throws ParseException if a line is invalid. The error offset is the
+     * line number.
+     */
+    public static Scenario parse(Reader in) throws IOException, ParseException {
+        Scenario scenario = new Scenario();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            String[] words = line.trim().split("\\s+");
+            if (words[0].isEmpty()) {
+                continue;
+            }
+
+            try {
+                scenario.parseLine(words);
+            } catch (NumberFormatException numEx) {
+                throw new ParseException("Line " + lineNumber + ": bad number: " + numEx.getMessage(), lineNumber);
+            } catch (IllegalArgumentException argEx) {
+                throw new ParseException("Line " + lineNumber + ": " + argEx.getMessage(), lineNumber);
+            }
+        }
+
+        // Stable sort, so events at the same time keep their file order.
+        Collections.sort(scenario.events, new Comparator<Event>() {
+            @Override
+            public int compare(Event a, Event b) {
+                return Long.compare(a.tick, b.tick);
+            }
+        });
+        return scenario;
+    }
+
+    /**
+     * Reads a scenario file. If the file doesn't name the scenario, it is
+     * named after the file.
+     *
+     * @param file the scenario file.
+     * @return the scenario.
+     * @throws IOException if reading fails.
+     * @throws ParseException if a line is invalid.
+     */
+    public static Scenario load(Path file) throws IOException, ParseException {
+        Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        try {
+            Scenario scenario = parse(in);
+            if (!scenario.named) {
+                scenario.name = file.getFileName().toString();
+            }
+            return scenario;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void parseLine(String[] words) {
+        String keyword = words[0];
+        if (keyword.equals("name")) {
+            expectWords(words, 2);
+            name = words[1];
+            named = true;
+        } else if (keyword.equals("duration")) {
+            expectWords(words, 2);
+            durationSeconds = Double.parseDouble(words[1]);
+        } else if (keyword.equals("seed")) {
+            expectWords(words, 2);
+            seed = Long.parseLong(words[1]);
+        } else if (keyword.equals("wind")) {
+            expectWords(words, 2);
+            windEnabled = parseOnOff(words[1]);
+        } else if (keyword.equals("hills")) {
+            expectWords(words, 2);
+            hillsEnabled = parseOnOff(words[1]);
+        } else if (keyword.equals("gains")) {
+            expectWords(words, 4);
+            gains = new double[]{Double.parseDouble(words[1]), Double.parseDouble(words[2]), Double.parseDouble(words[3])};
+        } else if (keyword.equals("physics")) {
+            expectWords(words, 2);
+            physicsHz = Integer.parseInt(words[1]);
+            createClock(); // Check the rate.
+        } else if (keyword.equals("vehicle")) {
+            vehicle = VehicleProfile.parse(words);
+        } else if (keyword.equals("at")) {
+            if (words.length < 3) {
+                throw new IllegalArgumentException("expected 'at <seconds> <event>'");
+            }
+            long tick = Math.round(Double.parseDouble(words[1]) / Main.SIM_TICK_S);
+            if (tick < 0) {
+                throw new IllegalArgumentException("event time is negative");
+            }
+            events.add(parseEvent(tick, words));
+        } else {
+            throw new IllegalArgumentException("unknown keyword '" + keyword + "'");
+        }
+    }
+
+    private static Event parseEvent(long tick, String[] words) {
+        String event = words[2];
+        if (event.equals("ignition")) {
+            expectWords(words, 4);
+            Instructions instruction = parseOnOff(words[3]) ? Instructions.TURN_ON_IGNITION : Instructions.TURN_OFF_IGNITION;
+            return new Event(tick, new ActuatorInstruction(instruction), null);
+        } else if (event.equals("throttle")) {
+            expectWords(words, 4);
+            return new Event(tick, new ActuatorInstruction(Instructions.MOTOR, Double.parseDouble(words[3])), null);
+        } else if (event.equals("brake")) {
+            expectWords(words, 4);
+            return new Event(tick, new ActuatorInstruction(Instructions.BRAKE, Double.parseDouble(words[3])), null);
+        } else if (event.equals("cc")) {
+            if (words.length < 4) {
+                throw new IllegalArgumentException("expected 'cc activate|set <km/h>' or 'cc deactivate'");
+            }
+            String action = words[3];
+            if (action.equals("deactivate")) {
+                expectWords(words, 4);
+                return new Event(tick, null, new CCInstruction(CCInstructions.DEACTIVATE, 0));
+            } else if (action.equals("activate")) {
+                expectWords(words, 5);
+                return new Event(tick, null, new CCInstruction(CCInstructions.ACTIVATE, Double.parseDouble(words[4])));
+            } else if (action.equals("set")) {
+                expectWords(words, 5);
+                return new Event(tick, null, new CCInstruction(CCInstructions.SET_SPEED, Double.parseDouble(words[4])));
+            }
+            throw new IllegalArgumentException("unknown cruise control action '" + action + "'");
+        }
+        throw new IllegalArgumentException("unknown event '" + event + "'");
+    }
+
+    private static void expectWords(String[] words, int count) {
+        if (words.length != count) {
+            throw new IllegalArgumentException("'" + words[0] + "' expects " + (count - 1) + " arguments");
+        }
+    }
+
+    private static boolean parseOnOff(String word) {
+        if (word.equals("on")) {
+            return true;
+        } else if (word.equals("off")) {
+            return false;
+        }
+        throw new IllegalArgumentException("expected 'on' or 'off', got '" + word + "'");
+    }
+
+    /**
+     * @return a Disturbances generator set up as this scenario describes.
+     */
+    public Disturbances createDisturbances() {
+        long actualSeed = seed != null ? seed : System.nanoTime();
+        return new Disturbances(actualSeed, windEnabled, hillsEnabled);
+    }
+
+    /**
+     * @return the clock to run this scenario with.
+     */
+    public SimClock createClock() {
+        return new SimClock(physicsHz, SimClock.DEFAULT_HZ, SimClock.DEFAULT_HZ);
+    }
+
+    /**
+     * Sets up a cruise controller with this scenario's gains.
+     *
+     * @param cruise the controller.
+     */
+    public void applyGains(CruiseControl cruise) {
+        cruise.setGains(gains[0], gains[1], gains[2]);
+    }
+
+    /**
+     * Makes a car the type of car this scenario drives.
+     *
+     * @param dynamics the car.
+     */
+    public void applyVehicle(CarDynamics dynamics) {
+        dynamics.setVehicle(vehicle);
+    }
+
+    /**
+     * @return the type of car this scenario drives.
+     */
+    public VehicleProfile getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * @return true if the scenario gives the same result every time it is
+     * run, i.e. its disturbances are seeded.
+     */
+    public boolean isReproducible() {
+        return seed != null;
+    }
+
+    /**
+     * Describes everything in the scenario that affects the result in a fixed
+     * form, so comments, layout and the name make no difference. The vehicle
+     * is left to CarDynamics.describeConstants().
+     *
+     * @return the description.
+     */
+    public String canonicalForm() {
+        StringBuilder text = new StringBuilder();
+        text.append("duration ").append(getDurationTicks()).append('\n');
+        text.append("seed ").append(seed).append('\n');
+        text.append("wind ").append(windEnabled).append('\n');
+        text.append("hills ").append(hillsEnabled).append('\n');
+        text.append("physics ").append(physicsHz).append('\n');
+        text.append("gains ").append(gains[0]).append(' ').append(gains[1]).append(' ').append(gains[2]).append('\n');
+        for (Event event : events) {
+            text.append("at ").append(event.tick).append(' ');
+            if (event.actuatorInstruction != null) {
+                text.append(event.actuatorInstruction.getInstruction()).append(' ').append(event.actuatorInstruction.getPercentage());
+            } else {
+                text.append(event.ccInstruction.getInstruction()).append(' ').append(event.ccInstruction.getSpeedSetting());
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of ticks the scenario runs for.
+     */
+    public long getDurationTicks() {
+        return Math.round(durationSeconds / Main.SIM_TICK_S);
+    }
+
+    /**
+     * @return events in time order.
+     */
+    public List<Event> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+}
@@ -0,0 +1,75 @@
+package car;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs a Scenario on a Simulation as fast as possible.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class ScenarioRunner {
+
+    private ScenarioRunner() {
+    }
+
+    /**
+     * Runs a scenario from start to finish.
+     *
+     * @param scenario the scenario.
+     * @return summary of the run.
+     */
+    public static RunSummary run(Scenario scenario) {
+        try {
+            return run(scenario, null);
+        } catch (IOException ioEx) {
+            throw new IllegalStateException("Nothing is recorded, so there is no I/O", ioEx);
+        }
+    }
+
+    /**
+     * Runs a scenario from start to finish, recording every readout and
+     * driver event.
+     *
+     * @param scenario the scenario.
+     * @param recorder where to record the run, or null. Not closed.
+     * @return summary of the run.
+     * @throws IOException if recording fails.
+     */
+    public static RunSummary run(Scenario scenario, TelemetryRecorder recorder) throws IOException {
+        Simulation simulation = new Simulation(scenario.createDisturbances(), scenario.createClock());
+        scenario.applyGains(simulation.getCruiseControl());
+        scenario.applyVehicle(simulation.getDynamics());
+        RunSummary summary = new RunSummary();
+        List<Scenario.Event> events = scenario.getEvents();
+        int nextEvent = 0;
+        long duration = scenario.getDurationTicks();
+
+        for (long tick = 0; tick < duration; tick++) {
+            // Submit this tick's driver inputs before the tick runs.
+            while (nextEvent < events.size() && events.get(nextEvent).getTick() <= tick) {
+                Scenario.Event event = events.get(nextEvent++);
+                if (event.getActuatorInstruction() != null) {
+                    simulation.submit(event.getActuatorInstruction());
+                    if (recorder != null) {
+                        recorder.record(tick, event.getActuatorInstruction());
+                    }
+                } else {
+                    simulation.submit(event.getCCInstruction());
+                    summary.accept(event.getCCInstruction());
+                    if (recorder != null) {
+                        recorder.record(tick, event.getCCInstruction());
+                    }
+                }
+            }
+
+            DynamicsReadout readout = simulation.step();
+            summary.accept(readout);
+            if (recorder != null) {
+                recorder.record(tick, readout);
+            }
+        }
+        summary.setLatencyMetrics(simulation.getLatencyMetrics());
+        return summary;
+    }
+}
@@ -0,0 +1,118 @@
+package car;
+
+/**
+ * The rates the parts of the car run at, all derived from one master clock:
+ * the physics rate. CarDynamics integrates at the physics rate, CruiseControl
+ * runs (and readouts and instructions are exchanged) at the control rate, and
+ * GUI redraws at the display rate. Both slower rates must divide the physics
+ * rate exactly, so every control tick is the same whole number of physics
+ * steps and nothing drifts.
+ *
+ * A tick, everywhere else in the program, is one control period. Disturbances
+ * also change once per tick. The default clock runs everything at the
+ * original SIM_TICK_MS rate, reproducing single-rate runs exactly.
+ *
+ * Main reads the rates from the system properties vroom.physics.hz,
+ * vroom.control.hz and vroom.display.hz.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public final class SimClock {
+
+    public static final int DEFAULT_HZ = 1000 / Main.SIM_TICK_MS;
+    public static final SimClock DEFAULT = new SimClock(DEFAULT_HZ, DEFAULT_HZ, DEFAULT_HZ);
+
+    private final int physicsHz;
+    private final int controlHz;
+    private final int displayHz;
+
+    /**
+     * @param physicsHz physics integration rate; the master clock.
+     * @param controlHz cruise control rate; must divide physicsHz.
+     * @param displayHz GUI update rate; must divide physicsHz.
+     * @throws IllegalArgumentException if the rates are not exact ratios of
+     * physicsHz.
+     */
+    public SimClock(int physicsHz, int controlHz, int displayHz) {
+        if (physicsHz <= 0 || controlHz <= 0 || displayHz <= 0) {
+            throw new IllegalArgumentException("Rates must be positive");
+        }
+        if (physicsHz % controlHz != 0) {
+            throw new IllegalArgumentException("Control rate " + controlHz + " Hz does not divide physics rate " + physicsHz + " Hz");
+        }
+        if (physicsHz % displayHz != 0) {
+            throw new IllegalArgumentException("Display rate " + displayHz + " Hz does not divide physics rate " + physicsHz + " Hz");
+        }
+        this.physicsHz = physicsHz;
+        this.controlHz = controlHz;
+        this.displayHz = displayHz;
+    }
+
+    /**
+     * Reads the rates from system properties. Any that are missing default to
+     * the default clock's, except the display rate, which defaults to the
+     * control rate (there is nothing new to show any faster).
+     *
+     * @return the clock.
+     * @throws IllegalArgumentException if the rates are not exact ratios.
+     */
+    public static SimClock fromSystemProperties() {
+        int controlHz = Integer.getInteger("vroom.control.hz", DEFAULT_HZ);
+        int physicsHz = Integer.getInteger("vroom.physics.hz", Math.max(DEFAULT_HZ, controlHz));
+        int displayHz = Integer.getInteger("vroom.display.hz", controlHz);
+        return new SimClock(physicsHz, controlHz, displayHz);
+    }
+
+    public int getPhysicsHz() {
+        return physicsHz;
+    }
+
+    public int getControlHz() {
+        return controlHz;
+    }
+
+    public int getDisplayHz() {
+        return displayHz;
+    }
+
+    /**
+     * @return physics steps per control tick.
+     */
+    public int getPhysicsStepsPerTick() {
+        return physicsHz / controlHz;
+    }
+
+    /**
+     * @return length of one physics step, in seconds.
+     */
+    public double getPhysicsStepSeconds() {
+        return 1.0 / physicsHz;
+    }
+
+    /**
+     * @return length of one control tick, in seconds.
+     */
+    public double getTickSeconds() {
+        return 1.0 / controlHz;
+    }
+
+    /**
+     * @return length of one control tick, in nanoseconds (rounded).
+     */
+    public long getTickNanos() {
+        return Math.round(1e9 / controlHz);
+    }
+
+    /**
+     * @return time between display updates, in milliseconds (rounded; at
+     * least 1).
+     */
+    public int getDisplayPeriodMillis() {
+        return Math.max(1, (int) Math.round(1000.0 / displayHz));
+    }
+
+    @Override
+    public String toString() {
+        return "physics " + physicsHz + " Hz, control " + controlHz + " Hz, display " + displayHz + " Hz";
+    }
+}
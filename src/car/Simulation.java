@@ -0,0 +1,205 @@
+package car;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A complete car (CarDynamics and CruiseControl with their message queues)
+ * stepped explicitly by the caller instead of by timers. One call to step()
+ * is one control tick of the simulation's SimClock (SIM_TICK_MS by default),
+ * so a run goes as fast as the CPU allows and is reproducible when the
+ * disturbances are seeded.
+ *
+ * The driver's side of the queues (what GUI would normally use) is exposed
+ * through submit() and step()'s return value. Does not use Swing.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class Simulation {
+
+    // Both consumers read one readout per tick, so a small ring is plenty.
+    private static final int READOUT_RING_CAPACITY = 16;
+
+    // Same wiring as Main.
+    private final BlockingQueue<ActuatorInstruction> cruiseToDyn = new LinkedBlockingQueue<ActuatorInstruction>();
+    private final ReadoutRing readouts = new ReadoutRing(READOUT_RING_CAPACITY);
+    private final ReadoutRing.Cursor dynToCruise = readouts.newCursor();
+    private final BlockingQueue<ActuatorInstruction> driverToDynPriority = new LinkedBlockingQueue<ActuatorInstruction>();
+    private final BlockingQueue<ActuatorInstruction> driverToCruiseActInst = new LinkedBlockingQueue<ActuatorInstruction>();
+    private final BlockingQueue<CCInstruction> driverToCruiseCCInst = new LinkedBlockingQueue<CCInstruction>();
+    private final ReadoutRing.Cursor dynToDriver = readouts.newCursor();
+
+    private final CarDynamics dynamics;
+    private final CruiseControl cruise;
+    private final SimClock clock;
+    private long tick = 0;
+
+    /**
+     * @param disturbances disturbances generator for the car.
+     */
+    public Simulation(Disturbances disturbances) {
+        this(disturbances, SimClock.DEFAULT);
+    }
+
+    /**
+     * @param disturbances disturbances generator for the car.
+     * @param clock physics and control rates.
+     */
+    public Simulation(Disturbances disturbances, SimClock clock) {
+        this.clock = clock;
+        dynamics = new CarDynamics(cruiseToDyn, readouts, disturbances);
+        dynamics.setClock(clock);
+        dynamics.setPriorityLane(driverToDynPriority);
+        cruise = new CruiseControl(dynToCruise, driverToCruiseCCInst, driverToCruiseActInst, cruiseToDyn);
+        cruise.setClock(clock);
+    }
+
+    /**
+     * Continues a simulation from a snapshot. See SimulationSnapshot.fork().
+     *
+     * @param snapshot the snapshot.
+     */
+    Simulation(SimulationSnapshot snapshot) {
+        this(new Disturbances(0, false, false), snapshot.clock); // Disturbances replaced by the snapshot's.
+        tick = snapshot.tick;
+        dynamics.setState(snapshot.dynamics);
+        cruise.setState(snapshot.cruise);
+        cruiseToDyn.addAll(Arrays.asList(snapshot.cruiseToDyn));
+        driverToDynPriority.addAll(Arrays.asList(snapshot.driverToDynPriority));
+        driverToCruiseActInst.addAll(Arrays.asList(snapshot.driverToCruiseActInst));
+        driverToCruiseCCInst.addAll(Arrays.asList(snapshot.driverToCruiseCCInst));
+
+        // Each cursor's unread readouts are the tail of the same sequence, so
+        // republish the longer backlog and move the other cursor past the
+        // readouts it had already read.
+        DynamicsReadout[] backlog = snapshot.dynToCruise.length >= snapshot.dynToDriver.length ? snapshot.dynToCruise : snapshot.dynToDriver;
+        for (DynamicsReadout readout : backlog) {
+            readouts.publish(readout);
+        }
+        for (int i = snapshot.dynToCruise.length; i < backlog.length; i++) {
+            dynToCruise.poll();
+        }
+        for (int i = snapshot.dynToDriver.length; i < backlog.length; i++) {
+            dynToDriver.poll();
+        }
+    }
+
+    /**
+     * Captures the complete state of the simulation. Must not be called while
+     * step() is running.
+     *
+     * @return the snapshot.
+     */
+    public SimulationSnapshot snapshot() {
+        return new SimulationSnapshot(
+                tick,
+                clock,
+                dynamics.getState(),
+                cruise.getState(),
+                cruiseToDyn.toArray(new ActuatorInstruction[0]),
+                dynToCruise.toArray(),
+                driverToDynPriority.toArray(new ActuatorInstruction[0]),
+                driverToCruiseActInst.toArray(new ActuatorInstruction[0]),
+                driverToCruiseCCInst.toArray(new CCInstruction[0]),
+                dynToDriver.toArray());
+    }
+
+    /**
+     * Queues a driver instruction, as if from the GUI. Safety-critical ones go
+     * straight to the car and are applied at the start of the next tick.
+     *
+     * A copy is queued, numbered and timestamped now: instructions may be
+     * created long before they are given (e.g. when a scenario is parsed),
+     * and the car drops any numbered before one it has already applied.
+     *
+     * @param instruction the instruction.
+     */
+    public void submit(ActuatorInstruction instruction) {
+        ActuatorInstruction given = new ActuatorInstruction(instruction.getInstruction(), instruction.getPercentage());
+        if (given.isSafetyCritical()) {
+            driverToDynPriority.add(given);
+        } else {
+            driverToCruiseActInst.add(given);
+        }
+    }
+
+    /**
+     * Queues a cruise control instruction, as if from the GUI. As above, a
+     * copy is queued, numbered and timestamped now.
+     *
+     * @param instruction the instruction.
+     */
+    public void submit(CCInstruction instruction) {
+        driverToCruiseCCInst.add(new CCInstruction(instruction.getInstruction(), instruction.getSpeedSetting()));
+    }
+
+    /**
+     * Runs one tick. CarDynamics runs before CruiseControl, as they do when
+     * sharing Main's timer.
+     *
+     * @return the readout CarDynamics produced during this tick.
+     */
+    public DynamicsReadout step() {
+        dynamics.run();
+        cruise.run();
+        tick++;
+        return dynToDriver.poll();
+    }
+
+    /**
+     * @return number of ticks run so far.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return simulated time so far, in seconds.
+     */
+    public double getTimeSeconds() {
+        return tick * clock.getTickSeconds();
+    }
+
+    /**
+     * @return the simulation's rates.
+     */
+    public SimClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Timing figures, which depend on the machine and are not reproducible:
+     * readout age when used by cruise control, time from sensing (or driver
+     * input) to actuation, and how often cruise control was degraded by
+     * stale readouts.
+     *
+     * @return metrics in a fixed order; latencies in microseconds.
+     */
+    public Map<String, Double> getLatencyMetrics() {
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        StalenessWatchdog watchdog = cruise.getWatchdog();
+        watchdog.getReadoutAge().addMetrics("readout_age", metrics);
+        dynamics.getActuationLatency().addMetrics("actuation_latency", metrics);
+        dynamics.getBrakeLatency().addMetrics("brake_latency", metrics);
+        metrics.put("stale_ticks", (double) watchdog.getStaleTicks());
+        metrics.put("degraded_entries", (double) watchdog.getDegradedEntries());
+        return metrics;
+    }
+
+    /**
+     * @return the simulated car.
+     */
+    public CarDynamics getDynamics() {
+        return dynamics;
+    }
+
+    /**
+     * @return the car's cruise controller.
+     */
+    public CruiseControl getCruiseControl() {
+        return cruise;
+    }
+}
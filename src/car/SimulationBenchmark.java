@@ -0,0 +1,216 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * End-to-end throughput benchmark of the closed loop: real CarDynamics and
+ * CruiseControl objects, stepped through their queues by Simulation, so any
+ * slowdown in their hot paths shows up here. The "embedded" workloads step
+ * CarDynamics alone through its queue-free API, for comparison.
+ *
+ * Each workload is warmed up, then timed, and reports:
+ * <ul>
+ * <li>sim_x: simulated seconds per wall second for the whole fleet (how
+ * many times faster than real time it runs).</li>
+ * <li>car_ticks_per_s: single-car ticks per wall second.</li>
+ * <li>bytes_per_tick: heap allocated per single-car tick (needs the HotSpot
+ * ThreadMXBean extension; -1 if unavailable).</li>
+ * <li>gc_count and gc_ms: collections and total collection time while
+ * timing.</li>
+ * </ul>
+ *
+ * Usage: java -cp ... car.SimulationBenchmark [workload ...]
+ *
+ * With no arguments every workload is run. Disturbances are seeded, so runs
+ * are repeatable.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class SimulationBenchmark {
+
+    private static final long CAR_TICKS = 2000000; // Per timed run; divided between the fleet.
+    private static final int MIN_TICKS = 20;
+    private static final double WARMUP_FRACTION = 0.5;
+    private static final double HEAVY_GUST_WIND_SCALE = 3;
+    private static final double CRUISE_SPEED = 100; // km/h.
+    private static final double MANUAL_THROTTLE = 60; // %.
+
+    /**
+     * A canonical workload.
+     */
+    private static class Workload {
+
+        private final String name;
+        private final int cars;
+        private final boolean cruise;
+        private final double windScale;
+        private final boolean embedded; // CarDynamics only, no queues or cruise control.
+
+        private Workload(String name, int cars, boolean cruise, double windScale) {
+            this(name, cars, cruise, windScale, false);
+        }
+
+        private Workload(String name, int cars, boolean cruise, double windScale, boolean embedded) {
+            this.name = name;
+            this.cars = cars;
+            this.cruise = cruise;
+            this.windScale = windScale;
+            this.embedded = embedded;
+        }
+    }
+
+    private static final Workload[] WORKLOADS = {
+        new Workload("1-car-manual", 1, false, 1),
+        new Workload("1-car-cruise", 1, true, 1),
+        new Workload("1-car-cruise-gusts", 1, true, HEAVY_GUST_WIND_SCALE),
+        new Workload("1k-cars-manual", 1000, false, 1),
+        new Workload("1k-cars-cruise", 1000, true, 1),
+        new Workload("1k-cars-cruise-gusts", 1000, true, HEAVY_GUST_WIND_SCALE),
+        new Workload("100k-cars-manual", 100000, false, 1),
+        new Workload("100k-cars-cruise", 100000, true, 1),
+        new Workload("1-car-embedded", 1, false, 1, true),
+        new Workload("100k-cars-embedded", 100000, false, 1, true),
+    };
+
+    /**
+     * @param args names of workloads to run; all if none.
+     */
+    public static void main(String[] args) {
+        List<Workload> selected = new ArrayList<Workload>();
+        for (Workload workload : WORKLOADS) {
+            if (args.length == 0 || Arrays.asList(args).contains(workload.name)) {
+                selected.add(workload);
+            }
+        }
+        if (selected.isEmpty()) {
+            System.err.println("Unknown workload. Choose from:");
+            for (Workload workload : WORKLOADS) {
+                System.err.println("  " + workload.name);
+            }
+            System.exit(1);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-22s %8s %8s %12s %16s %14s %9s %8s",
+                "workload", "cars", "ticks", "sim_x", "car_ticks_per_s", "bytes_per_tick", "gc_count", "gc_ms"));
+        for (Workload workload : selected) {
+            run(workload);
+        }
+    }
+
+    private static void run(Workload workload) {
+        Simulation[] fleet = workload.embedded ? null : createFleet(workload);
+        CarDynamics[] plants = workload.embedded ? createPlants(workload) : null;
+        long ticks = Math.max(MIN_TICKS, CAR_TICKS / workload.cars);
+
+        step(fleet, plants, (long) (ticks * WARMUP_FRACTION));
+
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTimeMillis();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        step(fleet, plants, ticks);
+
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        long allocatedAfter = allocatedBytes();
+        long carTicks = ticks * workload.cars;
+        double bytesPerTick = allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / (double) carTicks;
+
+        System.out.println(String.format(Locale.ROOT, "%-22s %8d %8d %12.1f %16.0f %14.1f %9d %8d",
+                workload.name,
+                workload.cars,
+                ticks,
+                ticks * Main.SIM_TICK_S / wallSeconds,
+                carTicks / wallSeconds,
+                bytesPerTick,
+                gcCount() - gcCountBefore,
+                gcTimeMillis() - gcTimeBefore));
+    }
+
+    /**
+     * Creates cars with the engine on and either cruise control active or a
+     * fixed throttle.
+     */
+    private static Simulation[] createFleet(Workload workload) {
+        Simulation[] fleet = new Simulation[workload.cars];
+        for (int i = 0; i < fleet.length; i++) {
+            Simulation car = new Simulation(new Disturbances(i, true, true, workload.windScale));
+            car.submit(new ActuatorInstruction(Instructions.TURN_ON_IGNITION));
+            if (workload.cruise) {
+                car.submit(new CCInstruction(CCInstructions.ACTIVATE, CRUISE_SPEED));
+            } else {
+                car.submit(new ActuatorInstruction(Instructions.MOTOR, MANUAL_THROTTLE));
+            }
+            fleet[i] = car;
+        }
+        return fleet;
+    }
+
+    /**
+     * Creates queue-free cars with the engine on and a fixed throttle.
+     */
+    private static CarDynamics[] createPlants(Workload workload) {
+        CarDynamics[] plants = new CarDynamics[workload.cars];
+        for (int i = 0; i < plants.length; i++) {
+            CarDynamics car = new CarDynamics(new Disturbances(i, true, true, workload.windScale));
+            car.apply(Instructions.TURN_ON_IGNITION, 0);
+            car.apply(Instructions.MOTOR, MANUAL_THROTTLE);
+            plants[i] = car;
+        }
+        return plants;
+    }
+
+    /**
+     * Steps whichever of fleet and plants is not null.
+     */
+    private static void step(Simulation[] fleet, CarDynamics[] plants, long ticks) {
+        if (plants != null) {
+            // One car at a time, the way an optimiser would use it.
+            for (CarDynamics car : plants) {
+                for (long done = 0; done < ticks; done += Integer.MAX_VALUE) {
+                    car.step((int) Math.min(Integer.MAX_VALUE, ticks - done));
+                }
+            }
+            return;
+        }
+        for (long tick = 0; tick < ticks; tick++) {
+            for (Simulation car : fleet) {
+                car.step();
+            }
+        }
+    }
+
+    /**
+     * @return bytes allocated by this thread so far, or -1 if unknown.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTimeMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+}
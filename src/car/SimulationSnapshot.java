@@ -0,0 +1,65 @@
+package car;
+
+/**
+ * The complete state of a Simulation at the end of a tick: the car, its
+ * disturbances (including the random number generator), the cruise
+ * controller and every message still in flight between them.
+ *
+ * A snapshot is immutable and shares only immutable messages, so any number
+ * of independent simulations can be forked from it, on any threads, e.g. to
+ * try different gains or driver inputs from the same moment without re-running
+ * everything before it.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public final class SimulationSnapshot {
+
+    final long tick;
+    final SimClock clock;
+    final CarDynamics.State dynamics;
+    final CruiseControl.State cruise;
+    // Queue contents, head first.
+    final ActuatorInstruction[] cruiseToDyn;
+    final DynamicsReadout[] dynToCruise;
+    final ActuatorInstruction[] driverToDynPriority;
+    final ActuatorInstruction[] driverToCruiseActInst;
+    final CCInstruction[] driverToCruiseCCInst;
+    final DynamicsReadout[] dynToDriver;
+
+    SimulationSnapshot(
+            long tick,
+            SimClock clock,
+            CarDynamics.State dynamics,
+            CruiseControl.State cruise,
+            ActuatorInstruction[] cruiseToDyn,
+            DynamicsReadout[] dynToCruise,
+            ActuatorInstruction[] driverToDynPriority,
+            ActuatorInstruction[] driverToCruiseActInst,
+            CCInstruction[] driverToCruiseCCInst,
+            DynamicsReadout[] dynToDriver) {
+        this.tick = tick;
+        this.clock = clock;
+        this.dynamics = dynamics;
+        this.cruise = cruise;
+        this.cruiseToDyn = cruiseToDyn;
+        this.dynToCruise = dynToCruise;
+        this.driverToDynPriority = driverToDynPriority;
+        this.driverToCruiseActInst = driverToCruiseActInst;
+        this.driverToCruiseCCInst = driverToCruiseCCInst;
+        this.dynToDriver = dynToDriver;
+    }
+
+    /**
+     * @return a new simulation continuing from this snapshot.
+     */
+    public Simulation fork() {
+        return new Simulation(this);
+    }
+
+    /**
+     * @return tick at which the snapshot was taken.
+     */
+    public long getTick() {
+        return tick;
+    }
+}
@@ -0,0 +1,154 @@
+package car;
+
+/**
+ * Watches the readouts CruiseControl is controlling with and decides when they
+ * are too old to act on. Readouts are stale when no new one has arrived for
+ * more than maxMissedTicks ticks, or when the one in hand is older than
+ * maxAgeNanos (by its timestamp). While they are stale, cruise control is
+ * degraded: it stops running the PID and either holds the throttle where it
+ * is or releases it to zero. Driver instructions are always passed on.
+ *
+ * Also measures the age of every readout the controller uses, in a
+ * LatencyHistogram. Only the controller's thread may call check().
+ *
+ * When the car and the controller run one after the other in the same
+ * TickLoop, as in Main, the readout is always the one just produced and is
+ * never old by its timestamp. Given the loop (setTickLoop()), the watchdog
+ * also counts a readout as at least as old as the tick was late starting, so
+ * a stalled loop is caught.
+ *
+ * The tick-count check is deterministic; the age check depends on wall-clock
+ * time, so headless runs that must be reproducible should leave it disabled.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class StalenessWatchdog {
+
+    /**
+     * What cruise control does with the throttle while readouts are stale.
+     */
+    public enum DegradedMode {
+
+        HOLD, // Send nothing; the car keeps the last throttle setting.
+        RELEASE; // Set the throttle to zero.
+    }
+
+    public static final int DEFAULT_MAX_MISSED_TICKS = 2;
+
+    private final int maxMissedTicks;
+    private final long maxAgeNanos;
+    private final DegradedMode mode;
+    private final LatencyHistogram readoutAge = new LatencyHistogram();
+    private TickLoop loop; // Running the controller, if any.
+    private int missedTicks = 0;
+    private boolean stale = false;
+    private long staleTicks = 0;
+    private long degradedEntries = 0;
+
+    /**
+     * Deterministic watchdog: checks for missed readouts only, and holds the
+     * throttle.
+     */
+    public StalenessWatchdog() {
+        this(DEFAULT_MAX_MISSED_TICKS, 0, DegradedMode.HOLD);
+    }
+
+    /**
+     * @param maxMissedTicks ticks in a row without a new readout that are
+     * tolerated.
+     * @param maxAgeNanos oldest readout that can be acted on; 0 for no limit.
+     * @param mode what to do when readouts are stale.
+     */
+    public StalenessWatchdog(int maxMissedTicks, long maxAgeNanos, DegradedMode mode) {
+        this.maxMissedTicks = maxMissedTicks;
+        this.maxAgeNanos = maxAgeNanos;
+        this.mode = mode;
+    }
+
+    /**
+     * Copies a watchdog's settings (including its loop), state and stale tick
+     * and episode counts (so a restored controller carries on counting), but
+     * not its readout age histogram, which starts empty.
+     */
+    StalenessWatchdog(StalenessWatchdog watchdog) {
+        this(watchdog.maxMissedTicks, watchdog.maxAgeNanos, watchdog.mode);
+        loop = watchdog.loop;
+        missedTicks = watchdog.missedTicks;
+        stale = watchdog.stale;
+        staleTicks = watchdog.staleTicks;
+        degradedEntries = watchdog.degradedEntries;
+    }
+
+    /**
+     * Takes the lateness of the loop running the controller into account in
+     * the age check, as above.
+     *
+     * @param loop the loop, or null for none.
+     */
+    public void setTickLoop(TickLoop loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * Called once per controller tick.
+     *
+     * @param fresh the readout that arrived this tick, or null if none did.
+     * @param current the readout the controller would use.
+     * @return true if current is too old to act on.
+     */
+    boolean check(DynamicsReadout fresh, DynamicsReadout current) {
+        missedTicks = fresh == null ? missedTicks + 1 : 0;
+        boolean wasStale = stale;
+        stale = missedTicks > maxMissedTicks;
+
+        if (current.getTimestampNanos() != 0) {
+            long age = System.nanoTime() - current.getTimestampNanos();
+            if (loop != null) {
+                // The car stalled with the loop, so its readout is as late.
+                age = Math.max(age, loop.getLateness());
+            }
+            readoutAge.record(age);
+            stale |= maxAgeNanos > 0 && age > maxAgeNanos;
+        }
+
+        if (stale) {
+            staleTicks++;
+            if (!wasStale) {
+                degradedEntries++;
+            }
+        }
+        return stale;
+    }
+
+    public DegradedMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return true if the last check found the readouts stale.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @return ticks spent degraded.
+     */
+    public long getStaleTicks() {
+        return staleTicks;
+    }
+
+    /**
+     * @return number of times cruise control has become degraded.
+     */
+    public long getDegradedEntries() {
+        return degradedEntries;
+    }
+
+    /**
+     * @return age of each readout when the controller used it.
+     */
+    public LatencyHistogram getReadoutAge() {
+        return readoutAge;
+    }
+}
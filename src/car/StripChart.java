@@ -0,0 +1,146 @@
+package car;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JComponent;
+
+/**
+ * A scrolling chart of one or more series over a fixed window of recent
+ * samples. Each series is held in a RingBuffer and reduced to one min/max pair
+ * per pixel column before drawing, so painting costs the same however long the
+ * simulation has been running.
+ *
+ * Must only be used from the Swing event dispatch thread.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class StripChart extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+    private static final Color GRID_COLOUR = new Color(0xDDDDDD);
+
+    private final String title;
+    private final double minValue;
+    private final double maxValue;
+    private final int capacity;
+    private final List<Series> series = new ArrayList<Series>();
+
+    // Decimation scratch space, reused between paints.
+    private double[] columnMin = new double[0];
+    private double[] columnMax = new double[0];
+
+    /**
+     * A line on the chart.
+     */
+    private static class Series {
+
+        private final String name;
+        private final Color colour;
+        private final RingBuffer samples;
+
+        private Series(String name, Color colour, int capacity) {
+            this.name = name;
+            this.colour = colour;
+            this.samples = new RingBuffer(capacity);
+        }
+    }
+
+    /**
+     * @param title shown in the top left corner.
+     * @param minValue value at the bottom of the chart.
+     * @param maxValue value at the top of the chart.
+     * @param capacity number of samples shown across the width of the chart.
+     * @param width preferred width in pixels.
+     * @param height preferred height in pixels.
+     */
+    public StripChart(String title, double minValue, double maxValue, int capacity, int width, int height) {
+        this.title = title;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.capacity = capacity;
+        setPreferredSize(new Dimension(width, height));
+        setOpaque(true);
+        setBackground(Color.WHITE);
+    }
+
+    /**
+     * Adds a series to the chart.
+     *
+     * @param name shown in the chart's legend.
+     * @param colour line colour.
+     * @return index to pass to add().
+     */
+    public int addSeries(String name, Color colour) {
+        series.add(new Series(name, colour, capacity));
+        return series.size() - 1;
+    }
+
+    /**
+     * Appends a sample to a series. Does not repaint.
+     *
+     * @param seriesIndex as returned by addSeries().
+     * @param value the sample, or NaN for a gap.
+     */
+    public void add(int seriesIndex, double value) {
+        series.get(seriesIndex).samples.add(value);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+
+        g.setColor(getBackground());
+        g.fillRect(0, 0, width, height);
+        g.setColor(GRID_COLOUR);
+        g.drawLine(0, height / 2, width, height / 2);
+        g.drawRect(0, 0, width - 1, height - 1);
+
+        if (columnMin.length < width) {
+            columnMin = new double[width];
+            columnMax = new double[width];
+        }
+
+        int legendX = 4;
+        int textY = g.getFontMetrics().getAscent() + 2;
+        g.setColor(Color.BLACK);
+        g.drawString(title, legendX, textY);
+        legendX += g.getFontMetrics().stringWidth(title) + 8;
+
+        for (Series line : series) {
+            line.samples.decimate(columnMin, columnMax, width);
+            g.setColor(line.colour);
+
+            int prevY = -1;
+            for (int x = 0; x < width; x++) {
+                if (Double.isNaN(columnMin[x])) {
+                    prevY = -1;
+                    continue;
+                }
+                int top = toY(columnMax[x], height);
+                int bottom = toY(columnMin[x], height);
+                g.drawLine(x, top, x, bottom);
+                if (prevY >= 0) { // Join to the previous column so slow changes are still a line.
+                    g.drawLine(x - 1, prevY, x, (top + bottom) / 2);
+                }
+                prevY = (top + bottom) / 2;
+            }
+
+            g.drawString(line.name, legendX, textY);
+            legendX += g.getFontMetrics().stringWidth(line.name) + 8;
+        }
+    }
+
+    /**
+     * Maps a value to a pixel row, clamping to the chart's range.
+     */
+    private int toY(double value, int height) {
+        double fraction = (value - minValue) / (maxValue - minValue);
+        fraction = fraction > 1 ? 1 : fraction;
+        fraction = fraction < 0 ? 0 : fraction;
+        return (int) Math.round((1 - fraction) * (height - 1));
+    }
+}
@@ -0,0 +1,221 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import car.TelemetryStore.EventType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes readouts and driver events to a telemetry file in blocks, keeping a
+ * summary of each block (tick and distance range, which event types it holds)
+ * that is written as an index when the recorder is closed. See
+ * TelemetryStore for the file layout and for reading.
+ *
+ * Records must be added in tick order, with distance never decreasing. Not
+ * thread-safe.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class TelemetryRecorder {
+
+    static final int BLOCK_READOUTS = 250; // 5 s of readouts per block.
+
+    private final FileChannel channel;
+    private final List<BlockSummary> index = new ArrayList<BlockSummary>();
+    private ByteBuffer block = ByteBuffer.allocate(BLOCK_READOUTS * ReadoutCodec.READOUT_FRAME_BYTES + 16 * TelemetryStore.EVENT_FRAME_BYTES);
+    private long filePosition = 0;
+
+    // Summary of the block being filled.
+    private int blockReadouts = 0;
+    private long blockFirstTick = -1;
+    private long blockLastTick = -1;
+    private double blockFirstDistance = Double.NaN;
+    private double lastDistance = 0;
+    private int blockEventMask = 0;
+
+    /**
+     * Index entry for a block that has been written.
+     */
+    private static class BlockSummary {
+
+        private final long offset;
+        private final int length;
+        private final long firstTick;
+        private final long lastTick;
+        private final double firstDistance;
+        private final double lastDistance;
+        private final int eventMask;
+
+        private BlockSummary(long offset, int length, long firstTick, long lastTick, double firstDistance, double lastDistance, int eventMask) {
+            this.offset = offset;
+            this.length = length;
+            this.firstTick = firstTick;
+            this.lastTick = lastTick;
+            this.firstDistance = firstDistance;
+            this.lastDistance = lastDistance;
+            this.eventMask = eventMask;
+        }
+    }
+
+    /**
+     * Creates (or replaces) a telemetry file.
+     *
+     * @param file the file.
+     * @throws IOException if the file cannot be created.
+     */
+    public TelemetryRecorder(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Records a readout.
+     *
+     * @param tick tick the readout was produced in.
+     * @param readout the readout.
+     * @throws IOException if writing fails.
+     */
+    public void record(long tick, DynamicsReadout readout) throws IOException {
+        ensureSpace(ReadoutCodec.READOUT_FRAME_BYTES);
+        ReadoutCodec.encode(block, tick, readout);
+        noteTick(tick);
+        lastDistance = readout.getDistanceMeters();
+        if (Double.isNaN(blockFirstDistance)) {
+            blockFirstDistance = lastDistance;
+        }
+
+        if (++blockReadouts == BLOCK_READOUTS) {
+            closeBlock();
+        }
+    }
+
+    /**
+     * Records a driver instruction. Only braking and ignition are indexed.
+     *
+     * @param tick tick the instruction was submitted in.
+     * @param instruction the instruction.
+     * @throws IOException if writing fails.
+     */
+    public void record(long tick, ActuatorInstruction instruction) throws IOException {
+        Instructions type = instruction.getInstruction();
+        if (type == Instructions.BRAKE) {
+            recordEvent(tick, EventType.BRAKE, instruction.getPercentage());
+        } else if (type == Instructions.TURN_ON_IGNITION) {
+            recordEvent(tick, EventType.IGNITION_ON, 0);
+        } else if (type == Instructions.TURN_OFF_IGNITION) {
+            recordEvent(tick, EventType.IGNITION_OFF, 0);
+        }
+    }
+
+    /**
+     * Records a cruise control instruction.
+     *
+     * @param tick tick the instruction was submitted in.
+     * @param instruction the instruction.
+     * @throws IOException if writing fails.
+     */
+    public void record(long tick, CCInstruction instruction) throws IOException {
+        CCInstructions type = instruction.getInstruction();
+        if (type == CCInstructions.ACTIVATE) {
+            recordEvent(tick, EventType.CC_ACTIVATE, instruction.getSpeedSetting());
+        } else if (type == CCInstructions.SET_SPEED) {
+            recordEvent(tick, EventType.CC_SET_SPEED, instruction.getSpeedSetting());
+        } else {
+            recordEvent(tick, EventType.CC_DEACTIVATE, 0);
+        }
+    }
+
+    private void recordEvent(long tick, EventType type, double value) throws IOException {
+        ensureSpace(TelemetryStore.EVENT_FRAME_BYTES);
+        block.putInt(TelemetryStore.EVENT_PAYLOAD_BYTES);
+        block.put(TelemetryStore.FRAME_EVENT);
+        block.putLong(tick);
+        block.put((byte) type.ordinal());
+        block.putDouble(value);
+        noteTick(tick);
+        blockEventMask |= type.mask();
+    }
+
+    /**
+     * Writes the last block and the index, and closes the file.
+     *
+     * @throws IOException if writing fails.
+     */
+    public void close() throws IOException {
+        try {
+            closeBlock();
+
+            ByteBuffer trailer = ByteBuffer.allocate(index.size() * TelemetryStore.INDEX_ENTRY_BYTES + TelemetryStore.TRAILER_BYTES);
+            for (BlockSummary entry : index) {
+                trailer.putLong(entry.offset);
+                trailer.putInt(entry.length);
+                trailer.putLong(entry.firstTick);
+                trailer.putLong(entry.lastTick);
+                trailer.putDouble(entry.firstDistance);
+                trailer.putDouble(entry.lastDistance);
+                trailer.putInt(entry.eventMask);
+            }
+            trailer.putLong(filePosition);
+            trailer.putInt(index.size());
+            trailer.putInt(TelemetryStore.MAGIC);
+            trailer.flip();
+            writeFully(trailer);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void noteTick(long tick) {
+        if (blockFirstTick < 0) {
+            blockFirstTick = tick;
+        }
+        blockLastTick = tick;
+    }
+
+    /**
+     * Grows the block buffer if a frame won't fit. Only needed for blocks
+     * with an unusually large number of events.
+     */
+    private void ensureSpace(int bytes) {
+        if (block.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(block.capacity() * 2);
+            block.flip();
+            bigger.put(block);
+            block = bigger;
+        }
+    }
+
+    /**
+     * Writes the current block and adds its summary to the index.
+     */
+    private void closeBlock() throws IOException {
+        if (block.position() == 0) {
+            return;
+        }
+        int length = block.position();
+        double firstDistance = Double.isNaN(blockFirstDistance) ? lastDistance : blockFirstDistance;
+        index.add(new BlockSummary(filePosition, length, blockFirstTick, blockLastTick, firstDistance, lastDistance, blockEventMask));
+
+        block.flip();
+        writeFully(block);
+        block.clear();
+        filePosition += length;
+
+        blockReadouts = 0;
+        blockFirstTick = -1;
+        blockLastTick = -1;
+        blockFirstDistance = Double.NaN;
+        blockEventMask = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
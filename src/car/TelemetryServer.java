@@ -0,0 +1,275 @@
+package car;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.Flow;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the DynamicsReadout feed to any number of TCP subscribers on
+ * localhost (dashboards, loggers, analysis scripts). Frames are encoded with
+ * ReadoutCodec.
+ *
+ * Subscribe it to the car's ReadoutPublisher; it requests every readout.
+ * publish() never blocks: it only swaps in the newest readout and wakes the
+ * selector thread. Each subscriber is sent the newest frame whenever its
+ * previous frame has been fully written, so a slow subscriber has its frames
+ * conflated (dropped) instead of holding up CarDynamics.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class TelemetryServer implements Runnable, Flow.Subscriber<DynamicsReadout> {
+
+    private static final Logger LOG = Logger.getLogger(TelemetryServer.class.getName());
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+
+    // Newest readout published by CarDynamics. Frame objects are immutable.
+    private volatile Frame latest;
+    private long publishedCount = 0; // Only written by the publishing thread.
+
+    // Only touched by the selector thread.
+    private Frame encoded; // Newest frame already encoded for sending.
+    private ByteBuffer encodedBuffer;
+    private final ByteBuffer discarded = ByteBuffer.allocate(256); // Subscribers' input, thrown away.
+
+    /**
+     * Per-connection state. Only touched by the selector thread.
+     */
+    private static class Subscriber {
+
+        private ByteBuffer pending; // Frame currently being written, or null when idle.
+        private long lastSentSequence = -1;
+        private long droppedFrames = 0;
+    }
+
+    /**
+     * An encoded readout waiting to be sent.
+     */
+    private static class Frame {
+
+        private final long sequence;
+        private final DynamicsReadout readout;
+
+        private Frame(long sequence, DynamicsReadout readout) {
+            this.sequence = sequence;
+            this.readout = readout;
+        }
+    }
+
+    /**
+     * Binds the server to the loopback interface. Call start() to begin
+     * accepting subscribers.
+     *
+     * @param port TCP port; 0 picks a free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    public TelemetryServer(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Starts the selector thread.
+     */
+    public synchronized void start() {
+        if (selectorThread == null) {
+            selectorThread = new Thread(this, "telemetry-server");
+            selectorThread.setDaemon(true);
+            selectorThread.start();
+        }
+    }
+
+    /**
+     * Stops the selector thread and closes every connection.
+     */
+    public void close() {
+        try {
+            selector.close();
+            serverChannel.close();
+        } catch (IOException ioEx) {
+            LOG.log(Level.WARNING, "Error closing telemetry server", ioEx);
+        }
+    }
+
+    /**
+     * @return the port the server is listening on.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE); // Conflated here, so take them all.
+    }
+
+    @Override
+    public void onNext(DynamicsReadout readout) {
+        publish(readout);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        LOG.log(Level.SEVERE, "Readout stream failed", throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        // Do nothing. Subscribers stay connected until close().
+    }
+
+    /**
+     * Makes a readout available to subscribers. Must only be called by one
+     * thread at a time (the publisher's delivery thread). Never blocks.
+     *
+     * @param readout the newest readout.
+     */
+    public void publish(DynamicsReadout readout) {
+        latest = new Frame(publishedCount++, readout);
+        selector.wakeup();
+    }
+
+    /**
+     * Selector loop.
+     */
+    @Override
+    public void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        if (key.isReadable()) {
+                            discardInput(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(key);
+                        }
+                    }
+                }
+
+                offerLatest();
+            }
+        } catch (ClosedSelectorException closedEx) {
+            // close() was called.
+        } catch (IOException ioEx) {
+            LOG.log(Level.SEVERE, "Telemetry server stopped", ioEx);
+        }
+    }
+
+    /**
+     * Hands the newest frame to every subscriber that is idle.
+     */
+    private void offerLatest() {
+        Frame frame = latest;
+        if (frame == null) {
+            return;
+        }
+        if (frame != encoded) {
+            encodedBuffer = ByteBuffer.allocate(ReadoutCodec.READOUT_FRAME_BYTES);
+            ReadoutCodec.encode(encodedBuffer, frame.sequence, frame.readout);
+            encodedBuffer.flip();
+            encoded = frame;
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof Subscriber)) {
+                continue;
+            }
+            Subscriber subscriber = (Subscriber) key.attachment();
+            if (subscriber.pending == null && subscriber.lastSentSequence < frame.sequence) {
+                if (subscriber.lastSentSequence >= 0) {
+                    subscriber.droppedFrames += frame.sequence - subscriber.lastSentSequence - 1;
+                }
+                subscriber.lastSentSequence = frame.sequence;
+                subscriber.pending = encodedBuffer.duplicate(); // Shares the encoded bytes.
+                flush(key);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Subscriber());
+    }
+
+    /**
+     * Subscribers are not expected to send anything. Reading is only used to
+     * find out when they disconnect.
+     */
+    private void discardInput(SelectionKey key) {
+        discarded.clear();
+        try {
+            if (((SocketChannel) key.channel()).read(discarded) < 0) {
+                disconnect(key);
+            }
+        } catch (IOException ioEx) {
+            disconnect(key);
+        }
+    }
+
+    /**
+     * Writes as much of the subscriber's pending frame as the socket accepts.
+     * OP_WRITE interest is only kept while a partial frame is outstanding.
+     */
+    private void flush(SelectionKey key) {
+        Subscriber subscriber = (Subscriber) key.attachment();
+        if (subscriber.pending == null) {
+            key.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+        try {
+            ((SocketChannel) key.channel()).write(subscriber.pending);
+        } catch (IOException ioEx) {
+            disconnect(key);
+            return;
+        }
+        if (subscriber.pending.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            subscriber.pending = null;
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void disconnect(SelectionKey key) {
+        Subscriber subscriber = (Subscriber) key.attachment();
+        LOG.log(Level.FINE, "Telemetry subscriber disconnected after dropping {0} frames", subscriber.droppedFrames);
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ioEx) {
+            // Do nothing. The connection is being discarded anyway.
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package car;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read access to a telemetry file written by TelemetryRecorder. The file's
+ * sparse block index is loaded when it is opened; queries then read and decode
+ * only the blocks that can contain matching records, so seeking to a time or
+ * distance in a multi-hour recording is cheap.
+ *
+ * File layout (network byte order):
+ * <pre>
+ *   block*            - readout frames (ReadoutCodec, sequence = tick) and
+ *                       event frames, in tick order.
+ *   index entry * N   - one per block: long offset, int length,
+ *                       long firstTick, long lastTick, double firstDistance,
+ *                       double lastDistance, int eventMask (EventType bits).
+ *   long   indexOffset
+ *   int    blockCount
+ *   int    MAGIC
+ * </pre>
+ * An event frame is: int length, byte FRAME_EVENT, long tick, byte event type
+ * (EventType ordinal), double value.
+ *
+ * Distance never decreases during a run, so blocks can be found by distance
+ * with a binary search, just like by tick.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class TelemetryStore {
+
+    static final int MAGIC = 0x56524D54; // "VRMT".
+    static final byte FRAME_EVENT = 2;
+    static final int EVENT_PAYLOAD_BYTES = 1 + 8 + 1 + 8;
+    static final int EVENT_FRAME_BYTES = ReadoutCodec.HEADER_BYTES + EVENT_PAYLOAD_BYTES;
+    static final int INDEX_ENTRY_BYTES = 8 + 4 + 8 + 8 + 8 + 8 + 4;
+    static final int TRAILER_BYTES = 8 + 4 + 4;
+
+    /**
+     * Driver and cruise control events worth seeking to.
+     */
+    public enum EventType {
+
+        CC_ACTIVATE,
+        CC_SET_SPEED,
+        CC_DEACTIVATE,
+        BRAKE,
+        IGNITION_ON,
+        IGNITION_OFF;
+
+        int mask() {
+            return 1 << ordinal();
+        }
+    }
+
+    /**
+     * Receives records from a query, in tick order.
+     */
+    public interface Visitor {
+
+        /**
+         * @param tick tick the readout was produced in.
+         * @param readout the readout.
+         */
+        void readout(long tick, DynamicsReadout readout);
+
+        /**
+         * @param tick tick the event was submitted in.
+         * @param type what happened.
+         * @param value set speed (km/h) or brake (%); 0 otherwise.
+         */
+        void event(long tick, EventType type, double value);
+    }
+
+    private final FileChannel channel;
+    // The index, one array element per block.
+    private final long[] offset;
+    private final int[] length;
+    private final long[] firstTick;
+    private final long[] lastTick;
+    private final double[] firstDistance;
+    private final double[] lastDistance;
+    private final int[] eventMask;
+
+    private TelemetryStore(FileChannel channel, int blocks) {
+        this.channel = channel;
+        offset = new long[blocks];
+        length = new int[blocks];
+        firstTick = new long[blocks];
+        lastTick = new long[blocks];
+        firstDistance = new double[blocks];
+        lastDistance = new double[blocks];
+        eventMask = new int[blocks];
+    }
+
+    /**
+     * Opens a telemetry file and loads its index.
+     *
+     * @param file the file.
+     * @return the store. Close it when finished.
+     * @throws IOException if the file cannot be read or is not a complete
+     * telemetry file.
+     */
+    public static TelemetryStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < TRAILER_BYTES) {
+                throw new IOException(file + ": not a telemetry file");
+            }
+            ByteBuffer trailer = readFully(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            int blocks = trailer.getInt();
+            if (trailer.getInt() != MAGIC || indexOffset + (long) blocks * INDEX_ENTRY_BYTES != size - TRAILER_BYTES) {
+                throw new IOException(file + ": not a telemetry file, or was not closed properly");
+            }
+
+            TelemetryStore store = new TelemetryStore(channel, blocks);
+            ByteBuffer index = readFully(channel, indexOffset, blocks * INDEX_ENTRY_BYTES);
+            for (int i = 0; i < blocks; i++) {
+                store.offset[i] = index.getLong();
+                store.length[i] = index.getInt();
+                store.firstTick[i] = index.getLong();
+                store.lastTick[i] = index.getLong();
+                store.firstDistance[i] = index.getDouble();
+                store.lastDistance[i] = index.getDouble();
+                store.eventMask[i] = index.getInt();
+            }
+            return store;
+        } catch (IOException ioEx) {
+            channel.close();
+            throw ioEx;
+        }
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if closing fails.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return number of blocks in the file.
+     */
+    public int getBlockCount() {
+        return offset.length;
+    }
+
+    /**
+     * @return last tick recorded, or -1 if the file is empty.
+     */
+    public long getLastTick() {
+        return offset.length == 0 ? -1 : lastTick[offset.length - 1];
+    }
+
+    /**
+     * Visits every record with fromTick &lt;= tick &lt;= toTick.
+     *
+     * @param fromTick first tick, inclusive.
+     * @param toTick last tick, inclusive.
+     * @param visitor receives the records.
+     * @throws IOException if reading fails.
+     */
+    public void readTicks(long fromTick, long toTick, Visitor visitor) throws IOException {
+        for (int block = firstBlockEndingAtOrAfter(lastTick, fromTick); block < offset.length && firstTick[block] <= toTick; block++) {
+            decodeBlock(block, fromTick, toTick, visitor);
+        }
+    }
+
+    /**
+     * Visits every record from the first readout at or beyond fromMeters up to
+     * the last readout at or before toMeters, plus any events recorded after
+     * a readout in range and before the next readout.
+     *
+     * @param fromMeters start distance, inclusive.
+     * @param toMeters end distance, inclusive.
+     * @param visitor receives the records.
+     * @throws IOException if reading fails.
+     */
+    public void readDistance(final double fromMeters, final double toMeters, final Visitor visitor) throws IOException {
+        int start = firstBlockEndingAtOrAfter(lastDistance, fromMeters);
+        // Distances are only in readouts, so an event is passed on when the
+        // readout before it is in range. That readout may be in the block
+        // before, so one visitor is used for every block.
+        Visitor rangeVisitor = new Visitor() {
+            private boolean inRange = false;
+
+            @Override
+            public void readout(long tick, DynamicsReadout readout) {
+                double distance = readout.getDistanceMeters();
+                inRange = distance >= fromMeters && distance <= toMeters;
+                if (inRange) {
+                    visitor.readout(tick, readout);
+                }
+            }
+
+            @Override
+            public void event(long tick, EventType type, double value) {
+                if (inRange) {
+                    visitor.event(tick, type, value);
+                }
+            }
+        };
+        for (int block = start; block < offset.length && firstDistance[block] <= toMeters; block++) {
+            decodeBlock(block, Long.MIN_VALUE, Long.MAX_VALUE, rangeVisitor);
+        }
+    }
+
+    /**
+     * Visits every event of one type, decoding only blocks that contain one.
+     *
+     * @param type the event type.
+     * @param visitor receives the events (and no readouts).
+     * @throws IOException if reading fails.
+     */
+    public void readEvents(final EventType type, final Visitor visitor) throws IOException {
+        Visitor filter = new Visitor() {
+            @Override
+            public void readout(long tick, DynamicsReadout readout) {
+            }
+
+            @Override
+            public void event(long tick, EventType eventType, double value) {
+                if (eventType == type) {
+                    visitor.event(tick, eventType, value);
+                }
+            }
+        };
+        for (int block = 0; block < offset.length; block++) {
+            if ((eventMask[block] & type.mask()) != 0) {
+                decodeBlock(block, Long.MIN_VALUE, Long.MAX_VALUE, filter);
+            }
+        }
+    }
+
+    /**
+     * Binary search over the block summaries.
+     *
+     * @return first block whose last value is &gt;= value, or the number of
+     * blocks if there is none.
+     */
+    private int firstBlockEndingAtOrAfter(long[] lastValues, long value) {
+        int low = 0;
+        int high = lastValues.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lastValues[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int firstBlockEndingAtOrAfter(double[] lastValues, double value) {
+        int low = 0;
+        int high = lastValues.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lastValues[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void decodeBlock(int block, long fromTick, long toTick, Visitor visitor) throws IOException {
+        ByteBuffer buffer = readFully(channel, offset[block], length[block]);
+        EventType[] types = EventType.values();
+
+        while (buffer.hasRemaining()) {
+            byte frameType = buffer.get(buffer.position() + ReadoutCodec.HEADER_BYTES);
+            if (frameType == ReadoutCodec.FRAME_READOUT) {
+                long tick = ReadoutCodec.peekSequence(buffer);
+                if (tick < fromTick || tick > toTick) {
+                    buffer.position(buffer.position() + ReadoutCodec.READOUT_FRAME_BYTES);
+                } else {
+                    visitor.readout(tick, ReadoutCodec.decode(buffer));
+                }
+            } else if (frameType == FRAME_EVENT) {
+                buffer.getInt();
+                buffer.get();
+                long tick = buffer.getLong();
+                byte typeIndex = buffer.get();
+                if (typeIndex < 0 || typeIndex >= types.length) {
+                    throw new IOException("Corrupt telemetry block " + block + ": event type " + typeIndex);
+                }
+                EventType type = types[typeIndex];
+                double value = buffer.getDouble();
+                if (tick >= fromTick && tick <= toTick) {
+                    visitor.event(tick, type, value);
+                }
+            } else {
+                throw new IOException("Corrupt telemetry block " + block + ": frame type " + frameType);
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of telemetry file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
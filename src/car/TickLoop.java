@@ -0,0 +1,191 @@
+package car;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Runs tasks in order once per tick, at a fixed rate, on its own thread. A
+ * replacement for java.util.Timer with nanosecond periods and a choice of
+ * WaitStrategy. Like Timer.scheduleAtFixedRate(), tick deadlines never drift:
+ * a late tick is followed by shorter gaps until the loop has caught up.
+ *
+ * The loop can be run faster or slower than real time with setWarp(), while
+ * it is running. A warped loop does not catch up on ticks it was too slow to
+ * run: asked for more ticks than it can manage, it runs flat out instead.
+ *
+ * Measures how late each tick starts (wake-up latency) and how much CPU time
+ * the loop thread uses, including the time spent waiting.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class TickLoop implements Runnable {
+
+    // Slowest warp allowed; slower would leave the GUI and watchdog waiting
+    // seconds for a tick.
+    public static final double MIN_WARP = 0.01;
+
+    private final long periodNanos;
+    private final WaitStrategy waitStrategy;
+    private final Runnable[] tasks;
+    private final LatencyHistogram wakeLatency = new LatencyHistogram();
+    private volatile double warp = 1;
+    private volatile long warpedPeriodNanos;
+    private volatile boolean running = false;
+    private volatile long ticks = 0;
+    private volatile long lateness = 0; // How late the current tick started.
+    private volatile long cpuNanos = 0;
+    private volatile long wallNanos = 0;
+    private Thread thread;
+
+    /**
+     * @param periodNanos time between tick starts.
+     * @param waitStrategy how to wait between ticks.
+     * @param tasks run in this order every tick.
+     */
+    public TickLoop(long periodNanos, WaitStrategy waitStrategy, Runnable... tasks) {
+        if (periodNanos <= 0) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        this.periodNanos = periodNanos;
+        this.warpedPeriodNanos = periodNanos;
+        this.waitStrategy = waitStrategy;
+        this.tasks = tasks.clone();
+    }
+
+    /**
+     * Starts the loop on a new thread. The first tick runs immediately.
+     *
+     * @param name thread name.
+     */
+    public synchronized void start(String name) {
+        if (thread != null) {
+            throw new IllegalStateException("Already started");
+        }
+        running = true;
+        thread = new Thread(this, name);
+        thread.start();
+    }
+
+    /**
+     * Stops the loop after the current tick and waits for its thread to end.
+     * Figures are final once this returns.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException intEx) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The loop. Use start() rather than calling this directly.
+     */
+    @Override
+    public void run() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+        long startCpu = cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+        long start = System.nanoTime();
+        long deadline = start;
+        long period = periodNanos;
+
+        while (running) {
+            waitStrategy.waitUntil(deadline);
+            long now = System.nanoTime();
+            lateness = now - deadline;
+            wakeLatency.record(lateness);
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            long warpedPeriod = warpedPeriodNanos;
+            if (warpedPeriod != period) {
+                // New warp: time the next tick from now, not from ticks run
+                // at the old rate.
+                period = warpedPeriod;
+                deadline = now;
+            } else if (period != periodNanos && now - deadline > period) {
+                // Warped and behind: drop the missed ticks.
+                deadline = now;
+            }
+            deadline += period;
+            ticks++;
+        }
+
+        wallNanos = System.nanoTime() - start;
+        cpuNanos = cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() - startCpu : -1;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * Changes how fast the loop runs relative to real time. Takes effect
+     * after the current tick.
+     *
+     * @param warp simulated seconds per real second: 10 runs ticks ten times
+     * as often, 0.5 half as often. Double.POSITIVE_INFINITY runs them as fast
+     * as the tasks allow. At least MIN_WARP.
+     */
+    public void setWarp(double warp) {
+        if (!(warp >= MIN_WARP)) {
+            throw new IllegalArgumentException("Warp must be at least " + MIN_WARP);
+        }
+        this.warpedPeriodNanos = (long) (periodNanos / warp);
+        this.warp = warp;
+    }
+
+    /**
+     * @return simulated seconds per real second asked for; the loop may not
+     * manage it.
+     */
+    public double getWarp() {
+        return warp;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * @return ticks run so far.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return how late the current tick (or, between ticks, the last one)
+     * started, in nanoseconds.
+     */
+    public long getLateness() {
+        return lateness;
+    }
+
+    /**
+     * @return how late each tick started, in nanoseconds. Only consistent
+     * after stop().
+     */
+    public LatencyHistogram getWakeLatency() {
+        return wakeLatency;
+    }
+
+    /**
+     * @return CPU time used by the loop thread divided by the time it ran
+     * for (1 = a whole core), or NaN if unknown or not stopped yet.
+     */
+    public double getCpuFraction() {
+        return cpuNanos < 0 || wallNanos == 0 ? Double.NaN : cpuNanos / (double) wallNanos;
+    }
+}
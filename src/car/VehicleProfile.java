@@ -0,0 +1,196 @@
+package car;
+
+/**
+ * The constants that describe one type of car: its motor, brakes, gearing,
+ * mass and shape. Immutable, so one profile can be shared by any number of
+ * cars. The environment (gravity, air density) is the same for every car and
+ * stays in CarDynamics.
+ *
+ * Profiles are written one per line, as in a VehicleTable file or a Scenario:
+ *
+ * <pre>
+ *   vehicle van  mass=2600 drag_area=1.1 max_current=600
+ * </pre>
+ *
+ * Values not given are DEFAULT's. The keys are mass (kg), drag_area (m^2,
+ * drag coefficient times frontal area), rolling_friction, max_current (A),
+ * max_brake_torque (Nm), motor_constant, motor_sprocket (m), wheel_sprocket
+ * (m) and wheel_radius (m).
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public final class VehicleProfile {
+
+    /**
+     * The car CarDynamics has always simulated: a 1994 Porsche 911 Speedster
+     * body with an electric motor.
+     */
+    public static final VehicleProfile DEFAULT = new VehicleProfile("porsche-911-speedster",
+            1406, 0.550, 0.015, 400, 1000, 0.8, 0.065, 0.11, 0.25);
+
+    private final String name;
+    private final double mass; // kg.
+    private final double dragArea; // m^2 - drag coefficient * area.
+    private final double rollingFriction; // Coefficient of rolling friction.
+    private final double maxCurrent; // Max. current (A) that can be supplied to the motor.
+    private final double maxBrakeTorque; // Max. torque (Nm) that can be supplied by the brakes.
+    private final double motorConstant; // DC motor constant.
+    private final double motorSprocket; // Radius (m) of the motor sprocket.
+    private final double wheelSprocket; // Radius (m) of the wheel sprocket.
+    private final double wheelRadius; // Radius (m) of the rear wheel.
+
+    /**
+     * @param name what the profile is called.
+     * @param mass in kg.
+     * @param dragArea drag coefficient times frontal area (m^2).
+     * @param rollingFriction coefficient of rolling friction.
+     * @param maxCurrent motor current (A) at full throttle.
+     * @param maxBrakeTorque brake torque (Nm) at full brake.
+     * @param motorConstant DC motor constant (Nm/A).
+     * @param motorSprocket radius (m) of the motor sprocket.
+     * @param wheelSprocket radius (m) of the wheel sprocket.
+     * @param wheelRadius radius (m) of the driven wheel.
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    public VehicleProfile(String name, double mass, double dragArea, double rollingFriction,
+            double maxCurrent, double maxBrakeTorque, double motorConstant,
+            double motorSprocket, double wheelSprocket, double wheelRadius) {
+        this.name = name;
+        this.mass = positive("mass", mass);
+        this.dragArea = notNegative("drag_area", dragArea);
+        this.rollingFriction = notNegative("rolling_friction", rollingFriction);
+        this.maxCurrent = notNegative("max_current", maxCurrent);
+        this.maxBrakeTorque = notNegative("max_brake_torque", maxBrakeTorque);
+        this.motorConstant = notNegative("motor_constant", motorConstant);
+        this.motorSprocket = positive("motor_sprocket", motorSprocket);
+        this.wheelSprocket = positive("wheel_sprocket", wheelSprocket);
+        this.wheelRadius = positive("wheel_radius", wheelRadius);
+    }
+
+    private static double positive(String key, double value) {
+        if (!(value > 0) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(key + " must be positive, not " + value);
+        }
+        return value;
+    }
+
+    private static double notNegative(String key, double value) {
+        if (!(value >= 0) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(key + " must not be negative, not " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a profile from the words of a "vehicle <name> key=value ..."
+     * line.
+     *
+     * @param words the line, split on white space; words[0] is "vehicle".
+     * @return the profile.
+     * @throws IllegalArgumentException if the line is invalid (including
+     * NumberFormatException for a bad number).
+     */
+    static VehicleProfile parse(String[] words) {
+        if (words.length < 2) {
+            throw new IllegalArgumentException("expected 'vehicle <name> [key=value ...]'");
+        }
+        double mass = DEFAULT.mass;
+        double dragArea = DEFAULT.dragArea;
+        double rollingFriction = DEFAULT.rollingFriction;
+        double maxCurrent = DEFAULT.maxCurrent;
+        double maxBrakeTorque = DEFAULT.maxBrakeTorque;
+        double motorConstant = DEFAULT.motorConstant;
+        double motorSprocket = DEFAULT.motorSprocket;
+        double wheelSprocket = DEFAULT.wheelSprocket;
+        double wheelRadius = DEFAULT.wheelRadius;
+
+        for (int i = 2; i < words.length; i++) {
+            int equals = words[i].indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("expected key=value, got '" + words[i] + "'");
+            }
+            String key = words[i].substring(0, equals);
+            double value = Double.parseDouble(words[i].substring(equals + 1));
+            if (key.equals("mass")) {
+                mass = value;
+            } else if (key.equals("drag_area")) {
+                dragArea = value;
+            } else if (key.equals("rolling_friction")) {
+                rollingFriction = value;
+            } else if (key.equals("max_current")) {
+                maxCurrent = value;
+            } else if (key.equals("max_brake_torque")) {
+                maxBrakeTorque = value;
+            } else if (key.equals("motor_constant")) {
+                motorConstant = value;
+            } else if (key.equals("motor_sprocket")) {
+                motorSprocket = value;
+            } else if (key.equals("wheel_sprocket")) {
+                wheelSprocket = value;
+            } else if (key.equals("wheel_radius")) {
+                wheelRadius = value;
+            } else {
+                throw new IllegalArgumentException("unknown vehicle key '" + key + "'");
+            }
+        }
+        return new VehicleProfile(words[1], mass, dragArea, rollingFriction, maxCurrent, maxBrakeTorque,
+                motorConstant, motorSprocket, wheelSprocket, wheelRadius);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getMass() {
+        return mass;
+    }
+
+    public double getDragArea() {
+        return dragArea;
+    }
+
+    public double getRollingFriction() {
+        return rollingFriction;
+    }
+
+    public double getMaxCurrent() {
+        return maxCurrent;
+    }
+
+    public double getMaxBrakeTorque() {
+        return maxBrakeTorque;
+    }
+
+    public double getMotorConstant() {
+        return motorConstant;
+    }
+
+    public double getMotorSprocket() {
+        return motorSprocket;
+    }
+
+    public double getWheelSprocket() {
+        return wheelSprocket;
+    }
+
+    public double getWheelRadius() {
+        return wheelRadius;
+    }
+
+    /**
+     * @return the profile as a "vehicle" line, values in full.
+     */
+    @Override
+    public String toString() {
+        return "vehicle " + name
+                + " mass=" + mass
+                + " drag_area=" + dragArea
+                + " rolling_friction=" + rollingFriction
+                + " max_current=" + maxCurrent
+                + " max_brake_torque=" + maxBrakeTorque
+                + " motor_constant=" + motorConstant
+                + " motor_sprocket=" + motorSprocket
+                + " wheel_sprocket=" + wheelSprocket
+                + " wheel_radius=" + wheelRadius;
+    }
+}
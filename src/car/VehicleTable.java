@@ -0,0 +1,186 @@
+package car;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The vehicle profiles of a mixed fleet, numbered from 0. Each car refers to
+ * its profile by number, so a car costs the same however many types of car
+ * there are. The constants are held one array per quantity, indexed by
+ * profile number, for the fleet kernels to look up.
+ *
+ * Table files are plain text with one VehicleProfile per line; '#' starts a
+ * comment.
+ *
+ * <pre>
+ *   vehicle porsche-911-speedster                # all defaults
+ *   vehicle van    mass=2600 drag_area=1.1 max_current=600
+ *   vehicle hatch  mass=1100 drag_area=0.62 rolling_friction=0.012
+ * </pre>
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public final class VehicleTable {
+
+    /**
+     * A table of just VehicleProfile.DEFAULT.
+     */
+    public static final VehicleTable DEFAULT = new VehicleTable(Collections.singletonList(VehicleProfile.DEFAULT));
+
+    private final VehicleProfile[] profiles;
+    // Constants by profile number, for the fleet kernels.
+    final double[] mass; // kg.
+    final double[] dragArea; // m^2.
+    final double[] rollingFriction;
+    final double[] maxCurrent; // A.
+    final double[] maxBrakeTorque; // Nm.
+    final double[] motorConstant;
+    final double[] sprocketRatio; // Wheel sprocket radius / motor sprocket radius.
+    final double[] wheelRadius; // m.
+
+    /**
+     * @param profiles the profiles, in number order.
+     * @throws IllegalArgumentException if there are none, or two share a
+     * name.
+     */
+    public VehicleTable(List<VehicleProfile> profiles) {
+        if (profiles.isEmpty()) {
+            throw new IllegalArgumentException("A vehicle table needs at least one profile");
+        }
+        this.profiles = profiles.toArray(new VehicleProfile[0]);
+        int size = this.profiles.length;
+        mass = new double[size];
+        dragArea = new double[size];
+        rollingFriction = new double[size];
+        maxCurrent = new double[size];
+        maxBrakeTorque = new double[size];
+        motorConstant = new double[size];
+        sprocketRatio = new double[size];
+        wheelRadius = new double[size];
+        for (int i = 0; i < size; i++) {
+            VehicleProfile profile = this.profiles[i];
+            if (indexOf(profile.getName()) != i) {
+                throw new IllegalArgumentException("Vehicle '" + profile.getName() + "' is defined twice");
+            }
+            mass[i] = profile.getMass();
+            dragArea[i] = profile.getDragArea();
+            rollingFriction[i] = profile.getRollingFriction();
+            maxCurrent[i] = profile.getMaxCurrent();
+            maxBrakeTorque[i] = profile.getMaxBrakeTorque();
+            motorConstant[i] = profile.getMotorConstant();
+            sprocketRatio[i] = profile.getWheelSprocket() / profile.getMotorSprocket();
+            wheelRadius[i] = profile.getWheelRadius();
+        }
+    }
+
+    /**
+     * Reads a table file.
+     *
+     * @param in the table text.
+     * @return the table, profiles numbered in file order.
+     * @throws IOException if reading fails.
+     * @throws ParseException if a line is invalid, or there are no profiles.
+     * The error offset is the line number.
+     */
+    public static VehicleTable parse(Reader in) throws IOException, ParseException {
+        List<VehicleProfile> profiles = new ArrayList<VehicleProfile>();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            String[] words = line.trim().split("\\s+");
+            if (words[0].isEmpty()) {
+                continue;
+            }
+
+            try {
+                if (!words[0].equals("vehicle")) {
+                    throw new IllegalArgumentException("unknown keyword '" + words[0] + "'");
+                }
+                profiles.add(VehicleProfile.parse(words));
+            } catch (NumberFormatException numEx) {
+                throw new ParseException("Line " + lineNumber + ": bad number: " + numEx.getMessage(), lineNumber);
+            } catch (IllegalArgumentException argEx) {
+                throw new ParseException("Line " + lineNumber + ": " + argEx.getMessage(), lineNumber);
+            }
+        }
+
+        try {
+            return new VehicleTable(profiles);
+        } catch (IllegalArgumentException argEx) {
+            throw new ParseException(argEx.getMessage(), lineNumber);
+        }
+    }
+
+    /**
+     * Reads a table file.
+     *
+     * @param file the table file.
+     * @return the table.
+     * @throws IOException if reading fails.
+     * @throws ParseException if a line is invalid.
+     */
+    public static VehicleTable load(Path file) throws IOException, ParseException {
+        Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        try {
+            return parse(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the table file named by the vroom.vehicles system property.
+     *
+     * @return the table, or DEFAULT if the property is not set.
+     * @throws IOException if reading fails.
+     * @throws ParseException if a line is invalid.
+     */
+    public static VehicleTable fromSystemProperties() throws IOException, ParseException {
+        String file = System.getProperty("vroom.vehicles");
+        return file == null ? DEFAULT : load(Paths.get(file));
+    }
+
+    /**
+     * @return number of profiles.
+     */
+    public int size() {
+        return profiles.length;
+    }
+
+    /**
+     * @param index profile number.
+     * @return the profile.
+     */
+    public VehicleProfile get(int index) {
+        return profiles[index];
+    }
+
+    /**
+     * @param name a profile's name.
+     * @return the profile's number, or -1 if there is no such profile.
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < profiles.length; i++) {
+            if (profiles[i].getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,72 @@
+package car;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a TickLoop waits for the start of its next tick, trading CPU time for
+ * wake-up accuracy (after the Disruptor's wait strategies).
+ * <ul>
+ * <li>BUSY_SPIN: never gives up the CPU. Lowest and steadiest latency, but
+ * uses a whole core.</li>
+ * <li>YIELD: spins, yielding to other threads each time round. Nearly as
+ * accurate while the machine is idle; still uses a core.</li>
+ * <li>PARK: parks for half the remaining time, repeatedly, then yields for
+ * the last PARK_THRESHOLD_NANOS. Low CPU, and much steadier than BLOCK.</li>
+ * <li>BLOCK: parks once until the deadline, as java.util.Timer does. Least
+ * CPU; wakes as late as the OS timer slack allows.</li>
+ * </ul>
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public enum WaitStrategy {
+
+    BUSY_SPIN {
+        @Override
+        public void waitUntil(long deadline) {
+            while (System.nanoTime() - deadline < 0) {
+                Thread.onSpinWait();
+            }
+        }
+    },
+    YIELD {
+        @Override
+        public void waitUntil(long deadline) {
+            while (System.nanoTime() - deadline < 0) {
+                Thread.yield();
+            }
+        }
+    },
+    PARK {
+        @Override
+        public void waitUntil(long deadline) {
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                if (remaining > PARK_THRESHOLD_NANOS) {
+                    LockSupport.parkNanos(remaining / 2);
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    },
+    BLOCK {
+        @Override
+        public void waitUntil(long deadline) {
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining); // May return early; go round again.
+            }
+        }
+    };
+
+    // Below this, PARK stops parking: a park can oversleep by about this much.
+    static final long PARK_THRESHOLD_NANOS = 100000;
+
+    /**
+     * Returns once System.nanoTime() has reached the deadline. Interrupts are
+     * not reported; check the thread's interrupt status afterwards.
+     *
+     * @param deadline a System.nanoTime() value.
+     */
+    public abstract void waitUntil(long deadline);
+}
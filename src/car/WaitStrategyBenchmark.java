@@ -0,0 +1,93 @@
+package car;
+
+import car.ActuatorInstruction.Instructions;
+import car.CCInstruction.CCInstructions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures each WaitStrategy in a real-time TickLoop driving a cruising car,
+ * reporting how late ticks start (wake-up latency) and how much CPU the loop
+ * thread uses.
+ *
+ * Usage: java -cp ... car.WaitStrategyBenchmark [--hz N] [--seconds S] [strategy ...]
+ *
+ * Defaults to 1000 Hz for 5 seconds per strategy, all strategies. Results
+ * depend heavily on the machine and what else it is doing; run on a quiet
+ * one.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class WaitStrategyBenchmark {
+
+    private static final int DEFAULT_HZ = 1000;
+    private static final double DEFAULT_SECONDS = 5;
+    private static final double CRUISE_SPEED = 100; // km/h.
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int hz = DEFAULT_HZ;
+        double seconds = DEFAULT_SECONDS;
+        List<WaitStrategy> strategies = new ArrayList<WaitStrategy>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--hz") && i + 1 < args.length) {
+                    hz = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--seconds") && i + 1 < args.length) {
+                    seconds = Double.parseDouble(args[++i]);
+                } else {
+                    strategies.add(WaitStrategy.valueOf(args[i]));
+                }
+            }
+        } catch (IllegalArgumentException argEx) { // Including NumberFormatException.
+            System.err.println("Usage: java car.WaitStrategyBenchmark [--hz N] [--seconds S] [BUSY_SPIN|YIELD|PARK|BLOCK ...]");
+            System.exit(1);
+        }
+        if (strategies.isEmpty()) {
+            for (WaitStrategy strategy : WaitStrategy.values()) {
+                strategies.add(strategy);
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-10s %8s %10s %10s %10s %10s %10s %6s",
+                "strategy", "ticks", "mean_us", "p50_us", "p99_us", "p99.9_us", "max_us", "cpu"));
+        for (WaitStrategy strategy : strategies) {
+            run(strategy, hz, seconds);
+        }
+    }
+
+    private static void run(WaitStrategy strategy, int hz, double seconds) {
+        SimClock clock = new SimClock(hz, hz, hz);
+        final Simulation car = new Simulation(new Disturbances(0, true, true), clock);
+        car.submit(new ActuatorInstruction(Instructions.TURN_ON_IGNITION));
+        car.submit(new CCInstruction(CCInstructions.ACTIVATE, CRUISE_SPEED));
+
+        TickLoop loop = new TickLoop(clock.getTickNanos(), strategy, new Runnable() {
+            @Override
+            public void run() {
+                car.step();
+            }
+        });
+        loop.start("benchmark-" + strategy);
+        try {
+            Thread.sleep((long) (seconds * 1000));
+        } catch (InterruptedException intEx) {
+            // Do nothing. The run is just cut short.
+        }
+        loop.stop();
+
+        LatencyHistogram latency = loop.getWakeLatency();
+        System.out.println(String.format(Locale.ROOT, "%-10s %8d %10.1f %10.1f %10.1f %10.1f %10.1f %5.0f%%",
+                strategy,
+                loop.getTicks(),
+                latency.getMean() / 1e3,
+                latency.getPercentile(50) / 1e3,
+                latency.getPercentile(99) / 1e3,
+                latency.getPercentile(99.9) / 1e3,
+                latency.getMax() / 1e3,
+                loop.getCpuFraction() * 100));
+    }
+}
@@ -0,0 +1,89 @@
+package car;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * FleetKernel using the Java Vector API, integrating as many cars at once as
+ * the CPU's widest vectors hold (4 with AVX2, 8 with AVX-512). The operations
+ * are the same as ScalarFleetKernel's, in the same order, so the results are
+ * the same. Cars left over after the last full vector are done by
+ * ScalarFleetKernel. Each car's vehicle constants are looked up in the
+ * fleet's VehicleTable once per call, so a mixed fleet costs no more per
+ * step than a fleet of one type. (They are copied into lanes one by one
+ * rather than with the API's gather loads, which JDK 17's C2 does not always
+ * compile correctly.)
+ *
+ * Uses the incubating jdk.incubator.vector module, so this class is kept out
+ * of the main source tree. Compile it against the main classes, and run,
+ * with --add-modules jdk.incubator.vector; Fleet loads it if it can.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class VectorFleetKernel implements FleetKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void integrate(Fleet fleet, int steps, double stepSeconds) {
+        int size = fleet.size();
+        int bound = SPECIES.loopBound(size);
+        VehicleTable vehicles = fleet.vehicles;
+        int lanes = SPECIES.length();
+        double[] dragAreas = new double[lanes];
+        double[] masses = new double[lanes];
+        double[] motorConstants = new double[lanes];
+        double[] sprocketRatios = new double[lanes];
+        double[] wheelRadii = new double[lanes];
+
+        for (int car = 0; car < bound; car += lanes) {
+            for (int lane = 0; lane < lanes; lane++) {
+                int profile = fleet.vehicle[car + lane];
+                dragAreas[lane] = vehicles.dragArea[profile];
+                masses[lane] = vehicles.mass[profile];
+                motorConstants[lane] = vehicles.motorConstant[profile];
+                sprocketRatios[lane] = vehicles.sprocketRatio[profile];
+                wheelRadii[lane] = vehicles.wheelRadius[profile];
+            }
+            DoubleVector distance = DoubleVector.fromArray(SPECIES, fleet.distance, car);
+            DoubleVector speed = DoubleVector.fromArray(SPECIES, fleet.speed, car);
+            DoubleVector acceleration = DoubleVector.fromArray(SPECIES, fleet.acceleration, car);
+            DoubleVector wind = DoubleVector.fromArray(SPECIES, fleet.wind, car);
+            DoubleVector dragArea = DoubleVector.fromArray(SPECIES, dragAreas, 0);
+            DoubleVector mass = DoubleVector.fromArray(SPECIES, masses, 0);
+
+            // Everything but drag is constant while the inputs are held.
+            DoubleVector propulsionForce = DoubleVector.fromArray(SPECIES, fleet.current, car)
+                    .mul(DoubleVector.fromArray(SPECIES, motorConstants, 0))
+                    .mul(DoubleVector.fromArray(SPECIES, sprocketRatios, 0))
+                    .sub(DoubleVector.fromArray(SPECIES, fleet.brakeTorque, car))
+                    .div(DoubleVector.fromArray(SPECIES, wheelRadii, 0))
+                    .sub(DoubleVector.fromArray(SPECIES, fleet.slopeForce, car))
+                    .sub(DoubleVector.fromArray(SPECIES, fleet.rollingForce, car));
+
+            for (int i = 0; i < steps; i++) {
+                DoubleVector relativeAirSpeed = speed.neg().add(wind);
+                DoubleVector forceDrag = relativeAirSpeed.mul(relativeAirSpeed)
+                        .mul(CarDynamics.FLUID_DENSITY)
+                        .mul(dragArea)
+                        .div(2);
+                VectorMask<Double> headwind = relativeAirSpeed.compare(VectorOperators.LE, 0);
+                DoubleVector accelerationNew = propulsionForce.add(forceDrag)
+                        .blend(propulsionForce.sub(forceDrag), headwind)
+                        .div(mass);
+                speed = speed.add(acceleration.add(accelerationNew).mul(stepSeconds).div(2));
+                speed = speed.blend(0, speed.compare(VectorOperators.LT, 0));
+                distance = distance.add(speed.mul(stepSeconds));
+                acceleration = accelerationNew;
+            }
+
+            distance.intoArray(fleet.distance, car);
+            speed.intoArray(fleet.speed, car);
+            acceleration.intoArray(fleet.acceleration, car);
+        }
+
+        ScalarFleetKernel.integrate(fleet, bound, size, steps, stepSeconds);
+    }
+}
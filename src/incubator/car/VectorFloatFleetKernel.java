@@ -0,0 +1,86 @@
+package car;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * FloatFleetKernel using the Java Vector API: twice as many cars per vector
+ * as VectorFleetKernel (8 with AVX2, 16 with AVX-512). The operations are the
+ * same as ScalarFloatFleetKernel's, in the same order. Cars left over after
+ * the last full vector are done by ScalarFloatFleetKernel.
+ *
+ * Compiled and loaded as VectorFleetKernel is.
+ *
+ * @author Aydin Arik and Sam Leichter
+ */
+public class VectorFloatFleetKernel implements FloatFleetKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void integrate(FloatFleet fleet, int steps, float stepSeconds) {
+        int size = fleet.size();
+        int bound = SPECIES.loopBound(size);
+        VehicleTable vehicles = fleet.vehicles;
+        int lanes = SPECIES.length();
+        float[] dragAreas = new float[lanes];
+        float[] masses = new float[lanes];
+        float[] motorConstants = new float[lanes];
+        float[] sprocketRatios = new float[lanes];
+        float[] wheelRadii = new float[lanes];
+        float[] distances = new float[lanes];
+
+        for (int car = 0; car < bound; car += lanes) {
+            for (int lane = 0; lane < lanes; lane++) {
+                int profile = fleet.vehicle[car + lane];
+                dragAreas[lane] = (float) vehicles.dragArea[profile];
+                masses[lane] = (float) vehicles.mass[profile];
+                motorConstants[lane] = (float) vehicles.motorConstant[profile];
+                sprocketRatios[lane] = (float) vehicles.sprocketRatio[profile];
+                wheelRadii[lane] = (float) vehicles.wheelRadius[profile];
+            }
+            FloatVector distance = FloatVector.zero(SPECIES); // This tick's.
+            FloatVector speed = FloatVector.fromArray(SPECIES, fleet.speed, car);
+            FloatVector acceleration = FloatVector.fromArray(SPECIES, fleet.acceleration, car);
+            FloatVector wind = FloatVector.fromArray(SPECIES, fleet.wind, car);
+            FloatVector dragArea = FloatVector.fromArray(SPECIES, dragAreas, 0);
+            FloatVector mass = FloatVector.fromArray(SPECIES, masses, 0);
+
+            // Everything but drag is constant while the inputs are held.
+            FloatVector propulsionForce = FloatVector.fromArray(SPECIES, fleet.current, car)
+                    .mul(FloatVector.fromArray(SPECIES, motorConstants, 0))
+                    .mul(FloatVector.fromArray(SPECIES, sprocketRatios, 0))
+                    .sub(FloatVector.fromArray(SPECIES, fleet.brakeTorque, car))
+                    .div(FloatVector.fromArray(SPECIES, wheelRadii, 0))
+                    .sub(FloatVector.fromArray(SPECIES, fleet.slopeForce, car))
+                    .sub(FloatVector.fromArray(SPECIES, fleet.rollingForce, car));
+
+            for (int i = 0; i < steps; i++) {
+                FloatVector relativeAirSpeed = speed.neg().add(wind);
+                FloatVector forceDrag = relativeAirSpeed.mul(relativeAirSpeed)
+                        .mul(ScalarFloatFleetKernel.FLUID_DENSITY)
+                        .mul(dragArea)
+                        .div(2);
+                VectorMask<Float> headwind = relativeAirSpeed.compare(VectorOperators.LE, 0);
+                FloatVector accelerationNew = propulsionForce.add(forceDrag)
+                        .blend(propulsionForce.sub(forceDrag), headwind)
+                        .div(mass);
+                speed = speed.add(acceleration.add(accelerationNew).mul(stepSeconds).div(2));
+                speed = speed.blend(0, speed.compare(VectorOperators.LT, 0));
+                distance = distance.add(speed.mul(stepSeconds));
+                acceleration = accelerationNew;
+            }
+
+            distance.intoArray(distances, 0);
+            for (int lane = 0; lane < lanes; lane++) {
+                fleet.distance[car + lane] += distances[lane];
+            }
+            speed.intoArray(fleet.speed, car);
+            acceleration.intoArray(fleet.acceleration, car);
+        }
+
+        ScalarFloatFleetKernel.integrate(fleet, bound, size, steps, stepSeconds);
+    }
+}